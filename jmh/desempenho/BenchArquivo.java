@@ -0,0 +1,85 @@
+package desempenho;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import server.FileManager;
+import server.Registro;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Gravação e contagem de linhas do FileManager, num diretório temporário apagado no fim.
+// A política de fsync e o tipo de armazenamento são parâmetros do benchmark (as mesmas propriedades
+// -Darmazenamento.fsync e -Darmazenamento.tipo do servidor, definidas antes de criar o FileManager).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class BenchArquivo {
+    private static final int LINHAS_POR_LOTE = 256;
+
+    @Param({"INTERVALO", "LOTE", "SEMPRE"})
+    public String fsync;
+
+    @Param({"ARQUIVO", "SEGMENTADO"})
+    public String tipo;
+
+    private Path diretorio;
+    private FileManager fileManager;
+    private String linha;
+    private List<String> lote;
+
+    @Setup
+    public void preparar() throws IOException {
+        System.setProperty("armazenamento.fsync", fsync);
+        System.setProperty("armazenamento.tipo", tipo);
+        diretorio = Files.createTempDirectory("bench-arquivo");
+        fileManager = new FileManager(diretorio.resolve("dados_bench.txt").toString());
+
+        linha = Registro.formatar(123456, 654321, 3);
+        lote = new ArrayList<>(LINHAS_POR_LOTE);
+        for (int i = 0; i < LINHAS_POR_LOTE; i++) lote.add(linha);
+    }
+
+    @TearDown
+    public void encerrar() throws IOException {
+        fileManager.fechar();
+        try (Stream<Path> caminhos = Files.walk(diretorio)) {
+            caminhos.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void escreverLinha() throws IOException {
+        fileManager.escreverLinha(linha);
+    }
+
+    // Um lote de LINHAS_POR_LOTE linhas por operação
+    @Benchmark
+    public void escreverLinhas() throws IOException {
+        fileManager.escreverLinhas(lote);
+    }
+
+    @Benchmark
+    public long contarLinhas() {
+        return fileManager.contarLinhas();
+    }
+}
@@ -0,0 +1,99 @@
+package desempenho;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import server.CacheMdc;
+import server.CalculoLote;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cálculo do MDC isolado: Euclides (o cálculo original) contra o MDC binário (Stein, o usado pelos
+// servidores), o custo do CacheMdc com acerto e com falha, e um lote de ESCRITA_LOTE calculado
+// numa thread só e com fork-join.
+// Cada invocação percorre todos os pares sorteados; o resultado de cada par vai para o Blackhole.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class BenchMdc {
+    // Pares sorteados antes da medição
+    private static final int PARES = 1 << 16;
+    private static final int PARES_LOTE = 8192;
+
+    private int[] xs;
+    private int[] ys;
+    private int[] lote;
+    private CacheMdc cheio;
+    private CacheMdc pequeno;
+
+    @Setup
+    public void preparar() {
+        // Mesma faixa do cliente: 2 a 1.000.000
+        Random random = new Random(42);
+        xs = new int[PARES];
+        ys = new int[PARES];
+        for (int i = 0; i < PARES; i++) {
+            xs[i] = random.nextInt(999999) + 2;
+            ys[i] = random.nextInt(999999) + 2;
+        }
+
+        // Cache com todos os pares (só acertos) e cache pequeno demais para eles (quase só falhas)
+        cheio = new CacheMdc(PARES * 2);
+        for (int i = 0; i < PARES; i++) cheio.obter(xs[i], ys[i]);
+        pequeno = new CacheMdc(1024);
+
+        lote = new int[PARES_LOTE * 2];
+        for (int i = 0; i < PARES_LOTE; i++) {
+            lote[i * 2] = xs[i];
+            lote[i * 2 + 1] = ys[i];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARES)
+    public void mdcEuclides(Blackhole bh) {
+        for (int i = 0; i < PARES; i++) bh.consume(CacheMdc.calcular(xs[i], ys[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARES)
+    public void mdcBinario(Blackhole bh) {
+        for (int i = 0; i < PARES; i++) bh.consume(CacheMdc.mdcBinario(xs[i], ys[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARES)
+    public void cacheMdcAcerto(Blackhole bh) {
+        for (int i = 0; i < PARES; i++) bh.consume(cheio.obter(xs[i], ys[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARES)
+    public void cacheMdcFalha(Blackhole bh) {
+        for (int i = 0; i < PARES; i++) bh.consume(pequeno.obter(xs[i], ys[i]));
+    }
+
+    // Um lote inteiro por operação
+    @Benchmark
+    public int[] calculoLoteSequencial() {
+        return CalculoLote.calcularSequencial(lote, PARES_LOTE);
+    }
+
+    @Benchmark
+    public int[] calculoLoteForkJoin() {
+        return CalculoLote.calcular(lote, PARES_LOTE);
+    }
+}
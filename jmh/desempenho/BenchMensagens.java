@@ -0,0 +1,100 @@
+package desempenho;
+
+import network.CodecBinario;
+import network.CodecTexto;
+import network.Mensagem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Leitura e formatação das mensagens nos dois formatos (o que toda conexão faz a cada requisição).
+// Cada invocação passa por todas as mensagens preparadas; cada resultado vai para o Blackhole.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class BenchMensagens {
+    private static final int MENSAGENS = 1024;
+
+    private Mensagem[] escritas;
+    private String[] doCliente;
+    private String[] doLoadBalancer;
+    private ByteBuffer[] quadros;
+    private ByteBuffer destino;
+
+    @Setup
+    public void preparar() {
+        Random random = new Random(42);
+        escritas = new Mensagem[MENSAGENS];
+        doCliente = new String[MENSAGENS];
+        doLoadBalancer = new String[MENSAGENS];
+        quadros = new ByteBuffer[MENSAGENS];
+        for (int i = 0; i < MENSAGENS; i++) {
+            int x = random.nextInt(999999) + 2;
+            int y = random.nextInt(999999) + 2;
+            // Como o LoadBalancer encaminha: com ID, sequência e versão dos membros
+            escritas[i] = Mensagem.escrita((System.currentTimeMillis() << 20) + i, x, y, i);
+            escritas[i].valor = 3;
+            doCliente[i] = "ESCRITA;" + x + ";" + y;
+            doLoadBalancer[i] = CodecTexto.formatar(escritas[i]);
+            quadros[i] = ByteBuffer.allocate(CodecBinario.tamanho(escritas[i]));
+            CodecBinario.escrever(escritas[i], i, quadros[i]);
+        }
+        destino = ByteBuffer.allocate(CodecBinario.tamanho(escritas[0]));
+    }
+
+    // ESCRITA;X;Y
+    @Benchmark
+    @OperationsPerInvocation(MENSAGENS)
+    public void textoLerDoCliente(Blackhole bh) {
+        for (int i = 0; i < MENSAGENS; i++) bh.consume(CodecTexto.ler(doCliente[i]));
+    }
+
+    // ESCRITA encaminhada pelo LoadBalancer
+    @Benchmark
+    @OperationsPerInvocation(MENSAGENS)
+    public void textoLerDoLoadBalancer(Blackhole bh) {
+        for (int i = 0; i < MENSAGENS; i++) bh.consume(CodecTexto.ler(doLoadBalancer[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MENSAGENS)
+    public void textoFormatar(Blackhole bh) {
+        for (int i = 0; i < MENSAGENS; i++) bh.consume(CodecTexto.formatar(escritas[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MENSAGENS)
+    public void binarioLer(Blackhole bh) {
+        for (int i = 0; i < MENSAGENS; i++) {
+            ByteBuffer quadro = quadros[i];
+            quadro.position(CodecBinario.CABECALHO); // o núcleo de rede já consumiu o cabeçalho
+            bh.consume(CodecBinario.ler(quadro));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MENSAGENS)
+    public void binarioEscrever(Blackhole bh) {
+        for (int i = 0; i < MENSAGENS; i++) {
+            destino.clear();
+            CodecBinario.escrever(escritas[i], i, destino);
+            bh.consume(destino.position());
+        }
+    }
+}
@@ -1,61 +1,112 @@
 package client;
 
+import config.Cluster;
+import config.Configuracao;
+import network.Mensagem;
+
 import java.io.*;
-import java.net.Socket;
 import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
 
+// Gerador de carga: envia ESCRITAs e LEITURAs aleatórias ao LoadBalancer pelo ClienteAssincrono.
+//   -Dcliente.pausaMinMs=20 -Dcliente.pausaMaxMs=50   pausa entre requisições (0 e 0 = sem pausa, o mais rápido possível)
+//   -Dcliente.janela=1024     requisições sem resposta ao mesmo tempo
+//   -Dcliente.maxLote=256     requisições enviadas numa única escrita no socket
+//   -Dcliente.conexoes=1      conexões com o LoadBalancer
+//   -Dcliente.timeoutMs=10000
 public class Client implements Runnable {
-    private static final String HOST = "localhost";
-    private static final int PORTA_LB = 8080;
+    private static final String HOST = Cluster.hostLoadBalancer();
+    private static final int PORTA_LB = Cluster.portaLoadBalancer();
     private static final String ARQUIVO_LOG = "cliente_log.txt";
 
+    private final int pausaMinMs = Configuracao.inteiro("cliente.pausaMinMs", 20);
+    private final int pausaMaxMs = Configuracao.inteiro("cliente.pausaMaxMs", 50);
+
+    private final LongAdder enviadas = new LongAdder();
+    private final LongAdder respondidas = new LongAdder();
+    private final LongAdder erros = new LongAdder();
+
     @Override
     public void run() {
         Random random = new Random();
+        // Sem pausa, uma linha por requisição no console limitaria a taxa: mostra só um resumo por segundo
+        boolean detalhado = pausaMaxMs > 0;
 
-        while (true) { // Loop infinito enviando requisições
-            try {
-                // Comunicação via sockets TCP
-                try (Socket socket = new Socket(HOST, PORTA_LB);
-                     PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+        try (ClienteAssincrono cliente = new ClienteAssincrono(HOST, PORTA_LB,
+                Configuracao.inteiro("cliente.conexoes", 1),
+                Configuracao.inteiro("cliente.janela", 1024),
+                Configuracao.inteiro("cliente.maxLote", 256),
+                Configuracao.longo("cliente.timeoutMs", 10000));
+             LogAssincrono log = new LogAssincrono(ARQUIVO_LOG)) {
 
-                    boolean isEscrita = random.nextBoolean();
+            if (!detalhado) iniciarResumo(cliente);
 
-                    if (isEscrita) {
-                        // Sorteia dois números entre 2 e 1.000.000
-                        int x = random.nextInt(999999) + 2;
-                        int y = random.nextInt(999999) + 2;
+            while (true) { // Loop infinito enviando requisições
+                boolean isEscrita = random.nextBoolean();
 
-                        String msg = "ESCRITA;" + x + ";" + y;
-                        out.println(msg);
+                if (isEscrita) {
+                    // Sorteia dois números entre 2 e 1.000.000
+                    int x = random.nextInt(999999) + 2;
+                    int y = random.nextInt(999999) + 2;
 
-                        System.out.println("[Client] Enviou ESCRITA: " + x + ";" + y);
-                        // Salva log local dos pares enviados
-                        registrarLog(x, y);
+                    // O ID da requisição é dado pelo LoadBalancer (bloqueia só se a janela estiver cheia)
+                    cliente.escrever(x, y).whenComplete((id, erro) -> {
+                        if (erro != null) {
+                            erros.increment();
+                            if (detalhado) System.err.println("[Client] ESCRITA recusada: " + erro.getMessage());
+                        } else {
+                            respondidas.increment();
+                        }
+                    });
+                    enviadas.increment();
 
-                    } else {
-                        // Requisição de leitura apenas para contar linhas
-                        out.println("LEITURA");
-                        System.out.println("[Client] Enviou LEITURA");
-                    }
-                }
+                    if (detalhado) System.out.println("[Client] Enviou ESCRITA: " + x + ";" + y);
+                    // Salva log local dos pares enviados
+                    log.registrar("Enviado par: " + x + ", " + y);
 
-                // Dorme tempo aleatório entre 20 e 50ms após envio
-                int tempoDormida = random.nextInt(31) + 20;
-                Thread.sleep(tempoDormida);
+                } else {
+                    // Requisição de leitura: o LoadBalancer responde com a contagem de linhas das réplicas
+                    cliente.ler(Mensagem.LEITURA_PADRAO).whenComplete((resposta, erro) -> {
+                        if (erro != null) {
+                            erros.increment();
+                            if (detalhado) System.err.println("[Client] LEITURA sem resposta: " + erro.getMessage());
+                        } else {
+                            respondidas.increment();
+                            if (detalhado) System.out.println("[Client] Resposta da LEITURA: " + resposta);
+                        }
+                    });
+                    enviadas.increment();
+                    if (detalhado) System.out.println("[Client] Enviou LEITURA");
+                }
 
-            } catch (Exception e) {
-                System.err.println("[Client] Erro: " + e.getMessage());
-                try { Thread.sleep(1000); } catch (InterruptedException ex) {}
+                // Dorme tempo aleatório entre pausaMinMs e pausaMaxMs após envio
+                if (pausaMaxMs > 0) {
+                    Thread.sleep(pausaMinMs + random.nextInt(Math.max(1, pausaMaxMs - pausaMinMs + 1)));
+                }
             }
-        }
-    }
-    // Salva o log local dos pares
-    private void registrarLog(int x, int y) {
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(ARQUIVO_LOG, true)))) {
-            out.println("Enviado par: " + x + ", " + y);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
-            e.printStackTrace();
+            System.err.println("[Client] Erro: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private void iniciarResumo(ClienteAssincrono cliente) {
+        Thread t = new Thread(() -> {
+            long anterior = 0;
+            while (true) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long total = respondidas.sum();
+                System.out.println("[Client] " + (total - anterior) + " respostas/s | enviadas: " + enviadas.sum()
+                        + " | erros: " + erros.sum() + " | sem resposta: " + cliente.emAndamento());
+                anterior = total;
+            }
+        }, "cliente-resumo");
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,194 @@
+package client;
+
+import network.Conexao;
+import network.Mensagem;
+import network.PoolConexoes;
+import network.TipoMensagem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Cliente assíncrono do LoadBalancer, para ser usado por quem precisa enviar muitas requisições.
+//
+// - escrever()/ler() não esperam a resposta: devolvem um Future que completa quando ela chegar
+//   (a conexão multiplexada faz a correlação pelo ID de cada mensagem).
+// - Janela: no máximo 'janela' requisições sem resposta ao mesmo tempo. Quem chama fica bloqueado
+//   quando a janela está cheia, então o cliente nunca envia mais rápido do que o LoadBalancer responde.
+// - Lote: as requisições entram numa fila; uma thread pega tudo o que acumulou (até 'maxLote') e
+//   envia numa única escrita no socket. Como no GrupoCommit, o lote cresce sozinho quando há muitas
+//   requisições e tem uma só quando há poucas (sem espera artificial).
+// - Requisição sem resposta em 'timeoutMs' falha com TimeoutException e libera a vaga na janela.
+// - REJEITADO (LoadBalancer sobrecarregado ou limite de taxa do cliente): a requisição volta para a
+//   fila depois do tempo pedido, sem liberar a vaga (quem chama só vê a resposta final).
+// - close(): toda requisição ainda sem resposta falha com IOException (nas filas de envio e de reenvio).
+public class ClienteAssincrono implements Closeable {
+    private final PoolConexoes pool;
+    private final int porta;
+    private final int maxLote;
+    private final long timeoutMs;
+    private final int tamanhoJanela;
+    private final Semaphore janela;
+    private final BlockingQueue<Pedido> fila = new LinkedBlockingQueue<>();
+    private final Thread envio;
+    // Devolve à fila as requisições recusadas, depois do tempo pedido pelo LoadBalancer
+    private final ScheduledExecutorService reenvio = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cliente-reenvio");
+        t.setDaemon(true);
+        return t;
+    });
+    // Recusadas esperando o tempo de reenvio; close() faz falhar as que ainda estiverem aqui
+    private final Set<Pedido> aguardandoReenvio = ConcurrentHashMap.newKeySet();
+    private volatile boolean fechado;
+
+    // Requisição esperando ser enviada
+    private static class Pedido {
+        final Mensagem mensagem;
+        final CompletableFuture<Mensagem> resposta = new CompletableFuture<>();
+
+        Pedido(Mensagem mensagem) {
+            this.mensagem = mensagem;
+        }
+    }
+
+    public ClienteAssincrono(String host, int porta, int conexoes, int janela, int maxLote, long timeoutMs) {
+        this.pool = new PoolConexoes(host, Math.max(1, conexoes));
+        this.porta = porta;
+        this.maxLote = Math.max(1, maxLote);
+        this.timeoutMs = timeoutMs;
+        this.tamanhoJanela = Math.max(1, janela);
+        this.janela = new Semaphore(tamanhoJanela);
+        this.envio = new Thread(this::loopEnvio, "cliente-envio");
+        this.envio.setDaemon(true);
+        this.envio.start();
+    }
+
+    // ESCRITA de um par; o Future traz o ID dado pelo LoadBalancer
+    public CompletableFuture<Long> escrever(int x, int y) throws InterruptedException {
+        return submeter(Mensagem.escrita(0, x, y, 0)).thenApply(resposta -> {
+            if (resposta.tipo != TipoMensagem.OK) throw new IllegalStateException(resposta.toString());
+            return resposta.id;
+        });
+    }
+
+    // ESCRITA_LOTE de 'quantidade' pares (pares = x, y de cada um); o Future traz o ID do primeiro par
+    // (o par i recebe o ID + i)
+    public CompletableFuture<Long> escreverLote(int[] pares, int quantidade) throws InterruptedException {
+        return submeter(Mensagem.escritaLote(0, pares, quantidade, 0)).thenApply(resposta -> {
+            if (resposta.tipo != TipoMensagem.OK) throw new IllegalStateException(resposta.toString());
+            return resposta.id;
+        });
+    }
+
+    // LEITURA no nível pedido (Mensagem.LEITURA_PADRAO, LEITURA_UM ou LEITURA_TODOS); o Future traz a resposta LINHAS
+    public CompletableFuture<Mensagem> ler(byte nivel) throws InterruptedException {
+        return submeter(Mensagem.leitura(nivel)).thenApply(resposta -> {
+            if (resposta.tipo != TipoMensagem.LINHAS) throw new IllegalStateException(resposta.toString());
+            return resposta;
+        });
+    }
+
+    // Espera uma vaga na janela e coloca a requisição na fila de envio
+    public CompletableFuture<Mensagem> submeter(Mensagem mensagem) throws InterruptedException {
+        if (fechado) throw new IllegalStateException("Cliente fechado");
+        janela.acquire();
+        Pedido pedido = new Pedido(mensagem);
+        // A vaga volta quando a resposta chega (ou a requisição falha), antes de quem chamou ver a resposta:
+        // assim quem envia a próxima requisição de dentro do callback não fica esperando a própria vaga
+        CompletableFuture<Mensagem> resposta = pedido.resposta.whenComplete((r, erro) -> janela.release());
+        fila.add(pedido);
+        return resposta;
+    }
+
+    // Requisições enviadas ou na fila que ainda não tiveram resposta
+    public int emAndamento() {
+        return tamanhoJanela - janela.availablePermits();
+    }
+
+    private void loopEnvio() {
+        List<Pedido> lote = new ArrayList<>();
+        List<Mensagem> mensagens = new ArrayList<>();
+        while (!fechado) {
+            try {
+                // Espera pelo menos uma requisição e pega o que mais estiver acumulado
+                lote.add(fila.take());
+                fila.drainTo(lote, maxLote - 1);
+
+                for (Pedido p : lote) mensagens.add(p.mensagem);
+                List<CompletableFuture<Mensagem>> respostas;
+                try {
+                    Conexao conexao = pool.obter(porta);
+                    respostas = conexao.enviarVarios(mensagens);
+                } catch (IOException e) {
+                    for (Pedido p : lote) p.resposta.completeExceptionally(e);
+                    // LoadBalancer fora do ar: espera um pouco antes de tentar conectar de novo
+                    Thread.sleep(100);
+                    continue;
+                }
+
+                for (int i = 0; i < lote.size(); i++) {
+                    Pedido p = lote.get(i);
+                    respostas.get(i).orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((r, erro) -> {
+                        if (erro != null) p.resposta.completeExceptionally(erro);
+                        else if (r.tipo == TipoMensagem.REJEITADO) reenviar(p, r.valor);
+                        else p.resposta.complete(r);
+                    });
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lote.clear();
+                mensagens.clear();
+            }
+        }
+    }
+
+    private void reenviar(Pedido pedido, long tentarEmMs) {
+        if (fechado) {
+            pedido.resposta.completeExceptionally(new IOException("Cliente fechado"));
+            return;
+        }
+        aguardandoReenvio.add(pedido);
+        try {
+            reenvio.schedule(() -> {
+                if (!aguardandoReenvio.remove(pedido)) return; // close() já fez falhar
+                fila.add(pedido);
+                // Se close() esvaziou a fila antes deste add, ninguém mais a esvaziaria
+                if (fechado) falharPendentes();
+            }, Math.max(1, tentarEmMs), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // close() no meio: o reenvio já foi desligado
+            if (aguardandoReenvio.remove(pedido)) pedido.resposta.completeExceptionally(new IOException("Cliente fechado"));
+        }
+    }
+
+    @Override
+    public void close() {
+        fechado = true;
+        envio.interrupt();
+        reenvio.shutdownNow();
+        falharPendentes();
+        pool.fecharTodas();
+    }
+
+    private void falharPendentes() {
+        IOException erro = new IOException("Cliente fechado");
+        for (Pedido p : aguardandoReenvio) {
+            if (aguardandoReenvio.remove(p)) p.resposta.completeExceptionally(erro);
+        }
+        Pedido p;
+        while ((p = fila.poll()) != null) p.resposta.completeExceptionally(erro);
+    }
+}
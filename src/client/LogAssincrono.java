@@ -0,0 +1,83 @@
+package client;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Log em arquivo gravado por uma thread própria.
+// Quem registra só coloca a linha numa fila; a thread mantém o arquivo aberto, grava tudo o que
+// acumulou e só faz flush quando a fila esvazia (em vez de abrir e fechar o arquivo a cada linha).
+// A fila é limitada: se o disco não acompanhar, quem registra espera (nenhuma linha é perdida).
+public class LogAssincrono implements Closeable {
+    private static final int CAPACIDADE_FILA = 65536;
+
+    private final BlockingQueue<String> fila = new ArrayBlockingQueue<>(CAPACIDADE_FILA);
+    private final BufferedWriter saida;
+    private final Thread gravacao;
+    private volatile boolean fechado;
+
+    public LogAssincrono(String arquivo) throws IOException {
+        this.saida = new BufferedWriter(new FileWriter(arquivo, true), 64 * 1024);
+        this.gravacao = new Thread(this::loopGravacao, "log-" + arquivo);
+        this.gravacao.setDaemon(true);
+        this.gravacao.start();
+    }
+
+    public void registrar(String linha) {
+        try {
+            fila.put(linha);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loopGravacao() {
+        List<String> linhas = new ArrayList<>();
+        while (true) {
+            try {
+                if (fechado && fila.isEmpty()) break;
+                String primeira = fila.poll(100, TimeUnit.MILLISECONDS);
+                if (primeira == null) continue;
+                linhas.add(primeira);
+                fila.drainTo(linhas);
+
+                for (String linha : linhas) {
+                    saida.write(linha);
+                    saida.newLine();
+                }
+                if (fila.isEmpty()) saida.flush();
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("[Log] Erro ao gravar: " + e.getMessage());
+            } finally {
+                linhas.clear();
+            }
+        }
+        try {
+            saida.flush();
+        } catch (IOException e) {
+            System.err.println("[Log] Erro ao gravar: " + e.getMessage());
+        }
+    }
+
+    // Grava o que ainda estiver na fila e fecha o arquivo
+    @Override
+    public void close() {
+        fechado = true;
+        try {
+            gravacao.join(5000);
+            saida.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("[Log] Erro ao fechar: " + e.getMessage());
+        }
+    }
+}
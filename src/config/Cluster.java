@@ -0,0 +1,28 @@
+package config;
+
+// Endereço do LoadBalancer e tempos da lista de membros do cluster.
+//   -Dlb.host=localhost              (cliente; LoadBalancer e servidores rodam na mesma máquina)
+//   -Dlb.porta=8080
+//   -Dcluster.heartbeatMs=1000      intervalo entre os HEARTBEATs de cada servidor
+//   -Dcluster.timeoutMembroMs=5000  sem HEARTBEAT por esse tempo, o servidor sai da lista de membros
+public final class Cluster {
+
+    private Cluster() {
+    }
+
+    public static String hostLoadBalancer() {
+        return Configuracao.texto("lb.host", "localhost");
+    }
+
+    public static int portaLoadBalancer() {
+        return Configuracao.inteiro("lb.porta", 8080);
+    }
+
+    public static long intervaloHeartbeatMs() {
+        return Configuracao.longo("cluster.heartbeatMs", 1000);
+    }
+
+    public static long timeoutMembroMs() {
+        return Configuracao.longo("cluster.timeoutMembroMs", 5000);
+    }
+}
@@ -0,0 +1,43 @@
+package config;
+
+// Leitura centralizada das configurações do projeto.
+// Os valores vêm de propriedades do sistema (ex: java -Dnucleo.modo=NIO runners.RunServer ...)
+// e, se não forem informados, usam o valor padrão.
+public final class Configuracao {
+
+    private Configuracao() {
+    }
+
+    public static String texto(String chave, String padrao) {
+        String valor = System.getProperty(chave);
+        return (valor == null || valor.isBlank()) ? padrao : valor.trim();
+    }
+
+    public static int inteiro(String chave, int padrao) {
+        String valor = System.getProperty(chave);
+        if (valor == null || valor.isBlank()) return padrao;
+        try {
+            return Integer.parseInt(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("[Configuracao] Valor inválido para " + chave + ": " + valor + ". Usando " + padrao);
+            return padrao;
+        }
+    }
+
+    public static long longo(String chave, long padrao) {
+        String valor = System.getProperty(chave);
+        if (valor == null || valor.isBlank()) return padrao;
+        try {
+            return Long.parseLong(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("[Configuracao] Valor inválido para " + chave + ": " + valor + ". Usando " + padrao);
+            return padrao;
+        }
+    }
+
+    public static boolean booleano(String chave, boolean padrao) {
+        String valor = System.getProperty(chave);
+        if (valor == null || valor.isBlank()) return padrao;
+        return Boolean.parseBoolean(valor.trim());
+    }
+}
@@ -0,0 +1,17 @@
+package config;
+
+// Trabalho simulado de cada ESCRITA antes do MDC (-Dtrabalho.modelo=...)
+public enum ModeloTrabalho {
+    // Nenhum: mede a capacidade real do servidor (MDC, lock, disco e replicação)
+    NENHUM,
+    // Atraso fixo de -Dtrabalho.fixoMs
+    FIXO,
+    // Atraso sorteado entre -Dtrabalho.minMs e -Dtrabalho.maxMs (padrão 100 a 200 ms, comportamento original)
+    DISTRIBUICAO,
+    // Cálculo de verdade: MDCs de BigIntegers grandes, num pool com uma thread por núcleo
+    CPU;
+
+    public static ModeloTrabalho configurado() {
+        return valueOf(Configuracao.texto("trabalho.modelo", "DISTRIBUICAO").toUpperCase());
+    }
+}
@@ -0,0 +1,15 @@
+package config;
+
+// Como os servidores gravam os resultados no arquivo (-Descrita.modo=...)
+public enum ModoEscrita {
+    // Um lock do LoadBalancer e uma rodada de replicação por linha (comportamento original)
+    UNITARIA,
+    // Os resultados prontos são acumulados e gravados em grupo: um lock e uma replicação por lote
+    LOTE,
+    // Sem lock: o LoadBalancer numera cada ESCRITA e todo servidor grava na ordem dessa numeração
+    SEQUENCIADOR;
+
+    public static ModoEscrita configurado() {
+        return valueOf(Configuracao.texto("escrita.modo", "UNITARIA").toUpperCase());
+    }
+}
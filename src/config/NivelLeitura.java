@@ -0,0 +1,13 @@
+package config;
+
+// Nível de consistência de uma LEITURA (LEITURA;UM ou LEITURA;TODOS)
+public enum NivelLeitura {
+    // Responde com a contagem de uma única réplica (mais rápido)
+    UM,
+    // Consulta todas as réplicas e devolve a maior contagem, com a situação de cada uma
+    TODOS;
+
+    public static NivelLeitura padrao() {
+        return valueOf(Configuracao.texto("leitura.consistencia", "UM").toUpperCase());
+    }
+}
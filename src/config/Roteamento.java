@@ -0,0 +1,19 @@
+package config;
+
+// Como o LoadBalancer escolhe o servidor de cada ESCRITA (-Droteamento.politica=...)
+public enum Roteamento {
+    // Sorteio (comportamento original)
+    ALEATORIO,
+    // O servidor com menos requisições em andamento (enviadas e ainda não confirmadas)
+    MENOS_PENDENTES,
+    // Sorteia dois servidores e fica com o de menos requisições em andamento
+    DUAS_ESCOLHAS,
+    // Rodízio proporcional ao peso de cada servidor (-Droteamento.pesos=9001:2,9002:1,...)
+    RODIZIO_PONDERADO,
+    // Menor latência média (EWMA) multiplicada pelas requisições em andamento
+    LATENCIA_EWMA;
+
+    public static Roteamento configurado() {
+        return valueOf(Configuracao.texto("roteamento.politica", "MENOS_PENDENTES").toUpperCase());
+    }
+}
@@ -0,0 +1,238 @@
+package desempenho;
+
+import client.ClienteAssincrono;
+import config.Configuracao;
+import loadbalancer.LoadBalancer;
+import network.Mensagem;
+import network.TipoMensagem;
+import server.ApplicationServer;
+import server.FileManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Carga de ponta a ponta num único processo: sobe o LoadBalancer e os servidores em portas livres,
+// envia ESCRITAs e LEITURAs pelo ClienteAssincrono e mostra vazão e latência (p50/p99/p999).
+//
+// - 'concorrencia' usuários simultâneos em ciclo fechado: cada um envia a próxima requisição assim
+//   que a anterior é respondida (a vazão medida é a que o cluster sustenta com essa concorrência).
+// - Só entram na medida as requisições enviadas depois do aquecimento.
+// - Os logs dos componentes são descartados (-Dcarga.logs=true para ver): no console eles seriam
+//   o gargalo. O resultado sai no console original. Os arquivos de dados das portas usadas são
+//   apagados no fim.
+//
+//   -Dcarga.servidores=3  -Dcarga.concorrencia=64  -Dcarga.percentualEscrita=50
+//   -Dcarga.aquecimentoS=5  -Dcarga.duracaoS=20  -Dcarga.conexoes=1  -Dcarga.logs=false
+//   -Dcarga.paresPorLote=1   (acima de 1, cada escrita é uma ESCRITA_LOTE com esse número de pares)
+// As outras configurações (-Descrita.modo, -Droteamento.politica, ...) valem para os componentes.
+public final class CargaPontaAPonta {
+    private static final int MAX_AMOSTRAS = 4_000_000;
+    private static final long TIMEOUT_MS = 30000;
+
+    private final int servidores = Math.max(1, Configuracao.inteiro("carga.servidores", 3));
+    private final int concorrencia = Math.max(1, Configuracao.inteiro("carga.concorrencia", 64));
+    private final int percentualEscrita = Configuracao.inteiro("carga.percentualEscrita", 50);
+    private final long aquecimentoNanos = Configuracao.longo("carga.aquecimentoS", 5) * 1_000_000_000L;
+    private final long duracaoNanos = Configuracao.longo("carga.duracaoS", 20) * 1_000_000_000L;
+    private final int paresPorLote = Math.max(1, Configuracao.inteiro("carga.paresPorLote", 1));
+
+    private final Amostras escritas = new Amostras();
+    private final Amostras leituras = new Amostras();
+    private final LongAdder erros = new LongAdder();
+
+    private volatile long inicioMedicao;
+    private volatile long fimMedicao;
+    private volatile boolean encerrado;
+
+    // Latências (ns) das requisições medidas
+    private static class Amostras {
+        final long[] valores = new long[MAX_AMOSTRAS];
+        final AtomicInteger quantidade = new AtomicInteger();
+
+        void registrar(long nanos) {
+            int i = quantidade.getAndIncrement();
+            if (i < valores.length) valores[i] = nanos;
+        }
+
+        // Chamado depois da medição
+        long[] ordenadas() {
+            long[] copia = Arrays.copyOf(valores, Math.min(quantidade.get(), valores.length));
+            Arrays.sort(copia);
+            return copia;
+        }
+    }
+
+    public void executar() throws Exception {
+        PrintStream saida = System.out;
+        int portaLb = portaLivre();
+        int[] portas = new int[servidores];
+        for (int i = 0; i < servidores; i++) portas[i] = portaLivre();
+
+        // Antes de criar os componentes: eles leem a configuração ao iniciar
+        Path temporario = Files.createTempDirectory("carga");
+        System.setProperty("lb.porta", String.valueOf(portaLb));
+        padrao("diario.arquivo", temporario.resolve("diario_lb.bin").toString());
+        // HEARTBEAT mais frequente: o período inicial do LoadBalancer (2 HEARTBEATs) fica curto
+        padrao("cluster.heartbeatMs", "200");
+        // Um único cliente gera toda a carga: sem limite de taxa por cliente
+        padrao("admissao.taxaCliente", "0");
+
+        saida.println("Carga: " + servidores + " servidores, LoadBalancer na porta " + portaLb + ", concorrência "
+                + concorrencia + ", " + percentualEscrita + "% ESCRITAs"
+                + (paresPorLote > 1 ? " (ESCRITA_LOTE de " + paresPorLote + " pares)" : ""));
+        if (!Configuracao.booleano("carga.logs", false)) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        iniciar("carga-loadbalancer", new LoadBalancer());
+        aguardarPorta(portaLb);
+        for (int porta : portas) iniciar("carga-servidor-" + porta, () -> new ApplicationServer(porta).start());
+
+        try (ClienteAssincrono cliente = new ClienteAssincrono("localhost", portaLb,
+                Configuracao.inteiro("carga.conexoes", 1), concorrencia, 256, TIMEOUT_MS)) {
+            aguardarCluster(cliente);
+
+            long agora = System.nanoTime();
+            inicioMedicao = agora + aquecimentoNanos;
+            fimMedicao = inicioMedicao + duracaoNanos;
+            for (int i = 0; i < concorrencia; i++) proxima(cliente);
+
+            TimeUnit.NANOSECONDS.sleep(fimMedicao - System.nanoTime());
+            encerrado = true;
+            // Espera as que ainda estão em andamento (fechar o cliente faria elas falharem)
+            long limite = System.currentTimeMillis() + TIMEOUT_MS;
+            while (cliente.emAndamento() > 0 && System.currentTimeMillis() < limite) Thread.sleep(10);
+        }
+
+        double segundos = duracaoNanos / 1e9;
+        saida.printf("%-10s %10s %12s %10s %10s %10s %10s%n", "", "requisições", "por segundo", "p50 ms", "p99 ms", "p999 ms", "máx ms");
+        relatorio(saida, "ESCRITA", escritas.ordenadas(), segundos);
+        relatorio(saida, "LEITURA", leituras.ordenadas(), segundos);
+        if (paresPorLote > 1) {
+            saida.printf("Pares gravados por segundo: %.0f%n", escritas.quantidade.get() * (double) paresPorLote / segundos);
+        }
+        saida.println("Erros: " + erros.sum());
+
+        for (int porta : portas) {
+            String arquivo = "dados_server_" + porta + ".txt";
+            apagar(new File(arquivo).toPath());
+            apagar(new File(arquivo + ".idx").toPath());
+            apagar(new File(FileManager.diretorioSegmentos(arquivo)).toPath());
+        }
+        apagar(temporario);
+    }
+
+    // Envia a próxima requisição do usuário; a resposta dispara a seguinte
+    private void proxima(ClienteAssincrono cliente) {
+        if (encerrado) return;
+        boolean escrita = ThreadLocalRandom.current().nextInt(100) < percentualEscrita;
+        long inicio = System.nanoTime();
+        try {
+            Mensagem m = escrita ? escrita() : Mensagem.leitura(Mensagem.LEITURA_PADRAO);
+            cliente.submeter(m).whenComplete((resposta, erro) -> {
+                long fim = System.nanoTime();
+                if (inicio >= inicioMedicao && inicio < fimMedicao) {
+                    TipoMensagem esperado = escrita ? TipoMensagem.OK : TipoMensagem.LINHAS;
+                    if (erro != null || resposta.tipo != esperado) erros.increment();
+                    else (escrita ? escritas : leituras).registrar(fim - inicio);
+                }
+                proxima(cliente);
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalStateException e) {
+            // Cliente fechado no fim da medição
+        }
+    }
+
+    private Mensagem escrita() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (paresPorLote == 1) return Mensagem.escrita(0, random.nextInt(999999) + 2, random.nextInt(999999) + 2, 0);
+        int[] pares = new int[paresPorLote * 2];
+        for (int i = 0; i < pares.length; i++) pares[i] = random.nextInt(999999) + 2;
+        return Mensagem.escritaLote(0, pares, paresPorLote, 0);
+    }
+
+    // Espera o LoadBalancer aceitar conexões (os servidores se registram logo ao iniciar)
+    private static void aguardarPorta(int porta) throws InterruptedException {
+        long limite = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < limite) {
+            try {
+                new Socket("localhost", porta).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    // Espera todos os servidores se registrarem no LoadBalancer
+    private void aguardarCluster(ClienteAssincrono cliente) throws Exception {
+        long limite = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < limite) {
+            try {
+                Mensagem membros = cliente.submeter(Mensagem.simples(TipoMensagem.MEMBROS)).get(1, TimeUnit.SECONDS);
+                if (membros.quantidade >= servidores) return;
+            } catch (Exception e) {
+                // LoadBalancer ainda subindo
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Os servidores não se registraram no LoadBalancer");
+    }
+
+    private static void relatorio(PrintStream saida, String nome, long[] latencias, double segundos) {
+        if (latencias.length == 0) {
+            saida.printf("%-10s %10d%n", nome, 0);
+            return;
+        }
+        saida.printf("%-10s %10d %12.0f %10.2f %10.2f %10.2f %10.2f%n", nome, latencias.length, latencias.length / segundos,
+                ms(percentil(latencias, 0.50)), ms(percentil(latencias, 0.99)), ms(percentil(latencias, 0.999)),
+                ms(latencias[latencias.length - 1]));
+    }
+
+    private static long percentil(long[] ordenadas, double p) {
+        int i = (int) Math.ceil(p * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, Math.min(i, ordenadas.length - 1))];
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static void iniciar(String nome, Runnable componente) {
+        Thread t = new Thread(componente, nome);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static void padrao(String chave, String valor) {
+        if (System.getProperty(chave) == null) System.setProperty(chave, valor);
+    }
+
+    private static int portaLivre() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static void apagar(Path caminho) throws IOException {
+        if (!Files.exists(caminho)) return;
+        try (Stream<Path> caminhos = Files.walk(caminho)) {
+            caminhos.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
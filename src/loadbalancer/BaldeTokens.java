@@ -0,0 +1,35 @@
+package loadbalancer;
+
+// Limite de taxa de um cliente (token bucket).
+// O balde enche 'taxaPorSegundo' tokens por segundo até 'capacidade' (rajada máxima); cada requisição
+// gasta um token. Sem token, a requisição é recusada e o cliente recebe quanto tempo esperar.
+class BaldeTokens {
+    private final double taxaPorNano;
+    private final double capacidade;
+    private double tokens;
+    private long ultimaRecarga = System.nanoTime();
+
+    BaldeTokens(double taxaPorSegundo, double capacidade) {
+        this.taxaPorNano = taxaPorSegundo / 1_000_000_000.0;
+        this.capacidade = Math.max(1, capacidade);
+        this.tokens = this.capacidade;
+    }
+
+    // Sem uso há tempo suficiente para estar cheio de novo: descartá-lo e criar outro depois dá no mesmo
+    synchronized boolean cheio(long agora) {
+        return tokens + (agora - ultimaRecarga) * taxaPorNano >= capacidade;
+    }
+
+    // 0 se a requisição pode passar; senão, em quantos ms haverá um token
+    synchronized long consumir() {
+        long agora = System.nanoTime();
+        tokens = Math.min(capacidade, tokens + (agora - ultimaRecarga) * taxaPorNano);
+        ultimaRecarga = agora;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / taxaPorNano / 1_000_000));
+    }
+}
@@ -0,0 +1,49 @@
+package loadbalancer;
+
+import network.Mensagem;
+import observabilidade.Log;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Requisições que esgotaram as retransmissões (dead-letter).
+// Ficam em memória (as mais recentes, até 'capacidade') e são anotadas no arquivo para que possam
+// ser conferidas ou reenviadas manualmente. Se a confirmação chegar depois de desistirmos, a
+// requisição sai daqui: ela acabou sendo gravada.
+public class CartasMortas {
+    private final String arquivo;
+    private final Map<Long, Mensagem> mensagens;
+
+    public CartasMortas(String arquivo, int capacidade) {
+        this.arquivo = arquivo;
+        this.mensagens = new LinkedHashMap<Long, Mensagem>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Mensagem> maisAntiga) {
+                return size() > capacidade;
+            }
+        };
+    }
+
+    public synchronized void adicionar(Mensagem mensagem, int tentativas) {
+        mensagens.put(mensagem.id, mensagem);
+        // Mesmo formato de ESCRITA do protocolo de texto, com as tentativas no fim
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(arquivo, true))) {
+            bw.write(mensagem + ";TENTATIVAS=" + tentativas);
+            bw.newLine();
+        } catch (IOException e) {
+            Log.erro("[LoadBalancer] Erro ao registrar requisição abandonada: " + e.getMessage());
+        }
+    }
+
+    // Confirmação atrasada de uma requisição que já tinha sido abandonada
+    public synchronized boolean remover(long id) {
+        return mensagens.remove(id) != null;
+    }
+
+    public synchronized int tamanho() {
+        return mensagens.size();
+    }
+}
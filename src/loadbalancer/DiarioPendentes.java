@@ -0,0 +1,313 @@
+package loadbalancer;
+
+import network.Mensagem;
+import network.TipoMensagem;
+import observabilidade.Log;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// Diário (write-ahead log) das ESCRITAs aceitas pelo LoadBalancer e ainda não confirmadas.
+// Se o LoadBalancer cair, as requisições pendentes são lidas daqui ao reiniciar e retransmitidas.
+//
+// - Registros binários, de tamanho fixo por tipo (menos o do lote), cada um com CRC32 no fim:
+//     ACEITA      [byte 1][long id][int x][int y][long seq][int crc]
+//     CONFIRMADA  [byte 2][long id][int crc]
+//     ABANDONADA  [byte 3][long id][int crc]   (foi para as cartas mortas)
+//     ACEITA_LOTE [byte 4][long id][long seq][int quantidade][int x][int y]...[int crc]   (ESCRITA_LOTE)
+// - Quem chama só copia o registro para um buffer em memória (microssegundos). Uma thread grava
+//   tudo o que acumulou de uma vez e faz um único fsync (group commit); enquanto ela grava, os
+//   próximos registros enchem o outro buffer.
+// - O arquivo é pré-alocado com zeros: as gravações não mudam o tamanho dele, então o fsync não
+//   precisa atualizar metadados. Byte de tipo 0 marca o fim dos registros.
+// - Quando o arquivo enche, ele é reescrito só com as requisições ainda pendentes (compactação).
+// - Os registros chegam ao disco na ordem em que foram aceitos. Se uma gravação falha, o próximo lote
+//   começa por uma compactação (o fim do arquivo pode ter ficado com um registro pela metade) e,
+//   com 'repetirFalhas', o mesmo lote é gravado de novo antes dos seguintes em vez de falhar.
+public class DiarioPendentes {
+    private static final int MAGICO = 0x4C425731; // "LBW1"
+    private static final int CABECALHO = Integer.BYTES;
+
+    private static final byte ACEITA = 1;
+    private static final byte CONFIRMADA = 2;
+    private static final byte ABANDONADA = 3;
+    private static final byte ACEITA_LOTE = 4;
+    private static final int TAMANHO_ACEITA = 1 + Long.BYTES + 2 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int TAMANHO_CONFIRMADA = 1 + Long.BYTES + Integer.BYTES;
+    // Sem os pares
+    private static final int TAMANHO_ACEITA_LOTE = 1 + 2 * Long.BYTES + 2 * Integer.BYTES;
+    // Pausa antes de repetir uma gravação que falhou
+    private static final long PAUSA_REPETICAO_MS = 1000;
+
+    private final Path arquivo;
+    private final boolean repetirFalhas;
+    private long capacidade;
+    private FileChannel canal;
+    // Onde o próximo registro será gravado (só a thread de gravação usa depois de abrir)
+    private long posicao;
+    // Requisições ainda pendentes, para a compactação
+    private Supplier<Collection<Mensagem>> pendentes;
+
+    // Registros esperando a próxima gravação e quem espera por eles (protegidos por 'trava')
+    private final Object trava = new Object();
+    private ByteBuffer acumulado = ByteBuffer.allocate(64 * 1024);
+    private List<CompletableFuture<Void>> aguardando = new ArrayList<>();
+    // Buffers da gravação em andamento (trocados com os de cima a cada rodada)
+    private ByteBuffer gravando = ByteBuffer.allocate(64 * 1024);
+    private List<CompletableFuture<Void>> concluindo = new ArrayList<>();
+
+    private final CRC32 crcEscrita = new CRC32();
+
+    // 'repetirFalhas': os Futures de aceita() nunca falham; o lote é gravado de novo até dar certo
+    // (os registros seguintes esperam por ele)
+    public DiarioPendentes(String arquivo, long capacidade, boolean repetirFalhas) {
+        this.arquivo = Paths.get(arquivo);
+        this.capacidade = capacidade;
+        this.repetirFalhas = repetirFalhas;
+    }
+
+    // Lê as requisições que ficaram pendentes na execução anterior, compacta o arquivo e
+    // inicia a thread de gravação. 'pendentes' fornece as requisições em aberto na hora de compactar.
+    public List<Mensagem> abrir(Supplier<Collection<Mensagem>> pendentes) throws IOException {
+        this.pendentes = pendentes;
+        List<Mensagem> recuperadas = new ArrayList<>(ler().values());
+        compactar(recuperadas, 0);
+
+        Thread t = new Thread(this::loopGravacao, "diario-lb");
+        t.setDaemon(true);
+        t.start();
+        return recuperadas;
+    }
+
+    // ESCRITA (ou ESCRITA_LOTE) aceita; o Future completa quando o registro estiver no disco
+    public CompletableFuture<Void> aceita(Mensagem m) {
+        CompletableFuture<Void> gravado = new CompletableFuture<>();
+        synchronized (trava) {
+            ByteBuffer b = espaco(tamanhoAceita(m));
+            int inicio = b.position();
+            registrarAceita(b, m);
+            b.putInt(crc(b, inicio));
+            aguardando.add(gravado);
+            trava.notify();
+        }
+        return gravado;
+    }
+
+    public void confirmada(long id) {
+        fim(CONFIRMADA, id);
+    }
+
+    public void abandonada(long id) {
+        fim(ABANDONADA, id);
+    }
+
+    // Confirmações não precisam esperar o disco: se se perderem, a requisição só é retransmitida
+    // depois de reiniciar e o servidor a reconhece pelo ID
+    private void fim(byte tipo, long id) {
+        synchronized (trava) {
+            ByteBuffer b = espaco(TAMANHO_CONFIRMADA);
+            int inicio = b.position();
+            b.put(tipo).putLong(id);
+            b.putInt(crc(b, inicio));
+            trava.notify();
+        }
+    }
+
+    private static int tamanhoAceita(Mensagem m) {
+        if (m.tipo == TipoMensagem.ESCRITA_LOTE) return TAMANHO_ACEITA_LOTE + m.quantidade * 2 * Integer.BYTES;
+        return TAMANHO_ACEITA;
+    }
+
+    // Registro de uma requisição aceita, sem o CRC
+    private static void registrarAceita(ByteBuffer b, Mensagem m) {
+        if (m.tipo == TipoMensagem.ESCRITA_LOTE) {
+            b.put(ACEITA_LOTE).putLong(m.id).putLong(m.seq).putInt(m.quantidade);
+            for (int i = 0; i < m.quantidade * 2; i++) b.putInt(m.valores[i]);
+        } else {
+            b.put(ACEITA).putLong(m.id).putInt(m.x).putInt(m.y).putLong(m.seq);
+        }
+    }
+
+    // Garante espaço no buffer acumulado (chamado com 'trava')
+    private ByteBuffer espaco(int bytes) {
+        if (acumulado.remaining() < bytes) {
+            ByteBuffer maior = ByteBuffer.allocate(Math.max(acumulado.capacity() * 2, acumulado.position() + bytes));
+            acumulado.flip();
+            maior.put(acumulado);
+            acumulado = maior;
+        }
+        return acumulado;
+    }
+
+    // CRC dos bytes do registro a partir de 'inicio' (chamado com 'trava')
+    private int crc(ByteBuffer b, int inicio) {
+        crcEscrita.reset();
+        crcEscrita.update(b.array(), inicio, b.position() - inicio);
+        return (int) crcEscrita.getValue();
+    }
+
+    private void loopGravacao() {
+        boolean falhou = false;
+        while (true) {
+            synchronized (trava) {
+                while (acumulado.position() == 0) {
+                    try {
+                        trava.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                // Troca os buffers: os próximos registros vão para o outro enquanto este é gravado
+                ByteBuffer b = gravando;
+                gravando = acumulado;
+                acumulado = b;
+                List<CompletableFuture<Void>> l = concluindo;
+                concluindo = aguardando;
+                aguardando = l;
+            }
+
+            gravando.flip();
+            try {
+                while (true) {
+                    try {
+                        if (falhou || posicao + gravando.remaining() > capacidade) {
+                            // Arquivo cheio, ou a gravação anterior parou no meio: recomeça com as pendentes
+                            // (os registros deste lote vêm logo depois)
+                            compactar(pendentes.get(), gravando.remaining());
+                            falhou = false;
+                        }
+                        while (gravando.hasRemaining()) {
+                            posicao += canal.write(gravando, posicao);
+                        }
+                        canal.force(false);
+                        for (CompletableFuture<Void> f : concluindo) f.complete(null);
+                        break;
+                    } catch (IOException e) {
+                        falhou = true;
+                        Log.erro("[LoadBalancer] Erro ao gravar o diário de requisições: " + e.getMessage());
+                        if (!repetirFalhas) {
+                            for (CompletableFuture<Void> f : concluindo) f.completeExceptionally(e);
+                            break;
+                        }
+                        gravando.rewind();
+                        Thread.sleep(PAUSA_REPETICAO_MS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                gravando.clear();
+                concluindo.clear();
+            }
+        }
+    }
+
+    // Reescreve o diário só com as requisições pendentes, num arquivo novo que substitui o atual.
+    // 'reserva' = bytes que serão gravados logo em seguida.
+    private void compactar(Collection<Mensagem> abertas, int reserva) throws IOException {
+        long necessario = CABECALHO + reserva;
+        for (Mensagem m : abertas) necessario += tamanhoAceita(m);
+        if (necessario * 2 > capacidade) capacidade = necessario * 2;
+
+        Path novo = arquivo.resolveSibling(arquivo.getFileName() + ".novo");
+        try (RandomAccessFile raf = new RandomAccessFile(novo.toFile(), "rw")) {
+            FileChannel c = raf.getChannel();
+            c.truncate(0);
+            preAlocar(c, capacidade);
+
+            ByteBuffer b = ByteBuffer.allocate((int) (necessario - reserva));
+            b.putInt(MAGICO);
+            CRC32 crc = new CRC32();
+            for (Mensagem m : abertas) {
+                int inicio = b.position();
+                registrarAceita(b, m);
+                crc.reset();
+                crc.update(b.array(), inicio, b.position() - inicio);
+                b.putInt((int) crc.getValue());
+            }
+            b.flip();
+            long p = 0;
+            while (b.hasRemaining()) p += c.write(b, p);
+            c.force(true);
+            posicao = p;
+        }
+
+        if (canal != null) canal.close();
+        Files.move(novo, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        canal = new RandomAccessFile(arquivo.toFile(), "rw").getChannel();
+    }
+
+    // Zeros até o tamanho final, gravados de verdade (um arquivo esparso alocaria os blocos só na hora do fsync)
+    private static void preAlocar(FileChannel c, long tamanho) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate(1024 * 1024);
+        long p = 0;
+        while (p < tamanho) {
+            zeros.clear();
+            if (tamanho - p < zeros.capacity()) zeros.limit((int) (tamanho - p));
+            p += c.write(zeros, p);
+        }
+    }
+
+    // Requisições aceitas e não confirmadas, na ordem em que chegaram.
+    // Para no primeiro registro vazio ou corrompido (gravação interrompida no meio).
+    private Map<Long, Mensagem> ler() throws IOException {
+        Map<Long, Mensagem> abertas = new LinkedHashMap<>();
+        if (!Files.exists(arquivo)) return abertas;
+
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(arquivo));
+        if (b.remaining() < CABECALHO || b.getInt() != MAGICO) {
+            Log.erro("[LoadBalancer] Diário " + arquivo + " não reconhecido. Ignorando.");
+            return abertas;
+        }
+
+        CRC32 crc = new CRC32();
+        while (b.hasRemaining()) {
+            int inicio = b.position();
+            byte tipo = b.get();
+            int tamanho = tipo == ACEITA ? TAMANHO_ACEITA : (tipo == CONFIRMADA || tipo == ABANDONADA) ? TAMANHO_CONFIRMADA : 0;
+            if (tipo == ACEITA_LOTE && b.remaining() >= TAMANHO_ACEITA_LOTE - 1) {
+                // A quantidade de pares vem depois do id e da sequência
+                int quantidade = b.getInt(inicio + 1 + 2 * Long.BYTES);
+                if (quantidade > 0 && quantidade <= (b.remaining() - TAMANHO_ACEITA_LOTE + 1) / (2 * Integer.BYTES)) {
+                    tamanho = TAMANHO_ACEITA_LOTE + quantidade * 2 * Integer.BYTES;
+                }
+            }
+            if (tamanho == 0 || b.remaining() < tamanho - 1) break;
+
+            crc.reset();
+            crc.update(b.array(), inicio, tamanho - Integer.BYTES);
+            long id = b.getLong();
+            if (tipo == ACEITA || tipo == ACEITA_LOTE) {
+                Mensagem m;
+                if (tipo == ACEITA) {
+                    m = Mensagem.escrita(id, b.getInt(), b.getInt(), b.getLong());
+                } else {
+                    long seq = b.getLong();
+                    int[] pares = new int[b.getInt() * 2];
+                    for (int i = 0; i < pares.length; i++) pares[i] = b.getInt();
+                    m = Mensagem.escritaLote(id, pares, pares.length / 2, seq);
+                }
+                if (b.getInt() != (int) crc.getValue()) break;
+                abertas.put(id, m);
+            } else {
+                if (b.getInt() != (int) crc.getValue()) break;
+                abertas.remove(id);
+            }
+        }
+        return abertas;
+    }
+}
@@ -0,0 +1,24 @@
+package loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// "Power of two choices": sorteia dois servidores e fica com o menos carregado.
+// Quase tão bom quanto olhar todos, mas não manda todo mundo para o mesmo servidor
+// quando a informação de carga está desatualizada.
+class DuasEscolhas implements PoliticaRoteamento {
+    @Override
+    public EstadoServidor escolher(List<EstadoServidor> disponiveis) {
+        int n = disponiveis.size();
+        if (n == 1) return disponiveis.get(0);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(n);
+        int b = random.nextInt(n - 1);
+        if (b >= a) b++; // dois servidores diferentes
+
+        EstadoServidor primeiro = disponiveis.get(a);
+        EstadoServidor segundo = disponiveis.get(b);
+        return segundo.emAndamento() < primeiro.emAndamento() ? segundo : primeiro;
+    }
+}
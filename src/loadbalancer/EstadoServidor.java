@@ -0,0 +1,89 @@
+package loadbalancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// O que o LoadBalancer sabe de um servidor: carga atual, latência, limite de carga e se está fora do ar.
+public class EstadoServidor {
+    // Peso da amostra nova na média móvel de latência
+    private static final double ALFA_EWMA = 0.3;
+
+    public final int porta;
+    public final int peso;
+
+    // ESCRITAs enviadas a este servidor que ainda não foram confirmadas
+    private final AtomicInteger emAndamento = new AtomicInteger();
+    // Média móvel exponencial do tempo entre o envio e a confirmação (0 = ainda sem amostras)
+    private volatile double latenciaMediaMs = 0;
+    // Quantas ESCRITAs o servidor aceita ao mesmo tempo (informado por ele no HEARTBEAT e no REJEITADO)
+    private volatile int limite = Integer.MAX_VALUE;
+
+    // Falhas seguidas ao falar com o servidor e até quando ele fica fora do roteamento
+    private int falhasSeguidas = 0;
+    private volatile long ejetadoAte = 0;
+
+    // Usado só pelo RodizioPonderado (protegido pelo lock da política)
+    int pesoAtual = 0;
+
+    public EstadoServidor(int porta, int peso) {
+        this.porta = porta;
+        this.peso = Math.max(1, peso);
+    }
+
+    public int emAndamento() {
+        return emAndamento.get();
+    }
+
+    public double latenciaMediaMs() {
+        return latenciaMediaMs;
+    }
+
+    public int limite() {
+        return limite;
+    }
+
+    // Já tem tantas ESCRITAs em andamento quanto o servidor aceita
+    public boolean saturado() {
+        return emAndamento.get() >= limite;
+    }
+
+    void atualizarLimite(int novo) {
+        if (novo > 0) limite = novo;
+    }
+
+    public boolean disponivel(long agora) {
+        return agora >= ejetadoAte;
+    }
+
+    long ejetadoAte() {
+        return ejetadoAte;
+    }
+
+    void enviado() {
+        emAndamento.incrementAndGet();
+    }
+
+    // A requisição saiu deste servidor (confirmada ou mandada para outro)
+    void liberado() {
+        emAndamento.updateAndGet(n -> Math.max(0, n - 1));
+    }
+
+    synchronized void registrarLatencia(double ms) {
+        latenciaMediaMs = latenciaMediaMs == 0 ? ms : ALFA_EWMA * ms + (1 - ALFA_EWMA) * latenciaMediaMs;
+    }
+
+    // Devolve o tempo de ejeção aplicado: dobra a cada falha seguida, até o máximo
+    synchronized long registrarFalha(long agora, long ejecaoBaseMs, long ejecaoMaxMs) {
+        falhasSeguidas++;
+        long tempo = Math.min(ejecaoMaxMs, ejecaoBaseMs << Math.min(falhasSeguidas - 1, 20));
+        ejetadoAte = agora + tempo;
+        return tempo;
+    }
+
+    // Devolve true se o servidor estava marcado como fora do ar
+    synchronized boolean registrarSucesso() {
+        boolean estavaFora = falhasSeguidas > 0;
+        falhasSeguidas = 0;
+        ejetadoAte = 0;
+        return estavaFora;
+    }
+}
@@ -0,0 +1,21 @@
+package loadbalancer;
+
+import java.util.List;
+
+// Menor custo estimado = latência média (EWMA) x (requisições em andamento + 1).
+// Servidor ainda sem amostras tem latência 0 e é escolhido primeiro, para ganhar uma medida.
+class LatenciaEwma implements PoliticaRoteamento {
+    @Override
+    public EstadoServidor escolher(List<EstadoServidor> disponiveis) {
+        EstadoServidor melhor = null;
+        double menorCusto = Double.MAX_VALUE;
+        for (EstadoServidor s : disponiveis) {
+            double custo = s.latenciaMediaMs() * (s.emAndamento() + 1);
+            if (custo < menorCusto || (custo == menorCusto && s.emAndamento() < melhor.emAndamento())) {
+                melhor = s;
+                menorCusto = custo;
+            }
+        }
+        return melhor;
+    }
+}
@@ -1,213 +1,738 @@
 package loadbalancer;
 
+import network.Mensagem;
+import network.PoolConexoes;
+import network.Resposta;
+import network.TipoMensagem;
+import config.Cluster;
+import config.Configuracao;
+import config.ModoEscrita;
+import config.NivelLeitura;
+import network.NucleoServidor;
+import observabilidade.Histograma;
+import observabilidade.Log;
+import observabilidade.Metricas;
+
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetAddress;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public class LoadBalancer implements Runnable {
-    private static final int PORTA_LB = 8080;
-    private static final int[] SERVIDORES = {9001, 9002, 9003};
-    
-    // Constante de Timeout em minutos para retransmissão no caso 100
-    private static final long TIMEOUT_RETRANSMISSAO = 100 * 60 * 1000; 
+    // Porta configurável (-Dlb.porta); os servidores não são mais fixos, eles se registram (ver Membros)
+    private final int portaLb = Cluster.portaLoadBalancer();
+
+    // Retransmissão: cada requisição tem o seu prazo, que dobra a cada tentativa (até o máximo).
+    // Depois de maxTentativas ela vai para as cartas mortas (exceto no modo SEQUENCIADOR, em que
+    // uma sequência abandonada pararia todos os servidores).
+    //   -Dretransmissao.timeoutMs=10000  -Dretransmissao.maxTimeoutMs=120000
+    //   -Dretransmissao.maxTentativas=5  -Dretransmissao.tickMs=100
+    private final long timeoutRetransmissaoMs = Configuracao.longo("retransmissao.timeoutMs", 10000);
+    private final long timeoutMaximoMs = Configuracao.longo("retransmissao.maxTimeoutMs", 120000);
+    private final int maxTentativas = Configuracao.inteiro("retransmissao.maxTentativas", 5);
+    private final RodaTemporizacao prazos = new RodaTemporizacao(Configuracao.longo("retransmissao.tickMs", 100));
+    private final CartasMortas cartasMortas = new CartasMortas("cartas_mortas_lb.txt",
+            Configuracao.inteiro("retransmissao.maxCartasMortas", 10000));
+
+    // Métricas (mensagem METRICAS e JMX); os medidores são registrados em run()
+    private final Metricas metricas = new Metricas("loadbalancer");
+    private final LongAdder escritasAceitas = metricas.contador("escrita.aceitas");
+    private final LongAdder escritasRejeitadas = metricas.contador("escrita.rejeitadas");
+    private final LongAdder lotesAceitos = metricas.contador("escrita.lotes");
+    private final LongAdder paresLote = metricas.contador("escrita.paresLote");
+    private final LongAdder escritasRecusadasServidor = metricas.contador("escrita.recusadasPeloServidor");
+    private final LongAdder retransmissoes = metricas.contador("escrita.retransmissoes");
+    private final LongAdder abandonadas = metricas.contador("escrita.abandonadas");
+    private final LongAdder leituras = metricas.contador("leitura.total");
+    private final LongAdder leiturasRejeitadas = metricas.contador("leitura.rejeitadas");
+    private final LongAdder locksRecusados = metricas.contador("lock.recusados");
+    // Da chegada da ESCRITA até a CONFIRMACAO do servidor, e até o registro estar no diário
+    private final Histograma tempoConfirmacao = metricas.histograma("escrita.confirmacao");
+    private final Histograma tempoDiario = metricas.histograma("diario.gravacao");
+    // Tempo entre conceder o lock e o servidor liberar
+    private final Histograma posseLock = metricas.histograma("lock.posse");
 
     // Controle de Mutex (Seção Crítica)
     private boolean lockOcupado = false;
+    private long lockConcedidoEmNanos;
+    // Porta do servidor com o lock (0 = não informada): se ele sair do cluster, o lock passa para o próximo
+    private int donoLock;
     
     // FILA DE ESPERA (Garante que servidores sejam processados na ordem que pediram o lock)
-    // Guardamos o PrintWriter para poder responder "GRANTED" para o servidor certo depois.
-    private final Queue<PrintWriter> filaDeEsperaLock = new LinkedList<>();
+    // Guardamos a Resposta pendente para poder responder "GRANTED" para o servidor certo depois.
+    // Nenhuma thread fica parada esperando: a resposta é enviada pela conexão persistente quando chegar a vez.
+    // A fila é limitada (-Dlock.maxFila=1024): cheia, o pedido é recusado com REJEITADO e o servidor tenta depois.
+    // Cada pedido guarda a porta de quem pediu, para descartar os pedidos de um servidor que saiu do cluster.
+    private final int maxFilaLock = Configuracao.inteiro("lock.maxFila", 1024);
+    private final Queue<PedidoLock> filaDeEsperaLock = new ArrayDeque<>();
     
     private final Object monitorLock = new Object(); // Objeto para sincronização das threads
 
+    private final ModoEscrita modoEscrita = ModoEscrita.configurado();
+
+    // Diário em disco das requisições pendentes: sobrevive a uma queda do LoadBalancer.
+    // A escrita só é roteada depois de estar no diário.
+    // No modo SEQUENCIADOR uma falha do diário não é devolvida: a sequência já foi dada e descartá-la
+    // pararia todos os servidores, então o diário grava de novo até conseguir.
+    //   -Ddiario.ativo=true  -Ddiario.arquivo=diario_lb.bin  -Ddiario.tamanhoMb=16
+    private final DiarioPendentes diario = Configuracao.booleano("diario.ativo", true)
+            ? new DiarioPendentes(Configuracao.texto("diario.arquivo", "diario_lb.bin"),
+                    Configuracao.longo("diario.tamanhoMb", 16) * 1024 * 1024,
+                    modoEscrita == ModoEscrita.SEQUENCIADOR)
+            : null;
+
+    // Controle de admissão: o LoadBalancer recusa trabalho (REJEITADO com "tente de novo em N ms")
+    // em vez de acumular sem limite.
+    // - Cada cliente (endereço IP, qualquer que seja o número de conexões) tem um balde de tokens: no
+    //   máximo taxaCliente requisições por segundo, com rajadas de até rajadaCliente.
+    // - ESCRITA nova é recusada quando já há maxPendentes sem confirmação ou quando todos os
+    //   servidores estão no limite que eles mesmos informaram.
+    //   -Dadmissao.taxaCliente=5000  -Dadmissao.rajadaCliente=10000
+    //   -Dadmissao.maxPendentes=100000  -Dadmissao.tentarEmMs=100
+    private final int taxaCliente = Configuracao.inteiro("admissao.taxaCliente", 5000);
+    private final int rajadaCliente = Configuracao.inteiro("admissao.rajadaCliente", 2 * taxaCliente);
+    private final int maxPendentes = Configuracao.inteiro("admissao.maxPendentes", 100000);
+    private final long tentarEmMs = Configuracao.longo("admissao.tentarEmMs", 100);
+    // Baldes que voltaram a ficar cheios (cliente parado) são descartados a cada LIMPEZA_BALDES_MS
+    private static final long LIMPEZA_BALDES_MS = 10000;
+    private final Map<InetAddress, BaldeTokens> baldes = new ConcurrentHashMap<>();
+
     // Controle de Retransmissão: Mapa de ID -> Dados da Requisição
-    // ConcurrentHashMap para permitir acesso seguro entre a thread do cliente e a thread de retransmissão
-    private final Map<String, RequestEntry> requisicoesPendentes = new ConcurrentHashMap<>();
+    // ConcurrentHashMap para permitir acesso seguro entre a thread do cliente e a thread da roda de prazos
+    private final Map<Long, RequestEntry> requisicoesPendentes = new ConcurrentHashMap<>();
+
+    // IDs das requisições: números de 64 bits em vez de UUID em texto.
+    // Começa a partir do relógio para não repetir IDs de uma execução anterior do LoadBalancer.
+    private final AtomicLong proximoIdRequisicao = new AtomicLong(System.currentTimeMillis() << 20);
+
+    // Pares aceitos numa única ESCRITA_LOTE (-Descrita.maxParesLote)
+    private final int maxParesLote = Configuracao.inteiro("escrita.maxParesLote", 65536);
+
+    // Modo SEQUENCIADOR: última sequência atribuída a uma ESCRITA.
+    // A sequência N corresponde à linha N dos arquivos de dados.
+    private final AtomicLong sequencia = new AtomicLong();
+    // Dar a sequência e pôr no diário acontecem juntos: o diário grava na ordem em que recebe, então
+    // quando a sequência S+1 está no disco todas as anteriores também estão. Como a escrita só é roteada
+    // depois de gravada, nenhum servidor recebe S+1 sem que S sobreviva a uma queda do LoadBalancer.
+    private final Object monitorSequencia = new Object();
+
+    // Tempo máximo esperando um servidor responder uma LEITURA
+    private static final long TIMEOUT_LEITURA_MS = 2000;
+    private final NivelLeitura nivelLeituraPadrao = NivelLeitura.padrao();
+    // Maior contagem de linhas já informada por um servidor (referência para calcular o atraso das réplicas)
+    private final AtomicLong maiorContagemVista = new AtomicLong();
+
+    // Conexões persistentes com os servidores (reaproveitadas entre mensagens)
+    private final PoolConexoes poolServidores = new PoolConexoes("localhost", 2);
+
+    // Escolha do servidor de cada requisição (política configurável) e saúde dos servidores
+    private final Roteador roteador = new Roteador();
+
+    // Servidores do cluster (registro, HEARTBEAT e saída); alimenta o roteador
+    private final Membros membros = new Membros(roteador, Cluster.timeoutMembroMs());
+
+    // Logo depois de iniciar (ou reiniciar), o LoadBalancer ainda não conhece todos os servidores nem,
+    // no modo SEQUENCIADOR, até onde eles já gravaram: ele aprende pelos REGISTRAR/HEARTBEAT.
+    // Até lá não aceita escritas novas nem concede o lock (quem gravasse replicaria para uma lista incompleta).
+    private final long inicioOperacao = System.currentTimeMillis() + 2 * Cluster.intervaloHeartbeatMs();
+
+    // Pedido de lock esperando na fila
+    private static class PedidoLock {
+        final int porta;
+        final Resposta resposta;
+
+        PedidoLock(int porta, Resposta resposta) {
+            this.porta = porta;
+            this.resposta = resposta;
+        }
+    }
 
     // Classe interna para armazenar dados da requisição pendente
     private static class RequestEntry {
-        String mensagemCompleta; // Mensagem com ID
-        long timestampInicio;
+        Mensagem mensagemCompleta; // Mensagem com ID
+        // Quantas vezes já foi retransmitida e o prazo agendado atualmente (só a thread da roda altera depois do envio)
+        int tentativas;
+        volatile RodaTemporizacao.Tarefa prazo;
+        // Servidor que está com a requisição e quando ela foi enviada (para a latência)
+        volatile EstadoServidor servidor;
+        volatile long enviadoEmNanos;
+        final long recebidaEmNanos = System.nanoTime();
 
-        public RequestEntry(String msg, long time) {
+        public RequestEntry(Mensagem msg) {
             this.mensagemCompleta = msg;
-            this.timestampInicio = time;
         }
     }
 
     @Override
     public void run() {
-        System.out.println("[LoadBalancer] Iniciado na porta " + PORTA_LB);
+        Log.info("[LoadBalancer] Iniciado na porta " + portaLb + ". Aguardando servidores se registrarem...");
+        registrarMedidores();
+
+        // Prazos de retransmissão
+        prazos.iniciar("prazos-retransmissao");
+        prazos.agendar(LIMPEZA_BALDES_MS, this::limparBaldes);
 
-        // Inicia a Thread de Monitoramento de Retransmissão
-        new Thread(this::monitorarRetransmissao).start();
+        if (diario != null) recuperarPendentes();
 
-        try (ServerSocket serverSocket = new ServerSocket(PORTA_LB)) {
+        // Quem sai do cluster não fica com o lock nem na fila dele
+        membros.aoRemover(this::membroRemovido);
+
+        // Remove do cluster os servidores que pararam de mandar HEARTBEAT
+        Thread expiracao = new Thread(() -> {
             while (true) {
-                // Aceita conexão e delega para uma thread (não bloqueia novos clientes)
-                Socket clientSocket = serverSocket.accept();
-                // O handleClient é instanciado em nova thread para cada cliente
-                // Assim, múltiplos clientes podem ser atendidos simultaneamente
-                new Thread(() -> handleClient(clientSocket)).start();
+                try {
+                    Thread.sleep(Cluster.intervaloHeartbeatMs());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                membros.expirar();
             }
+        }, "membros-expiracao");
+        expiracao.setDaemon(true);
+        expiracao.start();
+
+        try {
+            // Cada conexão aceita pode trazer várias mensagens (conexões persistentes multiplexadas)
+            // ou uma única mensagem no formato antigo. O modo (threads ou NIO) vem da configuração.
+            NucleoServidor.criar(portaLb, this::processarMensagem).iniciar();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    // Loop infinito que verifica timeouts
-    private void monitorarRetransmissao() {
-        System.out.println("[LoadBalancer] Monitor de retransmissão iniciado.");
-        while (true) {
-            try {
-                Thread.sleep(1000); // Verifica a cada 1 segundo
-                long agora = System.currentTimeMillis();
-
-                // Itera sobre as requisições pendentes
-                for (Map.Entry<String, RequestEntry> entry : requisicoesPendentes.entrySet()) {
-                    String id = entry.getKey();
-                    RequestEntry req = entry.getValue();
-
-                    if ((agora - req.timestampInicio) > TIMEOUT_RETRANSMISSAO) {
-                        System.out.println("[LoadBalancer] TIMEOUT na requisição " + id + ". Retransmitindo...");
-                        
-                        // Retransmite para um servidor aleatório
-                        enviarParaUmServidor(req.mensagemCompleta);
-                        
-                        // Atualiza o timestamp para não retransmitir imediatamente de novo (espera mais 3 min)
-                        req.timestampInicio = agora;
-                    }
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    // Filas e cargas, lidas só quando as métricas são consultadas
+    private void registrarMedidores() {
+        metricas.medidor("escrita.pendentes", requisicoesPendentes::size);
+        metricas.medidor("cartasMortas", cartasMortas::tamanho);
+        metricas.medidor("lock.fila", () -> {
+            synchronized (monitorLock) {
+                return filaDeEsperaLock.size();
             }
-        }
+        });
+        metricas.medidor("membros.versao", membros::versao);
+        metricas.medidor("membros.quantidade", () -> roteador.servidores().size());
+        metricas.grupo(valores -> {
+            for (EstadoServidor s : roteador.servidores()) {
+                valores.put("servidor." + s.porta + ".emAndamento", (long) s.emAndamento());
+                valores.put("servidor." + s.porta + ".limite", (long) s.limite());
+                valores.put("servidor." + s.porta + ".latenciaMediaUs", (long) (s.latenciaMediaMs() * 1000));
+            }
+        });
+        metricas.publicarJmx();
     }
 
-    private void handleClient(Socket clientSocket) {
+    // Relê do diário as ESCRITAs que não foram confirmadas antes de o LoadBalancer parar.
+    // Elas são retransmitidas quando os servidores já tiverem se registrado de novo (eles ignoram as que já gravaram).
+    private void recuperarPendentes() {
+        List<Mensagem> recuperadas;
         try {
-            // Nota: Não usamos 'try-with-resources' fechando o socket automaticamente aqui
-            // porque se o servidor entrar na fila de espera, precisaremos manter esse socket aberto.
-            BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-
-            String request = in.readLine();
-            if (request == null) {
-                clientSocket.close();
-                return;
+            recuperadas = diario.abrir(() -> {
+                List<Mensagem> abertas = new ArrayList<>(requisicoesPendentes.size());
+                for (RequestEntry req : requisicoesPendentes.values()) abertas.add(req.mensagemCompleta);
+                return abertas;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível abrir o diário de requisições", e);
+        }
+        if (recuperadas.isEmpty()) return;
+
+        long espera = Math.max(0, inicioOperacao - System.currentTimeMillis());
+        for (Mensagem m : recuperadas) {
+            // IDs e sequências novos continuam depois dos recuperados (num lote, depois do último par)
+            proximoIdRequisicao.accumulateAndGet(m.id + pares(m) - 1, Math::max);
+            if (m.seq != 0) aprenderSequencia(m.seq + pares(m) - 1);
+
+            RequestEntry entrada = new RequestEntry(m);
+            requisicoesPendentes.put(m.id, entrada);
+            entrada.prazo = prazos.agendar(espera, () -> retransmitir(entrada));
+        }
+        Log.info("[LoadBalancer] " + recuperadas.size() + " requisições pendentes recuperadas do diário.");
+    }
+
+    // Prazo da tentativa atual: timeout * 2^tentativas, limitado ao máximo
+    private void agendarRetransmissao(RequestEntry req) {
+        long atraso = timeoutRetransmissaoMs << Math.min(req.tentativas, 20);
+        if (atraso <= 0 || atraso > timeoutMaximoMs) atraso = timeoutMaximoMs;
+        req.prazo = prazos.agendar(atraso, () -> retransmitir(req));
+    }
+
+    // Roda na thread da roda quando o prazo da requisição vence sem CONFIRMACAO
+    private void retransmitir(RequestEntry req) {
+        long id = req.mensagemCompleta.id;
+        if (requisicoesPendentes.get(id) != req) return; // confirmada enquanto o prazo vencia
+
+        // O servidor anterior não deu conta: a requisição sai da carga dele
+        EstadoServidor anterior = req.servidor;
+        if (anterior != null) roteador.cancelado(anterior);
+
+        req.tentativas++;
+        if (req.tentativas > maxTentativas && modoEscrita != ModoEscrita.SEQUENCIADOR) {
+            if (requisicoesPendentes.remove(id, req)) {
+                cartasMortas.adicionar(req.mensagemCompleta, req.tentativas - 1);
+                if (diario != null) diario.abandonada(id);
+                abandonadas.increment();
+                Log.aviso("[LoadBalancer] Requisição " + id + " abandonada depois de " + (req.tentativas - 1)
+                        + " retransmissões. Guardada em cartas_mortas_lb.txt");
             }
+            return;
+        }
+
+        retransmissoes.increment();
+        Log.info("[LoadBalancer] TIMEOUT na requisição " + id + ". Retransmitindo (tentativa " + req.tentativas + ")...");
+        // Os servidores ignoram a requisição se ela já tiver sido gravada (mesmo ID, ou mesma sequência)
+        enviarParaUmServidor(req);
+        agendarRetransmissao(req);
+    }
+
+    // Roda na thread da roda quando um servidor recusou a requisição por estar no limite:
+    // ela volta a ser roteada (provavelmente para outro servidor) sem contar como tentativa.
+    // Com todos os servidores no limite ela continua esperando aqui em vez de ir e voltar.
+    private void reenviar(RequestEntry req) {
+        if (requisicoesPendentes.get(req.mensagemCompleta.id) != req) return;
+        if (roteador.saturado()) {
+            req.prazo = prazos.agendar(tentarEmMs, () -> reenviar(req));
+            return;
+        }
+        enviarParaUmServidor(req);
+        agendarRetransmissao(req);
+    }
 
-            if (request.startsWith("ESCRITA")) {
-                // Adicionar ID e Controle de Retransmissão
-                // O formato recebido do cliente é ESCRITA;X;Y (ou similar)
-                // Vamos gerar um ID único e transformar em ESCRITA;ID;X;Y
-                
-                String idReq = UUID.randomUUID().toString();
-                
-                // Reconstrói a mensagem inserindo o ID na segunda posição
-                // Supõe-se entrada "ESCRITA;X;Y" -> Saída "ESCRITA;UUID;X;Y"
-                String[] partes = request.split(";", 2); // Divide em "ESCRITA" e "X;Y"
-                String novaMensagem = partes[0] + ";" + idReq + ";" + partes[1];
-
-                // Salva na fila de pendentes
-                requisicoesPendentes.put(idReq, new RequestEntry(novaMensagem, System.currentTimeMillis()));
-
-                System.out.println("[LoadBalancer] Nova ESCRITA recebida. ID: " + idReq + ". Roteando...");
-                
-                // Roteia IMEDIATAMENTE para um servidor (Paralelismo de cálculo)
-                // O cliente não espera fila aqui, a fila é só na hora de gravar.
-                enviarParaUmServidor(novaMensagem);
-                clientSocket.close();
-
-            } else if (request.startsWith("CONFIRMACAO")) {
-                // Protocolo: CONFIRMACAO;ID
-                String[] parts = request.split(";");
-                if (parts.length > 1) {
-                    String idConfirmado = parts[1];
-                    if (requisicoesPendentes.containsKey(idConfirmado)) {
-                        requisicoesPendentes.remove(idConfirmado);
-                        System.out.println("[LoadBalancer] Requisição " + idConfirmado + " resolvida e removida da fila.");
+    // Limite de taxa do cliente: 0 se a requisição pode passar, senão em quantos ms tentar de novo
+    private long limiteCliente(Resposta resposta) {
+        InetAddress origem = resposta.origem();
+        if (origem == null || taxaCliente <= 0) return 0;
+        BaldeTokens balde = baldes.computeIfAbsent(origem, o -> new BaldeTokens(taxaCliente, rajadaCliente));
+        return balde.consumir();
+    }
+
+    private void limparBaldes() {
+        long agora = System.nanoTime();
+        baldes.values().removeIf(balde -> balde.cheio(agora));
+        prazos.agendar(LIMPEZA_BALDES_MS, this::limparBaldes);
+    }
+
+    private void processarMensagem(Mensagem request, Resposta resposta) {
+        switch (request.tipo) {
+            case ESCRITA:
+            case ESCRITA_LOTE:
+                aceitarEscrita(request, resposta);
+                break;
+
+            case CONFIRMACAO:
+                // Um ID, ou vários quando um lote inteiro foi gravado
+                for (int i = 0; i < request.quantidade; i++) {
+                    long idConfirmado = request.ids[i];
+                    RequestEntry confirmada = requisicoesPendentes.remove(idConfirmado);
+                    if (confirmada != null) {
+                        RodaTemporizacao.Tarefa prazo = confirmada.prazo;
+                        if (prazo != null) prazo.cancelar();
+                        EstadoServidor servidor = confirmada.servidor;
+                        if (servidor != null) roteador.concluido(servidor, System.nanoTime() - confirmada.enviadoEmNanos);
+                        if (diario != null) diario.confirmada(idConfirmado);
+                        tempoConfirmacao.registrar(System.nanoTime() - confirmada.recebidaEmNanos);
+                        Log.debug(() -> "[LoadBalancer] Requisição " + idConfirmado + " resolvida e removida da fila.");
+                    } else if (cartasMortas.remover(idConfirmado)) {
+                        Log.info("[LoadBalancer] Requisição abandonada " + idConfirmado + " foi confirmada depois.");
                     }
                 }
-                clientSocket.close();
+                resposta.responder(Mensagem.ok(0));
+                break;
 
-            } else if (request.startsWith("LEITURA")) {
-                broadcastLeitura(request);
-                clientSocket.close();
+            case LEITURA: {
+                // Resposta: total de linhas e, para cada réplica consultada, porta, linhas e atraso
+                long espera = inicioOperacao - System.currentTimeMillis();
+                if (espera <= 0 && roteador.servidores().isEmpty()) espera = tentarEmMs; // ninguém registrado ainda
+                if (espera <= 0) espera = limiteCliente(resposta);
+                if (espera > 0) {
+                    leiturasRejeitadas.increment();
+                    resposta.responder(Mensagem.rejeitado(0, espera));
+                    return;
+                }
+                leituras.increment();
+                NivelLeitura nivel = nivelLeituraPadrao;
+                if (request.opcao == Mensagem.LEITURA_UM) nivel = NivelLeitura.UM;
+                else if (request.opcao == Mensagem.LEITURA_TODOS) nivel = NivelLeitura.TODOS;
 
-            } else if (request.equals("ACQUIRE_LOCK")) {
+                if (nivel == NivelLeitura.TODOS) {
+                    lerTodos(resposta);
+                } else {
+                    lerUm(roteador.ordemTentativas(), 0, resposta);
+                }
+                break;
+            }
+            case ACQUIRE_LOCK:
                 // O Servidor terminou o cálculo e quer escrever.
-                // Se o lock estiver ocupado, ele entra na fila aqui dentro.
-                tratarAquisicaoLock(out);
-                
-                // O socket fica aberto esperando o servidor terminar tudo e mandar RELEASE
-                String nextCmd = in.readLine();
-                if (nextCmd != null && nextCmd.equals("RELEASE_LOCK")) {
-                    tratarLiberacaoLock();
+                // Se o lock estiver ocupado, ele entra na fila e só recebe a resposta quando chegar a vez.
+                tratarAquisicaoLock(request.x, resposta);
+                break;
+
+            case RELEASE_LOCK:
+                // O servidor terminou a escrita local e a replicação
+                tratarLiberacaoLock(request.x);
+                resposta.responder(Mensagem.ok(0));
+                break;
+
+            case REJEITADO: {
+                // Um servidor recusou a ESCRITA por estar no seu limite: aprende o limite novo e
+                // roteia a requisição de novo depois do tempo pedido
+                roteador.atualizarLimite(request.x, request.y);
+                escritasRecusadasServidor.increment();
+                RequestEntry req = requisicoesPendentes.get(request.id);
+                if (req != null) {
+                    EstadoServidor servidor = req.servidor;
+                    if (servidor != null) roteador.cancelado(servidor);
+                    req.servidor = null;
+                    RodaTemporizacao.Tarefa prazo = req.prazo;
+                    if (prazo != null) prazo.cancelar();
+                    req.prazo = prazos.agendar(Math.max(1, request.valor), () -> reenviar(req));
                 }
-                clientSocket.close();
+                resposta.responder(Mensagem.ok(0));
+                break;
             }
+            case REGISTRAR:
+                // Servidor entrando no cluster. opcao = 1: ainda vai copiar os dados (não recebe ESCRITAs até PRONTO)
+                aprenderSequencia(request.valor);
+                membros.registrar(request.x, request.opcao == 1);
+                resposta.responder(membros.mensagem(sequencia.get()));
+                break;
 
-        } catch (IOException e) {
-            e.printStackTrace();
+            case HEARTBEAT:
+                aprenderSequencia(request.valor);
+                membros.heartbeat(request.x);
+                roteador.atualizarLimite(request.x, request.y);
+                resposta.responder(membros.mensagem(sequencia.get()));
+                break;
+
+            case PRONTO:
+                membros.pronto(request.x);
+                resposta.responder(Mensagem.ok(0));
+                break;
+
+            case SAIR:
+                membros.sair(request.x);
+                resposta.responder(Mensagem.ok(0));
+                break;
+
+            case MEMBROS:
+                resposta.responder(membros.mensagem(sequencia.get()));
+                break;
+
+            case METRICAS: {
+                Mensagem m = Mensagem.simples(TipoMensagem.METRICAS);
+                m.texto = metricas.texto();
+                resposta.responder(m);
+                break;
+            }
+
+            default:
+                resposta.responder(Mensagem.erro("Mensagem desconhecida"));
+                break;
+        }
+    }
+
+    // O cliente manda só X e Y (ou os pares do lote); o LoadBalancer dá o ID (e a sequência, no modo
+    // SEQUENCIADOR) e guarda a mensagem para retransmitir se a confirmação não chegar.
+    // Um lote é uma requisição só (um registro no diário, um servidor, uma CONFIRMACAO), mas recebe
+    // um ID e uma sequência por par, consecutivos: cada par vira uma linha como se fosse uma ESCRITA.
+    private void aceitarEscrita(Mensagem request, Resposta resposta) {
+        long espera = inicioOperacao - System.currentTimeMillis();
+        if (espera > 0) {
+            // Cluster iniciando: o cliente tenta de novo quando o período inicial acabar
+            escritasRejeitadas.increment();
+            resposta.responder(Mensagem.rejeitado(0, espera));
+            return;
+        }
+        boolean lote = request.tipo == TipoMensagem.ESCRITA_LOTE;
+        if (lote && (request.quantidade < 1 || request.quantidade > maxParesLote)) {
+            resposta.responder(Mensagem.erro("O lote deve ter de 1 a " + maxParesLote + " pares"));
+            return;
+        }
+        // Um lote gasta um token só, como uma ESCRITA (o custo dele fica no servidor, não aqui)
+        espera = limiteCliente(resposta);
+        if (espera > 0) {
+            escritasRejeitadas.increment();
+            resposta.responder(Mensagem.rejeitado(0, espera));
+            return;
+        }
+        if (requisicoesPendentes.size() >= maxPendentes || roteador.saturado()) {
+            // Sem folga no cluster: o cliente tenta de novo em vez de a fila crescer
+            escritasRejeitadas.increment();
+            resposta.responder(Mensagem.rejeitado(0, tentarEmMs));
+            return;
+        }
+        escritasAceitas.increment();
+        int pares = pares(request);
+        long idReq = proximoIdRequisicao.getAndAdd(pares) + 1;
+        if (lote) {
+            lotesAceitos.increment();
+            paresLote.add(pares);
+        }
+
+        Mensagem novaMensagem;
+        CompletableFuture<Void> gravada;
+        synchronized (monitorSequencia) {
+            // Numera a escrita: todos os servidores vão gravá-la nesta posição
+            long seq = modoEscrita == ModoEscrita.SEQUENCIADOR ? sequencia.getAndAdd(pares) + 1 : 0;
+            novaMensagem = lote
+                    ? Mensagem.escritaLote(idReq, request.valores, pares, seq)
+                    : Mensagem.escrita(idReq, request.x, request.y, seq);
+            // Lida depois da sequência: quem entrou no cluster depois desta versão recebe a escrita
+            novaMensagem.valor = membros.versao();
+            // Vai para o diário (só é copiada para um buffer; o fsync é feito em grupo por outra thread)
+            gravada = diario != null ? diario.aceita(novaMensagem) : null;
+        }
+
+        // Salva na fila de pendentes
+        RequestEntry entrada = new RequestEntry(novaMensagem);
+        requisicoesPendentes.put(idReq, entrada);
+
+        Log.debug(() -> "[LoadBalancer] Nova " + request.tipo + " recebida. ID: " + idReq + ". Roteando...");
+
+        if (gravada == null) {
+            rotear(entrada);
+            resposta.responder(Mensagem.ok(idReq));
+            return;
+        }
+        // Roteada e respondida com OK só quando a requisição está no disco: se o LoadBalancer cair
+        // depois disso, ela é retransmitida ao reiniciar.
+        // Se o diário falhar ela é descartada sem ter ido a nenhum servidor, então o ERRO é definitivo
+        // e o cliente pode enviar de novo sem duplicar a linha (no modo SEQUENCIADOR o diário não falha,
+        // ele repete a gravação).
+        long inicioDiario = System.nanoTime();
+        gravada.whenComplete((ok, erro) -> {
+            tempoDiario.registrar(System.nanoTime() - inicioDiario);
+            if (erro != null) {
+                // O registro pode ter chegado ao disco antes da falha: marcado para não ser retransmitido ao reiniciar
+                if (requisicoesPendentes.remove(idReq, entrada)) diario.abandonada(idReq);
+                Log.erro("[LoadBalancer] Falha ao gravar a requisição " + idReq + " no diário: " + erro
+                        + ". Requisição descartada.");
+                resposta.responder(Mensagem.erro("Falha ao gravar no diário; a escrita não foi aceita"));
+            } else {
+                rotear(entrada);
+                resposta.responder(Mensagem.ok(idReq));
+            }
+        });
+    }
+
+    // Envia a escrita aceita a um servidor (o prazo é agendado antes do envio: a confirmação pode chegar logo).
+    // O cliente não espera o cálculo: a fila é só na hora de gravar, no servidor.
+    private void rotear(RequestEntry entrada) {
+        agendarRetransmissao(entrada);
+        enviarParaUmServidor(entrada);
+    }
+
+    // Quantos IDs (e sequências) a escrita ocupa
+    private static int pares(Mensagem escrita) {
+        return escrita.tipo == TipoMensagem.ESCRITA_LOTE ? escrita.quantidade : 1;
+    }
+
+    // Modo SEQUENCIADOR: continua a numeração de onde os servidores pararam (a maior sequência que já receberam)
+    private void aprenderSequencia(long ultimaDoServidor) {
+        if (modoEscrita == ModoEscrita.SEQUENCIADOR) {
+            sequencia.accumulateAndGet(ultimaDoServidor, Math::max);
         }
     }
 
     // Lógica da Fila e do Lock
-    private void tratarAquisicaoLock(PrintWriter serverOut) {
+    private void tratarAquisicaoLock(int porta, Resposta serverResposta) {
+        long espera = inicioOperacao - System.currentTimeMillis();
+        if (espera > 0) {
+            // Ainda aprendendo quem está no cluster: o pedido volta quando o período inicial acabar
+            prazos.agendar(espera, () -> tratarAquisicaoLock(porta, serverResposta));
+            return;
+        }
         synchronized (monitorLock) {
-            if (lockOcupado) {
+            if (lockOcupado && filaDeEsperaLock.size() >= maxFilaLock) {
+                // Fila cheia: o servidor pede de novo depois (a requisição dele continua esperando lá)
+                locksRecusados.increment();
+                serverResposta.responder(Mensagem.rejeitado(0, tentarEmMs));
+            } else if (lockOcupado) {
                 // Se já tem alguém escrevendo, põe este servidor na FILA.
-                // Ele vai ficar bloqueado no 'readLine()' dele esperando nossa resposta.
-                System.out.println("[LoadBalancer] Lock OCUPADO. Servidor adicionado à FILA.");
-                filaDeEsperaLock.add(serverOut);
+                // Ele só recebe a resposta quando o lock for liberado.
+                Log.debug(() -> "[LoadBalancer] Lock OCUPADO. Servidor adicionado à FILA.");
+                filaDeEsperaLock.add(new PedidoLock(porta, serverResposta));
             } else {
                 // Se está livre, concede o lock imediatamente.
                 lockOcupado = true;
-                System.out.println("[LoadBalancer] Lock LIVRE. Concedido imediatamente.");
-                serverOut.println("GRANTED"); 
+                donoLock = porta;
+                lockConcedidoEmNanos = System.nanoTime();
+                Log.debug(() -> "[LoadBalancer] Lock LIVRE. Concedido imediatamente.");
+                serverResposta.responder(Mensagem.comValor(TipoMensagem.GRANTED, membros.versao()));
             }
         }
     }
 
-    private void tratarLiberacaoLock() {
+    private void tratarLiberacaoLock(int porta) {
         synchronized (monitorLock) {
-            System.out.println("[LoadBalancer] Lock LIBERADO pelo servidor anterior.");
-            
-            if (!filaDeEsperaLock.isEmpty()) {
-                // Tem gente na fila: Passa o bastão para o próximo.
-                // O sistema continua ocupado (lockOcupado = true), mas agora é a vez do próximo.
-                PrintWriter proximoServer = filaDeEsperaLock.poll();
-                System.out.println("[LoadBalancer] Concedendo Lock para o próximo da fila. Restantes: " + filaDeEsperaLock.size());
-                proximoServer.println("GRANTED");
+            if (lockOcupado && porta != 0 && donoLock != 0 && porta != donoLock) {
+                // Quem liberou perdeu o lock ao sair do cluster e ele já está com outro servidor
+                Log.aviso("[LoadBalancer] RELEASE_LOCK do servidor " + porta + " ignorado: o lock está com " + donoLock);
+                return;
+            }
+            Log.debug(() -> "[LoadBalancer] Lock LIBERADO pelo servidor anterior.");
+            passarLock();
+        }
+    }
+
+    // Um servidor saiu do cluster (SAIR ou sem HEARTBEAT): descarta os pedidos dele na fila e,
+    // se o lock estava com ele, passa para o próximo (senão ninguém mais gravaria até reiniciar o LoadBalancer)
+    private void membroRemovido(int porta) {
+        synchronized (monitorLock) {
+            Iterator<PedidoLock> it = filaDeEsperaLock.iterator();
+            while (it.hasNext()) {
+                PedidoLock pedido = it.next();
+                if (pedido.porta == porta) {
+                    it.remove();
+                    pedido.resposta.responder(Mensagem.erro("Servidor " + porta + " removido do cluster"));
+                }
+            }
+            if (lockOcupado && donoLock == porta) {
+                Log.aviso("[LoadBalancer] Servidor " + porta + " saiu do cluster com o lock. Lock liberado.");
+                passarLock();
+            }
+        }
+    }
+
+    // Chamado com o monitorLock: o lock vai para o próximo da fila ou fica livre
+    private void passarLock() {
+        long agora = System.nanoTime();
+        if (lockOcupado) posseLock.registrar(agora - lockConcedidoEmNanos);
+
+        if (!filaDeEsperaLock.isEmpty()) {
+            // Tem gente na fila: Passa o bastão para o próximo.
+            // O sistema continua ocupado (lockOcupado = true), mas agora é a vez do próximo.
+            PedidoLock proximo = filaDeEsperaLock.poll();
+            donoLock = proximo.porta;
+            lockConcedidoEmNanos = agora;
+            int restantes = filaDeEsperaLock.size();
+            Log.debug(() -> "[LoadBalancer] Concedendo Lock para o próximo da fila. Restantes: " + restantes);
+            proximo.resposta.responder(Mensagem.comValor(TipoMensagem.GRANTED, membros.versao()));
+        } else {
+            // Fila vazia: O sistema fica livre.
+            lockOcupado = false;
+            donoLock = 0;
+            Log.debug(() -> "[LoadBalancer] Fila vazia. Sistema totalmente LIVRE.");
+        }
+    }
+
+    // Envia para o servidor escolhido pelo roteador; se ele estiver fora do ar, tenta os outros
+    // em vez de perder a requisição
+    private void enviarParaUmServidor(RequestEntry req) {
+        for (EstadoServidor servidor : roteador.ordemTentativas()) {
+            // Marca antes de enviar: a confirmação pode chegar logo depois
+            req.servidor = servidor;
+            req.enviadoEmNanos = System.nanoTime();
+            roteador.enviado(servidor);
+
+            if (enviarMensagem(servidor.porta, req.mensagemCompleta)) {
+                roteador.sucesso(servidor);
+                return;
+            }
+            roteador.cancelado(servidor);
+            roteador.falha(servidor);
+        }
+        req.servidor = null;
+        Log.aviso("[LoadBalancer] Nenhum servidor disponível. A requisição será retransmitida.");
+    }
+
+    // LEITURA;UM: pergunta a uma réplica (na ordem do roteador); se ela não responder, tenta a próxima
+    private void lerUm(List<EstadoServidor> ordem, int tentativa, Resposta resposta) {
+        if (tentativa >= ordem.size()) {
+            resposta.responder(Mensagem.erro("Nenhum servidor respondeu a leitura"));
+            return;
+        }
+
+        int porta = ordem.get(tentativa).porta;
+        consultarLinhas(porta).whenComplete((linhas, erro) -> {
+            if (erro != null) {
+                lerUm(ordem, tentativa + 1, resposta);
             } else {
-                // Fila vazia: O sistema fica livre.
-                lockOcupado = false;
-                System.out.println("[LoadBalancer] Fila vazia. Sistema totalmente LIVRE.");
+                resposta.responder(linhas(linhas, new long[]{porta, linhas, atraso(linhas)}, 1));
             }
+        });
+    }
+
+    // LEITURA;TODOS: pergunta a todas as réplicas ao mesmo tempo e junta as respostas
+    private void lerTodos(Resposta resposta) {
+        List<EstadoServidor> servidores = new ArrayList<>(roteador.servidores());
+        if (servidores.isEmpty()) {
+            resposta.responder(Mensagem.erro("Nenhum servidor no cluster"));
+            return;
         }
+        List<CompletableFuture<Long>> consultas = new ArrayList<>();
+        for (EstadoServidor servidor : servidores) {
+            // Réplica que não respondeu entra como -1
+            consultas.add(consultarLinhas(servidor.porta).exceptionally(erro -> -1L));
+        }
+
+        CompletableFuture.allOf(consultas.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            long maior = -1;
+            long[] detalhes = new long[servidores.size() * 3];
+            for (int i = 0; i < servidores.size(); i++) {
+                long linhas = consultas.get(i).join();
+                maior = Math.max(maior, linhas);
+                detalhes[i * 3] = servidores.get(i).porta;
+                detalhes[i * 3 + 1] = linhas;
+                detalhes[i * 3 + 2] = linhas < 0 ? -1 : atraso(linhas);
+            }
+
+            if (maior < 0) {
+                resposta.responder(Mensagem.erro("Nenhum servidor respondeu a leitura"));
+            } else {
+                resposta.responder(linhas(maior, detalhes, servidores.size()));
+            }
+        });
     }
 
-    private void enviarParaUmServidor(String msg) {
-        int index = new Random().nextInt(SERVIDORES.length);
-        int portaAlvo = SERVIDORES[index];
-        enviarMensagem(portaAlvo, msg);
+    // Pergunta a um servidor quantas linhas ele tem (o servidor responde da contagem em memória)
+    private CompletableFuture<Long> consultarLinhas(int porta) {
+        return poolServidores.enviar(porta, Mensagem.leitura(Mensagem.LEITURA_PADRAO))
+                .orTimeout(TIMEOUT_LEITURA_MS, TimeUnit.MILLISECONDS)
+                .thenApply(r -> {
+                    if (r.tipo != TipoMensagem.LINHAS) throw new IllegalStateException(r.toString());
+                    long linhas = r.valor;
+                    maiorContagemVista.accumulateAndGet(linhas, Math::max);
+                    return linhas;
+                })
+                .whenComplete((linhas, erro) -> {
+                    // A leitura também serve de verificação de saúde do servidor
+                    EstadoServidor servidor = roteador.porPorta(porta);
+                    if (servidor == null) return; // saiu do cluster
+                    if (erro == null) roteador.sucesso(servidor);
+                    else if (servidor.disponivel(System.currentTimeMillis())) roteador.falha(servidor);
+                });
     }
 
-    private void broadcastLeitura(String msg) {
-        for (int porta : SERVIDORES) {
-            enviarMensagem(porta, msg);
+    // Resposta LINHAS: total e, para cada réplica, porta, linhas e atraso (linhas = -1 se fora do ar)
+    private static Mensagem linhas(long total, long[] detalhes, int replicas) {
+        Mensagem m = Mensagem.comValor(TipoMensagem.LINHAS, total);
+        m.numeros = detalhes;
+        m.quantidade = replicas;
+        return m;
+    }
+
+    // Quantas linhas a réplica está atrás da réplica mais adiantada que conhecemos
+    // (no modo SEQUENCIADOR, atrás da última escrita numerada)
+    private long atraso(long linhas) {
+        long referencia = maiorContagemVista.get();
+        if (modoEscrita == ModoEscrita.SEQUENCIADOR) {
+            referencia = Math.max(referencia, sequencia.get());
         }
+        return Math.max(0, referencia - linhas);
     }
 
-    private void enviarMensagem(int porta, String msg) {
-        try (Socket s = new Socket("localhost", porta);
-             PrintWriter pOut = new PrintWriter(s.getOutputStream(), true)) {
-            pOut.println(msg);
+    private boolean enviarMensagem(int porta, Mensagem msg) {
+        try {
+            // Reaproveita a conexão persistente com o servidor em vez de abrir um socket por mensagem
+            poolServidores.notificar(porta, msg);
+            return true;
         } catch (IOException e) {
-            System.err.println("[LoadBalancer] Erro ao conectar no servidor " + porta);
+            // Quem chamou registra a falha no roteador (ejeção do servidor)
+            return false;
         }
     }
 }
\ No newline at end of file
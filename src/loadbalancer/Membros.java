@@ -0,0 +1,143 @@
+package loadbalancer;
+
+import network.Mensagem;
+import network.TipoMensagem;
+import observabilidade.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+// Lista de servidores do cluster, mantida pelo LoadBalancer.
+// Os servidores se registram ao iniciar (REGISTRAR), avisam que continuam vivos (HEARTBEAT) e
+// avisam quando saem (SAIR). Quem para de mandar HEARTBEAT é removido depois de um tempo.
+// Um servidor removido não volta pelo HEARTBEAT: ele perdeu as escritas do tempo em que estava fora,
+// então a resposta (a lista sem ele) o faz entrar de novo com REGISTRAR e copiar o que falta.
+//
+// Toda mudança gera uma nova versão. A versão vai junto com cada ESCRITA roteada e com cada GRANTED,
+// e o servidor atualiza a sua lista antes de replicar se ela for mais antiga. Assim uma escrita nunca
+// é replicada com uma lista de vizinhos anterior ao momento em que foi roteada.
+public class Membros {
+    enum Estado {
+        // Registrado e recebendo replicações, mas ainda copiando os dados antigos: não recebe ESCRITAs
+        SINCRONIZANDO,
+        ATIVO
+    }
+
+    private static class Membro {
+        final int porta;
+        // Versão em que o servidor se registrou; muda se ele reiniciar e se registrar de novo
+        final long geracao;
+        Estado estado;
+        long ultimoContato;
+
+        Membro(int porta, long geracao, Estado estado, long agora) {
+            this.porta = porta;
+            this.geracao = geracao;
+            this.estado = estado;
+            this.ultimoContato = agora;
+        }
+    }
+
+    private final Map<Integer, Membro> membros = new TreeMap<>();
+    // Saíram ou expiraram e ainda não se registraram de novo
+    private final Set<Integer> removidos = new HashSet<>();
+    // Avisado (fora do monitor) quando um servidor sai ou expira, para liberar o lock que estava com ele
+    private IntConsumer aoRemover = porta -> { };
+    private final Roteador roteador;
+    private final long timeoutMs;
+    // Começa no relógio para continuar crescendo se o LoadBalancer reiniciar
+    private long versao = System.currentTimeMillis();
+
+    public Membros(Roteador roteador, long timeoutMs) {
+        this.roteador = roteador;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public void aoRemover(IntConsumer acao) {
+        this.aoRemover = acao;
+    }
+
+    public synchronized void registrar(int porta, boolean sincronizando) {
+        removidos.remove(porta);
+        Estado estado = sincronizando ? Estado.SINCRONIZANDO : Estado.ATIVO;
+        membros.put(porta, new Membro(porta, ++versao, estado, System.currentTimeMillis()));
+        if (estado == Estado.ATIVO) roteador.adicionar(porta);
+        else roteador.remover(porta);
+        Log.info("[LoadBalancer] Servidor " + porta + " registrado (" + estado + "). Membros: " + membros.keySet());
+    }
+
+    // O servidor terminou de copiar os dados e pode receber ESCRITAs
+    public synchronized void pronto(int porta) {
+        Membro membro = membros.get(porta);
+        if (membro == null || membro.estado == Estado.ATIVO) return;
+        membro.estado = Estado.ATIVO;
+        versao++;
+        roteador.adicionar(porta);
+        Log.info("[LoadBalancer] Servidor " + porta + " sincronizado e ATIVO.");
+    }
+
+    // Servidor desconhecido que nunca foi removido: já estava no cluster antes de o LoadBalancer reiniciar.
+    // Um servidor removido continua de fora até se registrar de novo.
+    public synchronized void heartbeat(int porta) {
+        Membro membro = membros.get(porta);
+        if (membro != null) {
+            membro.ultimoContato = System.currentTimeMillis();
+        } else if (!removidos.contains(porta)) {
+            registrar(porta, false);
+        }
+    }
+
+    public void sair(int porta) {
+        synchronized (this) {
+            if (membros.remove(porta) == null) return;
+            removidos.add(porta);
+            versao++;
+            roteador.remover(porta);
+            Log.info("[LoadBalancer] Servidor " + porta + " saiu do cluster. Membros: " + membros.keySet());
+        }
+        aoRemover.accept(porta);
+    }
+
+    // Remove quem está sem HEARTBEAT há mais que o timeout
+    public void expirar() {
+        List<Integer> expirados = new ArrayList<>();
+        synchronized (this) {
+            long limite = System.currentTimeMillis() - timeoutMs;
+            for (Membro membro : membros.values()) {
+                if (membro.ultimoContato < limite) expirados.add(membro.porta);
+            }
+            for (int porta : expirados) {
+                membros.remove(porta);
+                removidos.add(porta);
+                versao++;
+                roteador.remover(porta);
+                Log.aviso("[LoadBalancer] Servidor " + porta + " sem HEARTBEAT. Removido do cluster. Membros: " + membros.keySet());
+            }
+        }
+        for (int porta : expirados) aoRemover.accept(porta);
+    }
+
+    public synchronized long versao() {
+        return versao;
+    }
+
+    // MEMBROS: versão, sequência atual e (porta, geração) de cada membro.
+    // Membros ainda sincronizando também recebem replicações, então entram na lista.
+    public synchronized Mensagem mensagem(long sequencia) {
+        Mensagem m = Mensagem.comValor(TipoMensagem.MEMBROS, versao);
+        m.seq = sequencia;
+        m.quantidade = membros.size();
+        m.numeros = new long[m.quantidade * 2];
+        int i = 0;
+        for (Membro membro : membros.values()) {
+            m.numeros[i++] = membro.porta;
+            m.numeros[i++] = membro.geracao;
+        }
+        return m;
+    }
+}
@@ -0,0 +1,20 @@
+package loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// O servidor com menos requisições em andamento.
+// A busca começa em uma posição sorteada para os empates não caírem sempre no mesmo servidor.
+class MenosPendentes implements PoliticaRoteamento {
+    @Override
+    public EstadoServidor escolher(List<EstadoServidor> disponiveis) {
+        int n = disponiveis.size();
+        int inicio = ThreadLocalRandom.current().nextInt(n);
+        EstadoServidor melhor = disponiveis.get(inicio);
+        for (int i = 1; i < n; i++) {
+            EstadoServidor s = disponiveis.get((inicio + i) % n);
+            if (s.emAndamento() < melhor.emAndamento()) melhor = s;
+        }
+        return melhor;
+    }
+}
@@ -0,0 +1,27 @@
+package loadbalancer;
+
+import config.Roteamento;
+
+import java.util.List;
+
+// Escolhe, entre os servidores disponíveis, para qual vai a próxima requisição
+public interface PoliticaRoteamento {
+
+    // 'disponiveis' nunca é vazia
+    EstadoServidor escolher(List<EstadoServidor> disponiveis);
+
+    static PoliticaRoteamento criar(Roteamento tipo) {
+        switch (tipo) {
+            case ALEATORIO:
+                return new RoteamentoAleatorio();
+            case DUAS_ESCOLHAS:
+                return new DuasEscolhas();
+            case RODIZIO_PONDERADO:
+                return new RodizioPonderado();
+            case LATENCIA_EWMA:
+                return new LatenciaEwma();
+            default:
+                return new MenosPendentes();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package loadbalancer;
+
+import observabilidade.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Roda de temporização (hashed timing wheel) para os prazos de retransmissão.
+//
+// - A roda tem FATIAS posições e gira uma posição a cada tickMs. Uma tarefa que vence no tick T fica
+//   na posição T % FATIAS, com o número de voltas que ainda faltam.
+// - A cada tick só a posição atual é percorrida: o custo não cresce com o total de requisições
+//   pendentes, só com as que vencem naquele tick (a varredura completa a cada segundo deixou de existir).
+// - Agendar e cancelar são O(1). Cancelar só marca a tarefa, que é descartada quando a roda passar por ela.
+// - Uma única thread gira a roda e executa as tarefas vencidas. Quem agenda de outra thread coloca a
+//   tarefa numa fila sem lock; ela entra na roda no próximo tick.
+public class RodaTemporizacao {
+    private static final int FATIAS = 512;
+
+    public static final class Tarefa {
+        private final Runnable acao;
+        private final long tickVencimento;
+        private long voltas;
+        private volatile boolean cancelada;
+
+        private Tarefa(Runnable acao, long tickVencimento) {
+            this.acao = acao;
+            this.tickVencimento = tickVencimento;
+        }
+
+        public void cancelar() {
+            cancelada = true;
+        }
+    }
+
+    private final long tickMs;
+    private final long inicioNanos = System.nanoTime();
+    private final List<ArrayDeque<Tarefa>> fatias = new ArrayList<>(FATIAS);
+    private final Queue<Tarefa> novas = new ConcurrentLinkedQueue<>();
+    // Só usado pela thread da roda
+    private long tickAtual;
+
+    public RodaTemporizacao(long tickMs) {
+        this.tickMs = Math.max(1, tickMs);
+        for (int i = 0; i < FATIAS; i++) fatias.add(new ArrayDeque<>());
+    }
+
+    public void iniciar(String nome) {
+        Thread t = new Thread(this::girar, nome);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Executa 'acao' daqui a 'atrasoMs' (arredondado para cima para o próximo tick)
+    public Tarefa agendar(long atrasoMs, Runnable acao) {
+        long agora = tickDe(System.nanoTime());
+        long ticks = Math.max(1, (atrasoMs + tickMs - 1) / tickMs);
+        Tarefa tarefa = new Tarefa(acao, agora + ticks);
+        novas.add(tarefa);
+        return tarefa;
+    }
+
+    private long tickDe(long nanos) {
+        return (nanos - inicioNanos) / 1_000_000 / tickMs;
+    }
+
+    private void girar() {
+        while (true) {
+            // Dorme até o começo do próximo tick
+            long proximoInicio = inicioNanos + (tickAtual + 1) * tickMs * 1_000_000;
+            long espera = proximoInicio - System.nanoTime();
+            if (espera > 0) {
+                try {
+                    Thread.sleep(espera / 1_000_000, (int) (espera % 1_000_000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tickAtual++;
+
+            transferirNovas();
+            executarVencidas(fatias.get((int) (tickAtual % FATIAS)));
+        }
+    }
+
+    private void transferirNovas() {
+        Tarefa tarefa;
+        while ((tarefa = novas.poll()) != null) {
+            if (tarefa.cancelada) continue;
+            // Se o agendamento chegou atrasado, vence neste tick mesmo
+            long vencimento = Math.max(tarefa.tickVencimento, tickAtual);
+            tarefa.voltas = (vencimento - tickAtual) / FATIAS;
+            fatias.get((int) (vencimento % FATIAS)).add(tarefa);
+        }
+    }
+
+    private void executarVencidas(ArrayDeque<Tarefa> fatia) {
+        Iterator<Tarefa> it = fatia.iterator();
+        while (it.hasNext()) {
+            Tarefa tarefa = it.next();
+            if (tarefa.cancelada) {
+                it.remove();
+            } else if (tarefa.voltas > 0) {
+                tarefa.voltas--;
+            } else {
+                it.remove();
+                try {
+                    tarefa.acao.run();
+                } catch (RuntimeException e) {
+                    Log.erro("[LoadBalancer] Erro em tarefa agendada: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
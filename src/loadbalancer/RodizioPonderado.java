@@ -0,0 +1,21 @@
+package loadbalancer;
+
+import java.util.List;
+
+// Rodízio ponderado suave: a cada escolha todo servidor ganha o seu peso, o que tiver mais
+// acumulado é escolhido e perde a soma dos pesos. Com pesos 2,1,1 a sequência fica A,B,A,C
+// (os envios para o servidor mais pesado ficam espalhados, não em rajada).
+class RodizioPonderado implements PoliticaRoteamento {
+    @Override
+    public synchronized EstadoServidor escolher(List<EstadoServidor> disponiveis) {
+        int total = 0;
+        EstadoServidor melhor = null;
+        for (EstadoServidor s : disponiveis) {
+            s.pesoAtual += s.peso;
+            total += s.peso;
+            if (melhor == null || s.pesoAtual > melhor.pesoAtual) melhor = s;
+        }
+        melhor.pesoAtual -= total;
+        return melhor;
+    }
+}
@@ -0,0 +1,151 @@
+package loadbalancer;
+
+import config.Configuracao;
+import config.Roteamento;
+import observabilidade.Log;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Escolha do servidor de cada requisição e acompanhamento da saúde dos servidores.
+//
+// - Carga: cada ESCRITA enviada conta como "em andamento" no servidor até a CONFIRMACAO chegar
+//   (ou até ser retransmitida para outro). O tempo até a confirmação alimenta a latência média.
+// - Saúde: servidor que não aceita conexão é ejetado do roteamento por um tempo que dobra a cada
+//   falha seguida. Depois desse tempo ele volta a ser tentado; o primeiro sucesso o reintegra.
+// - Limite: cada servidor informa quantas ESCRITAs aceita ao mesmo tempo (limite adaptativo dele).
+//   Servidor que já está no limite só é tentado depois dos que ainda têm folga.
+//
+// Configuração (LoadBalancer):
+//   -Droteamento.politica=MENOS_PENDENTES|DUAS_ESCOLHAS|RODIZIO_PONDERADO|LATENCIA_EWMA|ALEATORIO
+//   -Droteamento.pesos=9001:2,9002:1,9003:1   (RODIZIO_PONDERADO; padrão 1)
+//   -Droteamento.ejecaoMs=1000                (primeira ejeção)
+//   -Droteamento.ejecaoMaxMs=30000
+//
+// Os servidores entram e saem conforme a lista de membros do cluster (Membros).
+public class Roteador {
+    private final List<EstadoServidor> servidores = new CopyOnWriteArrayList<>();
+    private final String pesos;
+    private final PoliticaRoteamento politica;
+    private final long ejecaoBaseMs;
+    private final long ejecaoMaxMs;
+
+    public Roteador() {
+        this.pesos = Configuracao.texto("roteamento.pesos", "");
+        Roteamento tipo = Roteamento.configurado();
+        this.politica = PoliticaRoteamento.criar(tipo);
+        this.ejecaoBaseMs = Configuracao.longo("roteamento.ejecaoMs", 1000);
+        this.ejecaoMaxMs = Configuracao.longo("roteamento.ejecaoMaxMs", 30000);
+        Log.info("[LoadBalancer] Roteamento: " + tipo);
+    }
+
+    // Ordem em que os servidores devem ser tentados: o escolhido pela política, depois os outros
+    // disponíveis com folga, os que estão no limite e, por último, os ejetados (se todos estiverem fora,
+    // ainda tentamos em vez de perder a requisição)
+    public List<EstadoServidor> ordemTentativas() {
+        long agora = System.currentTimeMillis();
+        List<EstadoServidor> disponiveis = new ArrayList<>(servidores.size());
+        List<EstadoServidor> saturados = new ArrayList<>();
+        List<EstadoServidor> ejetados = new ArrayList<>();
+        for (EstadoServidor s : servidores) {
+            if (!s.disponivel(agora)) ejetados.add(s);
+            else if (s.saturado()) saturados.add(s);
+            else disponiveis.add(s);
+        }
+
+        List<EstadoServidor> ordem = new ArrayList<>(servidores.size());
+        if (!disponiveis.isEmpty()) {
+            EstadoServidor escolhido = politica.escolher(disponiveis);
+            ordem.add(escolhido);
+            for (EstadoServidor s : disponiveis) {
+                if (s != escolhido) ordem.add(s);
+            }
+        }
+        ordem.addAll(saturados);
+        // Quem volta primeiro é tentado primeiro
+        ejetados.sort(Comparator.comparingLong(EstadoServidor::ejetadoAte));
+        ordem.addAll(ejetados);
+        return ordem;
+    }
+
+    // Há servidores no ar e todos estão no limite: a ESCRITA nova deve ser recusada
+    public boolean saturado() {
+        long agora = System.currentTimeMillis();
+        boolean algumNoAr = false;
+        for (EstadoServidor s : servidores) {
+            if (!s.disponivel(agora)) continue;
+            if (!s.saturado()) return false;
+            algumNoAr = true;
+        }
+        return algumNoAr;
+    }
+
+    public void atualizarLimite(int porta, int limite) {
+        EstadoServidor servidor = porPorta(porta);
+        if (servidor != null) servidor.atualizarLimite(limite);
+    }
+
+    public List<EstadoServidor> servidores() {
+        return servidores;
+    }
+
+    // Servidor ativo passa a receber requisições
+    public synchronized void adicionar(int porta) {
+        if (porPorta(porta) == null) servidores.add(new EstadoServidor(porta, peso(pesos, porta)));
+    }
+
+    public synchronized void remover(int porta) {
+        EstadoServidor servidor = porPorta(porta);
+        if (servidor != null) servidores.remove(servidor);
+    }
+
+    public void enviado(EstadoServidor servidor) {
+        servidor.enviado();
+    }
+
+    // A requisição foi confirmada; 'latenciaNanos' é o tempo desde o envio
+    public void concluido(EstadoServidor servidor, long latenciaNanos) {
+        servidor.liberado();
+        servidor.registrarLatencia(latenciaNanos / 1_000_000.0);
+    }
+
+    // A requisição não está mais com este servidor (falhou o envio ou foi retransmitida para outro)
+    public void cancelado(EstadoServidor servidor) {
+        servidor.liberado();
+    }
+
+    public void sucesso(EstadoServidor servidor) {
+        if (servidor.registrarSucesso()) {
+            Log.info("[LoadBalancer] Servidor " + servidor.porta + " voltou a responder. Reintegrado ao roteamento.");
+        }
+    }
+
+    public void falha(EstadoServidor servidor) {
+        long tempo = servidor.registrarFalha(System.currentTimeMillis(), ejecaoBaseMs, ejecaoMaxMs);
+        Log.aviso("[LoadBalancer] Servidor " + servidor.porta + " fora do ar. Ejetado do roteamento por " + tempo + " ms.");
+    }
+
+    public EstadoServidor porPorta(int porta) {
+        for (EstadoServidor s : servidores) {
+            if (s.porta == porta) return s;
+        }
+        return null;
+    }
+
+    // "9001:2,9002:1" -> peso da porta (1 se não informado)
+    private static int peso(String pesos, int porta) {
+        for (String item : pesos.split(",")) {
+            String[] partes = item.trim().split(":");
+            if (partes.length == 2 && partes[0].trim().equals(String.valueOf(porta))) {
+                try {
+                    return Integer.parseInt(partes[1].trim());
+                } catch (NumberFormatException e) {
+                    Log.aviso("[Configuracao] Peso inválido para " + porta + ": " + partes[1]);
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,12 @@
+package loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Sorteio simples, sem olhar a carga
+class RoteamentoAleatorio implements PoliticaRoteamento {
+    @Override
+    public EstadoServidor escolher(List<EstadoServidor> disponiveis) {
+        return disponiveis.get(ThreadLocalRandom.current().nextInt(disponiveis.size()));
+    }
+}
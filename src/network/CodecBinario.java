@@ -0,0 +1,347 @@
+package network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Formato binário das mensagens.
+//
+// A conexão começa com 2 bytes: MAGICO e VERSAO. Depois vêm os quadros:
+//   [int tamanho][long correlação][byte tipo][campos do tipo]
+// 'tamanho' conta os bytes depois dele mesmo. Inteiros em big-endian e largura fixa
+// (int = 4 bytes, long = 8 bytes), sem conversão para texto nem separadores.
+//
+// Os métodos leem e escrevem direto em ByteBuffers reaproveitados pela conexão,
+// sem criar Strings ou arrays intermediários.
+public final class CodecBinario {
+    // Primeiro byte de uma conexão binária. Não é um caractere de texto, então o servidor
+    // diferencia este formato do texto olhando só o primeiro byte.
+    public static final byte MAGICO = (byte) 0xB1;
+    public static final byte VERSAO = 1;
+
+    // int tamanho + long correlação
+    public static final int CABECALHO = Integer.BYTES + Long.BYTES;
+    // Quadros maiores que isso são considerados corrompidos e derrubam a conexão
+    public static final int TAMANHO_MAXIMO = 16 * 1024 * 1024;
+
+    private CodecBinario() {
+    }
+
+    // Tamanho total do quadro (com cabeçalho) que 'escrever' vai ocupar. Para ERRO e METRICAS é
+    // um limite superior (o texto só é codificado em 'escrever'); quem escreve usa a posição final.
+    public static int tamanho(Mensagem m) {
+        return CABECALHO + 1 + tamanhoCampos(m);
+    }
+
+    // Escreve o quadro inteiro em 'destino', que precisa ter pelo menos tamanho(m) bytes livres
+    public static void escrever(Mensagem m, long correlacao, ByteBuffer destino) {
+        byte[] texto = m.tipo == TipoMensagem.ERRO || m.tipo == TipoMensagem.METRICAS ? texto(m) : null;
+        destino.putInt(Long.BYTES + 1 + (texto != null ? Integer.BYTES + texto.length : tamanhoCampos(m)));
+        destino.putLong(correlacao);
+        destino.put(m.tipo.codigo);
+
+        switch (m.tipo) {
+            case ESCRITA:
+                destino.putLong(m.id).putInt(m.x).putInt(m.y).putLong(m.seq).putLong(m.valor);
+                break;
+            case ESCRITA_LOTE:
+                destino.putLong(m.id).putLong(m.seq).putLong(m.valor).putInt(m.quantidade);
+                for (int i = 0; i < m.quantidade * 2; i++) destino.putInt(m.valores[i]);
+                break;
+            case LEITURA:
+                destino.put(m.opcao);
+                break;
+            case CONFIRMACAO:
+                destino.putInt(m.quantidade);
+                for (int i = 0; i < m.quantidade; i++) destino.putLong(m.ids[i]);
+                break;
+            case REPLICACAO:
+                destino.putInt(m.x).putInt(m.y).putInt(m.mdc).putLong(m.id);
+                break;
+            case REPLICACAO_SEQ:
+                destino.putLong(m.seq).putInt(m.x).putInt(m.y).putInt(m.mdc);
+                break;
+            case TRECHO:
+                destino.putLong(m.valor);
+                escreverLinhas(m, destino);
+                break;
+            case REPLICACAO_LOTE:
+                destino.putLong(m.seq);
+                escreverLinhas(m, destino);
+                // IDs das requisições de cada linha (0 = sem ID)
+                for (int i = 0; i < m.quantidade; i++) destino.putLong(m.ids != null ? m.ids[i] : 0);
+                break;
+            case SEQUENCIA:
+            case GRANTED:
+                destino.putLong(m.valor);
+                break;
+            case REGISTRAR:
+                destino.putInt(m.x).put(m.opcao).putLong(m.valor);
+                break;
+            case HEARTBEAT:
+                destino.putInt(m.x).putLong(m.valor).putInt(m.y);
+                break;
+            case REJEITADO:
+                destino.putLong(m.id).putLong(m.valor).putInt(m.x).putInt(m.y);
+                break;
+            case SAIR:
+            case PRONTO:
+            case ACQUIRE_LOCK:
+            case RELEASE_LOCK:
+                destino.putInt(m.x);
+                break;
+            case MEMBROS:
+                destino.putLong(m.valor).putLong(m.seq).putInt(m.quantidade);
+                for (int i = 0; i < m.quantidade * 2; i++) destino.putLong(m.numeros[i]);
+                break;
+            case SINCRONIZAR:
+                destino.putLong(m.valor).putInt(m.quantidade);
+                break;
+            case COMPARAR:
+                destino.put(m.opcao).putLong(m.valor).putInt(m.quantidade);
+                break;
+            case RESUMO:
+                destino.putLong(m.valor).putInt(m.x).putInt(m.quantidade);
+                for (int i = 0; i < m.quantidade; i++) destino.putLong(m.numeros[i]);
+                break;
+            case LINHAS:
+                destino.putLong(m.valor).putInt(m.quantidade);
+                for (int i = 0; i < m.quantidade * 3; i++) destino.putLong(m.numeros[i]);
+                break;
+            case CACHE:
+                destino.putInt(m.quantidade);
+                for (int i = 0; i < m.quantidade; i++) destino.putLong(m.numeros[i]);
+                break;
+            case OK:
+                destino.putLong(m.id);
+                break;
+            case ERRO:
+            case METRICAS:
+                destino.putInt(texto.length).put(texto);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Tamanho do corpo do próximo quadro se ele já chegou inteiro em 'origem', ou -1.
+    // Não altera a posição do buffer.
+    public static int quadroCompleto(ByteBuffer origem) {
+        if (origem.remaining() < Integer.BYTES) return -1;
+        int tamanho = origem.getInt(origem.position());
+        if (tamanho < Long.BYTES + 1 || tamanho > TAMANHO_MAXIMO) {
+            throw new IllegalArgumentException("Tamanho de quadro inválido: " + tamanho);
+        }
+        return origem.remaining() - Integer.BYTES >= tamanho ? tamanho : -1;
+    }
+
+    // Lê tipo e campos. O chamador já consumiu o cabeçalho (tamanho e correlação).
+    public static Mensagem ler(ByteBuffer origem) {
+        Mensagem m = new Mensagem(TipoMensagem.porCodigo(origem.get()));
+        switch (m.tipo) {
+            case ESCRITA:
+                m.id = origem.getLong();
+                m.x = origem.getInt();
+                m.y = origem.getInt();
+                m.seq = origem.getLong();
+                m.valor = origem.getLong();
+                break;
+            case ESCRITA_LOTE:
+                m.id = origem.getLong();
+                m.seq = origem.getLong();
+                m.valor = origem.getLong();
+                m.quantidade = quantidade(origem, 2 * Integer.BYTES);
+                m.valores = new int[m.quantidade * 2];
+                for (int i = 0; i < m.valores.length; i++) m.valores[i] = origem.getInt();
+                break;
+            case LEITURA:
+                m.opcao = origem.get();
+                break;
+            case CONFIRMACAO:
+                m.quantidade = quantidade(origem, Long.BYTES);
+                m.ids = new long[m.quantidade];
+                for (int i = 0; i < m.quantidade; i++) m.ids[i] = origem.getLong();
+                break;
+            case REPLICACAO:
+                m.x = origem.getInt();
+                m.y = origem.getInt();
+                m.mdc = origem.getInt();
+                m.id = origem.getLong();
+                break;
+            case REPLICACAO_SEQ:
+                m.seq = origem.getLong();
+                m.x = origem.getInt();
+                m.y = origem.getInt();
+                m.mdc = origem.getInt();
+                break;
+            case TRECHO:
+                m.valor = origem.getLong();
+                lerLinhas(m, origem, 0);
+                break;
+            case REPLICACAO_LOTE:
+                m.seq = origem.getLong();
+                // Cada linha tem também o ID, depois de todas as linhas
+                lerLinhas(m, origem, Long.BYTES);
+                m.ids = new long[m.quantidade];
+                for (int i = 0; i < m.quantidade; i++) m.ids[i] = origem.getLong();
+                break;
+            case SEQUENCIA:
+            case GRANTED:
+                m.valor = origem.getLong();
+                break;
+            case REGISTRAR:
+                m.x = origem.getInt();
+                m.opcao = origem.get();
+                m.valor = origem.getLong();
+                break;
+            case HEARTBEAT:
+                m.x = origem.getInt();
+                m.valor = origem.getLong();
+                m.y = origem.getInt();
+                break;
+            case REJEITADO:
+                m.id = origem.getLong();
+                m.valor = origem.getLong();
+                m.x = origem.getInt();
+                m.y = origem.getInt();
+                break;
+            case SAIR:
+            case PRONTO:
+            case ACQUIRE_LOCK:
+            case RELEASE_LOCK:
+                m.x = origem.getInt();
+                break;
+            case MEMBROS:
+                m.valor = origem.getLong();
+                m.seq = origem.getLong();
+                m.quantidade = quantidade(origem, 2 * Long.BYTES);
+                m.numeros = new long[m.quantidade * 2];
+                for (int i = 0; i < m.numeros.length; i++) m.numeros[i] = origem.getLong();
+                break;
+            case SINCRONIZAR:
+                m.valor = origem.getLong();
+                m.quantidade = origem.getInt();
+                break;
+            case COMPARAR:
+                m.opcao = origem.get();
+                m.valor = origem.getLong();
+                m.quantidade = origem.getInt();
+                break;
+            case RESUMO:
+                m.valor = origem.getLong();
+                m.x = origem.getInt();
+                m.quantidade = quantidade(origem, Long.BYTES);
+                m.numeros = new long[m.quantidade];
+                for (int i = 0; i < m.quantidade; i++) m.numeros[i] = origem.getLong();
+                break;
+            case LINHAS:
+                m.valor = origem.getLong();
+                m.quantidade = quantidade(origem, 3 * Long.BYTES);
+                m.numeros = new long[m.quantidade * 3];
+                for (int i = 0; i < m.numeros.length; i++) m.numeros[i] = origem.getLong();
+                break;
+            case CACHE:
+                m.quantidade = quantidade(origem, Long.BYTES);
+                m.numeros = new long[m.quantidade];
+                for (int i = 0; i < m.quantidade; i++) m.numeros[i] = origem.getLong();
+                break;
+            case OK:
+                m.id = origem.getLong();
+                break;
+            case ERRO:
+            case METRICAS:
+                byte[] bytes = new byte[quantidade(origem, 1)];
+                origem.get(bytes);
+                m.texto = new String(bytes, StandardCharsets.UTF_8);
+                break;
+            default:
+                break;
+        }
+        return m;
+    }
+
+    private static int tamanhoCampos(Mensagem m) {
+        switch (m.tipo) {
+            case ESCRITA:
+                return Long.BYTES + 2 * Integer.BYTES + 2 * Long.BYTES;
+            case ESCRITA_LOTE:
+                return 3 * Long.BYTES + Integer.BYTES + m.quantidade * 2 * Integer.BYTES;
+            case LEITURA:
+                return 1;
+            case CONFIRMACAO:
+                return Integer.BYTES + m.quantidade * Long.BYTES;
+            case REPLICACAO:
+                return 3 * Integer.BYTES + Long.BYTES;
+            case REPLICACAO_SEQ:
+                return Long.BYTES + 3 * Integer.BYTES;
+            case REPLICACAO_LOTE:
+                return Long.BYTES + Integer.BYTES + m.quantidade * (3 * Integer.BYTES + Long.BYTES);
+            case SEQUENCIA:
+            case OK:
+            case GRANTED:
+                return Long.BYTES;
+            case TRECHO:
+                return Long.BYTES + Integer.BYTES + m.quantidade * 3 * Integer.BYTES;
+            case REGISTRAR:
+                return Integer.BYTES + 1 + Long.BYTES;
+            case HEARTBEAT:
+                return 2 * Integer.BYTES + Long.BYTES;
+            case REJEITADO:
+                return 2 * Long.BYTES + 2 * Integer.BYTES;
+            case SAIR:
+            case PRONTO:
+            case ACQUIRE_LOCK:
+            case RELEASE_LOCK:
+                return Integer.BYTES;
+            case MEMBROS:
+                return 2 * Long.BYTES + Integer.BYTES + m.quantidade * 2 * Long.BYTES;
+            case SINCRONIZAR:
+                return Long.BYTES + Integer.BYTES;
+            case COMPARAR:
+                return 1 + Long.BYTES + Integer.BYTES;
+            case RESUMO:
+                return Long.BYTES + 2 * Integer.BYTES + m.quantidade * Long.BYTES;
+            case LINHAS:
+                return Long.BYTES + Integer.BYTES + m.quantidade * 3 * Long.BYTES;
+            case CACHE:
+                return Integer.BYTES + m.quantidade * Long.BYTES;
+            case ERRO:
+            case METRICAS:
+                // Pior caso do UTF-8: 3 bytes por char (um par surrogate de 2 chars vira 4 bytes)
+                int caracteres = m.texto == null ? 0 : m.texto.length();
+                return Integer.BYTES + (int) Math.min(3L * caracteres, TAMANHO_MAXIMO);
+            default:
+                return 0;
+        }
+    }
+
+    // quantidade e x, y, mdc de cada linha (TRECHO e REPLICACAO_LOTE)
+    private static void escreverLinhas(Mensagem m, ByteBuffer destino) {
+        destino.putInt(m.quantidade);
+        for (int i = 0; i < m.quantidade * 3; i++) destino.putInt(m.valores[i]);
+    }
+
+    // 'bytesExtras': bytes de cada linha que vêm depois da lista (entram na conferência da quantidade)
+    private static void lerLinhas(Mensagem m, ByteBuffer origem, int bytesExtras) {
+        m.quantidade = quantidade(origem, 3 * Integer.BYTES + bytesExtras);
+        m.valores = new int[m.quantidade * 3];
+        for (int i = 0; i < m.valores.length; i++) m.valores[i] = origem.getInt();
+    }
+
+    // Quantidade de elementos de uma lista, conferida contra os bytes que sobraram no quadro
+    private static int quantidade(ByteBuffer origem, int bytesPorElemento) {
+        int quantidade = origem.getInt();
+        if (quantidade < 0 || (long) quantidade * bytesPorElemento > origem.remaining()) {
+            throw new IllegalArgumentException("Quantidade inválida: " + quantidade);
+        }
+        return quantidade;
+    }
+
+    // Texto em UTF-8; recusa o que não cabe num quadro em vez de cortar (o corte podia cair no meio de um caractere)
+    private static byte[] texto(Mensagem m) {
+        byte[] bytes = (m.texto == null ? "" : m.texto).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > TAMANHO_MAXIMO - (Long.BYTES + 1 + Integer.BYTES)) {
+            throw new IllegalArgumentException("Texto grande demais para um quadro: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+}
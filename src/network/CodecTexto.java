@@ -0,0 +1,334 @@
+package network;
+
+// Formato texto (legado): campos separados por ';', ex: "ESCRITA;ID;X;Y".
+// Continua aceito para clientes antigos e para depuração (nc/telnet); entre os nossos
+// componentes o formato padrão é o binário (CodecBinario).
+public final class CodecTexto {
+
+    private CodecTexto() {
+    }
+
+    // Interpreta uma linha. Lança IllegalArgumentException se a mensagem for inválida.
+    public static Mensagem ler(String linha) {
+        String[] partes = linha.split(";");
+        TipoMensagem tipo;
+        try {
+            tipo = TipoMensagem.valueOf(partes[0]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Mensagem desconhecida");
+        }
+
+        Mensagem m = new Mensagem(tipo);
+        try {
+            switch (tipo) {
+                case ESCRITA:
+                    if (partes.length == 3) {
+                        // Vinda do cliente: "ESCRITA;X;Y" (o ID é dado pelo LoadBalancer)
+                        m.x = Integer.parseInt(partes[1]);
+                        m.y = Integer.parseInt(partes[2]);
+                    } else {
+                        m.id = Long.parseLong(partes[1]);
+                        m.x = Integer.parseInt(partes[2]);
+                        m.y = Integer.parseInt(partes[3]);
+                        if (partes.length > 4) m.seq = Long.parseLong(partes[4]);
+                        if (partes.length > 5) m.valor = Long.parseLong(partes[5]);
+                    }
+                    break;
+                case ESCRITA_LOTE: {
+                    // Vinda do cliente: "ESCRITA_LOTE;X,Y;X,Y;..."; do LoadBalancer: "ESCRITA_LOTE;ID;SEQ;VERSAO;X,Y;..."
+                    int primeiro = 1;
+                    if (partes.length > 1 && partes[1].indexOf(',') < 0) {
+                        m.id = Long.parseLong(partes[1]);
+                        m.seq = Long.parseLong(partes[2]);
+                        m.valor = Long.parseLong(partes[3]);
+                        primeiro = 4;
+                    }
+                    m.quantidade = partes.length - primeiro;
+                    m.valores = new int[m.quantidade * 2];
+                    for (int i = 0; i < m.quantidade; i++) {
+                        String[] campos = partes[primeiro + i].split(",");
+                        m.valores[i * 2] = Integer.parseInt(campos[0]);
+                        m.valores[i * 2 + 1] = Integer.parseInt(campos[1]);
+                    }
+                    break;
+                }
+                case LEITURA:
+                    if (partes.length > 1) m.opcao = nivelLeitura(partes[1]);
+                    break;
+                case CONFIRMACAO:
+                    m.quantidade = partes.length - 1;
+                    m.ids = new long[m.quantidade];
+                    for (int i = 0; i < m.quantidade; i++) m.ids[i] = Long.parseLong(partes[i + 1]);
+                    break;
+                case REPLICACAO:
+                    m.x = Integer.parseInt(partes[1]);
+                    m.y = Integer.parseInt(partes[2]);
+                    if (partes.length > 3) m.mdc = Integer.parseInt(partes[3]);
+                    if (partes.length > 4) m.id = Long.parseLong(partes[4]);
+                    break;
+                case REPLICACAO_SEQ:
+                    m.seq = Long.parseLong(partes[1]);
+                    m.x = Integer.parseInt(partes[2]);
+                    m.y = Integer.parseInt(partes[3]);
+                    if (partes.length > 4) m.mdc = Integer.parseInt(partes[4]);
+                    break;
+                case REPLICACAO_LOTE: {
+                    // "REPLICACAO_LOTE[;SEQ];X,Y,MDC[,ID];X,Y,MDC[,ID];..."
+                    int primeiro = 1;
+                    if (partes.length > 1 && partes[1].indexOf(',') < 0) {
+                        m.seq = Long.parseLong(partes[1]);
+                        primeiro = 2;
+                    }
+                    m.quantidade = partes.length - primeiro;
+                    m.valores = new int[m.quantidade * 3];
+                    m.ids = new long[m.quantidade];
+                    for (int i = 0; i < m.quantidade; i++) {
+                        String[] campos = partes[primeiro + i].split(",");
+                        m.valores[i * 3] = Integer.parseInt(campos[0]);
+                        m.valores[i * 3 + 1] = Integer.parseInt(campos[1]);
+                        m.valores[i * 3 + 2] = Integer.parseInt(campos[2]);
+                        if (campos.length > 3) m.ids[i] = Long.parseLong(campos[3]);
+                    }
+                    break;
+                }
+                case SEQUENCIA:
+                    if (partes.length > 1) m.valor = Long.parseLong(partes[1]);
+                    break;
+                case LINHAS:
+                    // "LINHAS;TOTAL[;PORTA,LINHAS,ATRASO|PORTA,OFF;...]"
+                    m.valor = Long.parseLong(partes[1]);
+                    m.quantidade = partes.length - 2;
+                    m.numeros = new long[m.quantidade * 3];
+                    for (int i = 0; i < m.quantidade; i++) {
+                        String[] campos = partes[i + 2].split(",");
+                        m.numeros[i * 3] = Long.parseLong(campos[0]);
+                        boolean fora = campos[1].equals("OFF");
+                        m.numeros[i * 3 + 1] = fora ? -1 : Long.parseLong(campos[1]);
+                        m.numeros[i * 3 + 2] = fora ? -1 : Long.parseLong(campos[2]);
+                    }
+                    break;
+                case CACHE:
+                    m.quantidade = partes.length - 1;
+                    m.numeros = new long[m.quantidade];
+                    for (int i = 0; i < m.quantidade; i++) m.numeros[i] = Long.parseLong(partes[i + 1]);
+                    break;
+                case OK:
+                    if (partes.length > 1) m.id = Long.parseLong(partes[1]);
+                    break;
+                case GRANTED:
+                    if (partes.length > 1) m.valor = Long.parseLong(partes[1]);
+                    break;
+                case REGISTRAR:
+                    m.x = Integer.parseInt(partes[1]);
+                    if (partes.length > 2) m.opcao = Byte.parseByte(partes[2]);
+                    if (partes.length > 3) m.valor = Long.parseLong(partes[3]);
+                    break;
+                case HEARTBEAT:
+                    m.x = Integer.parseInt(partes[1]);
+                    if (partes.length > 2) m.valor = Long.parseLong(partes[2]);
+                    if (partes.length > 3) m.y = Integer.parseInt(partes[3]);
+                    break;
+                case REJEITADO:
+                    // "REJEITADO;ID;TENTAR_EM_MS[;PORTA;LIMITE]"
+                    m.id = Long.parseLong(partes[1]);
+                    m.valor = Long.parseLong(partes[2]);
+                    if (partes.length > 4) {
+                        m.x = Integer.parseInt(partes[3]);
+                        m.y = Integer.parseInt(partes[4]);
+                    }
+                    break;
+                case SAIR:
+                case PRONTO:
+                    m.x = Integer.parseInt(partes[1]);
+                    break;
+                case ACQUIRE_LOCK:
+                case RELEASE_LOCK:
+                    // "ACQUIRE_LOCK[;PORTA]"
+                    if (partes.length > 1) m.x = Integer.parseInt(partes[1]);
+                    break;
+                case MEMBROS:
+                    // Pedido: "MEMBROS". Resposta: "MEMBROS;VERSAO;SEQ;PORTA,GERACAO;..."
+                    if (partes.length > 1) {
+                        m.valor = Long.parseLong(partes[1]);
+                        m.seq = Long.parseLong(partes[2]);
+                        m.quantidade = partes.length - 3;
+                        m.numeros = new long[m.quantidade * 2];
+                        for (int i = 0; i < m.quantidade; i++) {
+                            String[] campos = partes[i + 3].split(",");
+                            m.numeros[i * 2] = Long.parseLong(campos[0]);
+                            m.numeros[i * 2 + 1] = Long.parseLong(campos[1]);
+                        }
+                    }
+                    break;
+                case SINCRONIZAR:
+                    m.valor = Long.parseLong(partes[1]);
+                    m.quantidade = Integer.parseInt(partes[2]);
+                    break;
+                case COMPARAR:
+                    // "COMPARAR;NIVEL;PRIMEIRO_NO;QUANTIDADE"
+                    m.opcao = Byte.parseByte(partes[1]);
+                    m.valor = Long.parseLong(partes[2]);
+                    m.quantidade = Integer.parseInt(partes[3]);
+                    break;
+                case RESUMO:
+                    // "RESUMO;LINHAS;LINHAS_POR_FOLHA;HASH;HASH;..."
+                    m.valor = Long.parseLong(partes[1]);
+                    m.x = Integer.parseInt(partes[2]);
+                    m.quantidade = partes.length - 3;
+                    m.numeros = new long[m.quantidade];
+                    for (int i = 0; i < m.quantidade; i++) m.numeros[i] = Long.parseLong(partes[i + 3]);
+                    break;
+                case TRECHO:
+                    // "TRECHO;INICIO;X,Y,MDC;X,Y,MDC;..."
+                    m.valor = Long.parseLong(partes[1]);
+                    m.quantidade = partes.length - 2;
+                    m.valores = new int[m.quantidade * 3];
+                    for (int i = 0; i < m.quantidade; i++) {
+                        String[] campos = partes[i + 2].split(",");
+                        m.valores[i * 3] = Integer.parseInt(campos[0]);
+                        m.valores[i * 3 + 1] = Integer.parseInt(campos[1]);
+                        m.valores[i * 3 + 2] = Integer.parseInt(campos[2]);
+                    }
+                    break;
+                case ERRO:
+                case METRICAS:
+                    m.texto = partes.length > 1 ? linha.substring(linha.indexOf(';') + 1) : "";
+                    break;
+                default:
+                    // ACK_REPLICACAO: sem campos
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Formato inválido para " + tipo);
+        }
+        return m;
+    }
+
+    public static String formatar(Mensagem m) {
+        StringBuilder sb = new StringBuilder(32).append(m.tipo.name());
+        switch (m.tipo) {
+            case ESCRITA:
+                if (m.id != 0) sb.append(';').append(m.id);
+                sb.append(';').append(m.x).append(';').append(m.y);
+                if (m.seq != 0 || m.valor != 0) sb.append(';').append(m.seq);
+                if (m.valor != 0) sb.append(';').append(m.valor);
+                break;
+            case ESCRITA_LOTE:
+                if (m.id != 0) sb.append(';').append(m.id).append(';').append(m.seq).append(';').append(m.valor);
+                for (int i = 0; i < m.quantidade; i++) {
+                    sb.append(';').append(m.valores[i * 2]).append(',').append(m.valores[i * 2 + 1]);
+                }
+                break;
+            case LEITURA:
+                if (m.opcao == Mensagem.LEITURA_UM) sb.append(";UM");
+                else if (m.opcao == Mensagem.LEITURA_TODOS) sb.append(";TODOS");
+                break;
+            case CONFIRMACAO:
+                for (int i = 0; i < m.quantidade; i++) sb.append(';').append(m.ids[i]);
+                break;
+            case REPLICACAO:
+                sb.append(';').append(m.x).append(';').append(m.y).append(';').append(m.mdc);
+                if (m.id != 0) sb.append(';').append(m.id);
+                break;
+            case REPLICACAO_SEQ:
+                sb.append(';').append(m.seq).append(';').append(m.x).append(';').append(m.y).append(';').append(m.mdc);
+                break;
+            case TRECHO:
+                sb.append(';').append(m.valor);
+                formatarLinhas(m, sb);
+                break;
+            case REPLICACAO_LOTE:
+                if (m.seq != 0) sb.append(';').append(m.seq);
+                formatarLinhas(m, sb);
+                break;
+            case SEQUENCIA:
+                sb.append(';').append(m.valor);
+                break;
+            case LINHAS:
+                sb.append(';').append(m.valor);
+                for (int i = 0; i < m.quantidade; i++) {
+                    sb.append(';').append(m.numeros[i * 3]);
+                    if (m.numeros[i * 3 + 1] < 0) {
+                        sb.append(",OFF");
+                    } else {
+                        sb.append(',').append(m.numeros[i * 3 + 1]).append(',').append(m.numeros[i * 3 + 2]);
+                    }
+                }
+                break;
+            case CACHE:
+                for (int i = 0; i < m.quantidade; i++) sb.append(';').append(m.numeros[i]);
+                break;
+            case OK:
+                if (m.id != 0) sb.append(';').append(m.id);
+                break;
+            case GRANTED:
+                if (m.valor != 0) sb.append(';').append(m.valor);
+                break;
+            case REGISTRAR:
+                sb.append(';').append(m.x).append(';').append(m.opcao).append(';').append(m.valor);
+                break;
+            case HEARTBEAT:
+                sb.append(';').append(m.x).append(';').append(m.valor);
+                if (m.y != 0) sb.append(';').append(m.y);
+                break;
+            case REJEITADO:
+                sb.append(';').append(m.id).append(';').append(m.valor);
+                if (m.x != 0) sb.append(';').append(m.x).append(';').append(m.y);
+                break;
+            case SAIR:
+            case PRONTO:
+                sb.append(';').append(m.x);
+                break;
+            case ACQUIRE_LOCK:
+            case RELEASE_LOCK:
+                if (m.x != 0) sb.append(';').append(m.x);
+                break;
+            case MEMBROS:
+                if (m.valor != 0 || m.numeros != null) {
+                    sb.append(';').append(m.valor).append(';').append(m.seq);
+                    for (int i = 0; i < m.quantidade; i++) {
+                        sb.append(';').append(m.numeros[i * 2]).append(',').append(m.numeros[i * 2 + 1]);
+                    }
+                }
+                break;
+            case SINCRONIZAR:
+                sb.append(';').append(m.valor).append(';').append(m.quantidade);
+                break;
+            case COMPARAR:
+                sb.append(';').append(m.opcao).append(';').append(m.valor).append(';').append(m.quantidade);
+                break;
+            case RESUMO:
+                sb.append(';').append(m.valor).append(';').append(m.x);
+                for (int i = 0; i < m.quantidade; i++) sb.append(';').append(m.numeros[i]);
+                break;
+            case ERRO:
+            case METRICAS:
+                if (m.texto != null && !m.texto.isEmpty()) sb.append(';').append(m.texto);
+                break;
+            default:
+                break;
+        }
+        return sb.toString();
+    }
+
+    // ";X,Y,MDC[,ID]" de cada linha (TRECHO e REPLICACAO_LOTE)
+    private static void formatarLinhas(Mensagem m, StringBuilder sb) {
+        for (int i = 0; i < m.quantidade; i++) {
+            sb.append(';').append(m.valores[i * 3])
+                    .append(',').append(m.valores[i * 3 + 1])
+                    .append(',').append(m.valores[i * 3 + 2]);
+            if (m.ids != null && m.ids[i] != 0) sb.append(',').append(m.ids[i]);
+        }
+    }
+
+    private static byte nivelLeitura(String texto) {
+        switch (texto.trim().toUpperCase()) {
+            case "UM":
+                return Mensagem.LEITURA_UM;
+            case "TODOS":
+                return Mensagem.LEITURA_TODOS;
+            default:
+                throw new IllegalArgumentException("Nível de leitura desconhecido: " + texto);
+        }
+    }
+}
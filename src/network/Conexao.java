@@ -0,0 +1,246 @@
+package network;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Conexão TCP persistente e multiplexada.
+// Em vez de abrir um socket por mensagem, várias requisições compartilham o mesmo socket:
+// cada mensagem enviada leva um ID de correlação e a resposta volta com o mesmo ID.
+// Assim podemos enviar várias requisições seguidas sem esperar as respostas (pipelining).
+//
+// O formato é escolhido por -Dprotocolo.formato (padrão BINARIO, ver CodecBinario);
+// TEXTO manda linhas "ID#MENSAGEM" como antes.
+public class Conexao implements Closeable {
+    // Primeira linha enviada ao abrir uma conexão texto, avisa o outro lado que é uma conexão multiplexada
+    public static final String HANDSHAKE = "MUX";
+    public static final char SEPARADOR = '#';
+    // ID reservado para mensagens que não esperam resposta
+    public static final long SEM_RESPOSTA = 0;
+
+    private static final int TAMANHO_INICIAL = 8 * 1024;
+
+    private final int porta;
+    private final FormatoProtocolo formato;
+    private final Socket socket;
+    private final OutputStream out;
+    private final InputStream in;
+
+    // Buffer onde as mensagens são montadas antes de ir para o socket (protegido por 'out')
+    private ByteBuffer bufferSaida = ByteBuffer.allocate(TAMANHO_INICIAL);
+
+    private final AtomicLong proximoId = new AtomicLong(1);
+    // Requisições enviadas que ainda aguardam resposta: ID -> Future
+    private final Map<Long, CompletableFuture<Mensagem>> pendentes = new ConcurrentHashMap<>();
+    private volatile boolean aberta = true;
+
+    public Conexao(String host, int porta) throws IOException {
+        this(host, porta, FormatoProtocolo.configurado());
+    }
+
+    public Conexao(String host, int porta, FormatoProtocolo formato) throws IOException {
+        this.porta = porta;
+        this.formato = formato;
+        this.socket = new Socket(host, porta);
+        this.socket.setTcpNoDelay(true);
+        this.socket.setKeepAlive(true);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        this.in = new BufferedInputStream(socket.getInputStream());
+
+        synchronized (out) {
+            if (formato == FormatoProtocolo.BINARIO) {
+                out.write(CodecBinario.MAGICO);
+                out.write(CodecBinario.VERSAO);
+            } else {
+                out.write((HANDSHAKE + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+        }
+
+        // Thread que lê as respostas e entrega para o Future certo
+        Thread leitor = new Thread(this::lerRespostas, "conexao-leitor-" + porta);
+        leitor.setDaemon(true);
+        leitor.start();
+    }
+
+    // Envia uma requisição e devolve um Future que completa quando a resposta chegar
+    public CompletableFuture<Mensagem> enviar(Mensagem mensagem) {
+        long id = proximoId.getAndIncrement();
+        CompletableFuture<Mensagem> futuro = pendente(id);
+
+        try {
+            escrever(id, mensagem);
+        } catch (IOException e) {
+            pendentes.remove(id);
+            futuro.completeExceptionally(e);
+        }
+        return futuro;
+    }
+
+    // Envia várias requisições numa única escrita no socket (um flush para todas) e devolve
+    // os Futures na mesma ordem
+    public List<CompletableFuture<Mensagem>> enviarVarios(List<Mensagem> mensagens) {
+        List<CompletableFuture<Mensagem>> futuros = new ArrayList<>(mensagens.size());
+        long[] ids = new long[mensagens.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = proximoId.getAndIncrement();
+            futuros.add(pendente(ids[i]));
+        }
+
+        try {
+            escreverVarios(ids, mensagens);
+        } catch (IOException e) {
+            for (int i = 0; i < ids.length; i++) {
+                pendentes.remove(ids[i]);
+                futuros.get(i).completeExceptionally(e);
+            }
+        }
+        return futuros;
+    }
+
+    // O Future sai de 'pendentes' quando completar por qualquer caminho, inclusive pelo orTimeout de
+    // quem chamou: senão uma resposta que nunca chega deixaria a entrada no mapa para sempre
+    private CompletableFuture<Mensagem> pendente(long id) {
+        CompletableFuture<Mensagem> futuro = new CompletableFuture<>();
+        pendentes.put(id, futuro);
+        futuro.whenComplete((r, erro) -> pendentes.remove(id, futuro));
+        return futuro;
+    }
+
+    // Envia uma mensagem sem esperar resposta (ex: RELEASE_LOCK, CONFIRMACAO)
+    public void notificar(Mensagem mensagem) throws IOException {
+        escrever(SEM_RESPOSTA, mensagem);
+    }
+
+    public boolean isAberta() {
+        return aberta;
+    }
+
+    public int getPorta() {
+        return porta;
+    }
+
+    // Várias threads escrevem no mesmo socket, então a escrita de cada mensagem é atômica
+    private void escrever(long id, Mensagem mensagem) throws IOException {
+        if (!aberta) {
+            throw new IOException("Conexão com a porta " + porta + " está fechada");
+        }
+        try {
+            synchronized (out) {
+                escreverSemFlush(id, mensagem);
+                out.flush();
+            }
+        } catch (IOException e) {
+            close();
+            throw new IOException("Falha ao escrever na conexão com a porta " + porta, e);
+        }
+    }
+
+    private void escreverVarios(long[] ids, List<Mensagem> mensagens) throws IOException {
+        if (!aberta) {
+            throw new IOException("Conexão com a porta " + porta + " está fechada");
+        }
+        try {
+            synchronized (out) {
+                for (int i = 0; i < ids.length; i++) escreverSemFlush(ids[i], mensagens.get(i));
+                out.flush();
+            }
+        } catch (IOException e) {
+            close();
+            throw new IOException("Falha ao escrever na conexão com a porta " + porta, e);
+        }
+    }
+
+    // Chamado com 'out' travado
+    private void escreverSemFlush(long id, Mensagem mensagem) throws IOException {
+        if (formato == FormatoProtocolo.BINARIO) {
+            int tamanho = CodecBinario.tamanho(mensagem);
+            if (bufferSaida.capacity() < tamanho) bufferSaida = ByteBuffer.allocate(tamanho);
+            bufferSaida.clear();
+            CodecBinario.escrever(mensagem, id, bufferSaida);
+            out.write(bufferSaida.array(), 0, bufferSaida.position());
+        } else {
+            String linha = id + "" + SEPARADOR + CodecTexto.formatar(mensagem) + "\n";
+            out.write(linha.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void lerRespostas() {
+        try {
+            if (formato == FormatoProtocolo.BINARIO) {
+                lerQuadros();
+            } else {
+                lerLinhas();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // Conexão caiu ou chegou algo fora do protocolo; tratado abaixo
+        } finally {
+            close();
+        }
+    }
+
+    private void lerQuadros() throws IOException {
+        DataInputStream dados = new DataInputStream(in);
+        // Buffer de leitura reaproveitado entre as respostas
+        ByteBuffer quadro = ByteBuffer.allocate(TAMANHO_INICIAL);
+        while (true) {
+            int tamanho;
+            try {
+                tamanho = dados.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if (tamanho < Long.BYTES + 1 || tamanho > CodecBinario.TAMANHO_MAXIMO) {
+                throw new IOException("Tamanho de quadro inválido: " + tamanho);
+            }
+            if (quadro.capacity() < tamanho) quadro = ByteBuffer.allocate(tamanho);
+            quadro.clear().limit(tamanho);
+            dados.readFully(quadro.array(), 0, tamanho);
+
+            long id = quadro.getLong();
+            entregar(id, CodecBinario.ler(quadro));
+        }
+    }
+
+    private void lerLinhas() throws IOException {
+        BufferedReader leitor = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String linha;
+        while ((linha = leitor.readLine()) != null) {
+            int sep = linha.indexOf(SEPARADOR);
+            if (sep < 0) continue;
+            long id = Long.parseLong(linha.substring(0, sep));
+            entregar(id, CodecTexto.ler(linha.substring(sep + 1)));
+        }
+    }
+
+    private void entregar(long id, Mensagem resposta) {
+        CompletableFuture<Mensagem> futuro = pendentes.remove(id);
+        if (futuro != null) {
+            futuro.complete(resposta);
+        }
+    }
+
+    @Override
+    public void close() {
+        aberta = false;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignora, já estamos fechando
+        }
+
+        // Quem estava esperando resposta recebe erro para poder tentar de novo
+        IOException erro = new IOException("Conexão com a porta " + porta + " foi encerrada");
+        for (Long id : pendentes.keySet()) {
+            CompletableFuture<Mensagem> futuro = pendentes.remove(id);
+            if (futuro != null) futuro.completeExceptionally(erro);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package network;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Cria os executores usados pelos núcleos de rede (e pela fase de escrita dos servidores)
+public final class FabricaExecutores {
+
+    private FabricaExecutores() {
+    }
+
+    // Uma thread virtual por tarefa (Java 21+). Devolve null se a JVM não tiver threads virtuais.
+    static ExecutorService virtuais() {
+        try {
+            return (ExecutorService) java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // Pool de threads de plataforma com limite: quando todas estão ocupadas a tarefa é recusada
+    static ExecutorService limitado(String nome, int maxThreads) {
+        AtomicInteger contador = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, nome + "-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        return pool;
+    }
+
+    // Threads virtuais quando disponíveis, senão pool limitado. Nos dois casos no máximo 'maxThreads'
+    // tarefas rodam ao mesmo tempo; acima disso a tarefa é recusada.
+    public static ExecutorService trabalho(String nome, int maxThreads) {
+        ExecutorService virtuais = virtuais();
+        return virtuais != null ? new VirtuaisLimitadas(virtuais, maxThreads) : limitado(nome, maxThreads);
+    }
+
+    // Uma thread virtual por tarefa, com uma vaga do semáforo por tarefa em andamento
+    private static final class VirtuaisLimitadas extends AbstractExecutorService {
+        private final ExecutorService virtuais;
+        private final Semaphore vagas;
+        private final int limite;
+
+        VirtuaisLimitadas(ExecutorService virtuais, int limite) {
+            this.virtuais = virtuais;
+            this.limite = Math.max(1, limite);
+            this.vagas = new Semaphore(this.limite);
+        }
+
+        @Override
+        public void execute(Runnable tarefa) {
+            if (!vagas.tryAcquire()) {
+                throw new RejectedExecutionException("Limite de " + limite + " tarefas simultâneas atingido");
+            }
+            try {
+                virtuais.execute(() -> {
+                    try {
+                        tarefa.run();
+                    } finally {
+                        vagas.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                vagas.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            virtuais.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return virtuais.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return virtuais.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return virtuais.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unidade) throws InterruptedException {
+            return virtuais.awaitTermination(timeout, unidade);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package network;
+
+import config.Configuracao;
+
+// Formato usado pelas conexões que nós abrimos (Conexao).
+// O lado que recebe aceita os dois e descobre qual é pelo primeiro byte.
+public enum FormatoProtocolo {
+    // Quadros binários com tamanho fixo (CodecBinario)
+    BINARIO,
+    // Linhas "ID#MENSAGEM" com campos separados por ';' (CodecTexto)
+    TEXTO;
+
+    public static FormatoProtocolo configurado() {
+        return valueOf(Configuracao.texto("protocolo.formato", "BINARIO").toUpperCase());
+    }
+}
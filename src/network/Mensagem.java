@@ -0,0 +1,174 @@
+package network;
+
+// Mensagem já interpretada, independente do formato em que chegou (texto ou binário).
+// Cada tipo usa só alguns campos:
+//   ESCRITA          id, x, y, seq (seq = 0 fora do modo SEQUENCIADOR; id = 0 quando vem do cliente),
+//                    valor (versão dos membros do cluster quando a escrita foi roteada)
+//   ESCRITA_LOTE     valores[0..2*quantidade) = x, y de cada par; id, seq: do primeiro par (os pares seguintes
+//                    têm id + i e seq + i; 0 quando vem do cliente), valor (versão dos membros, como na ESCRITA)
+//   LEITURA          opcao (nível de leitura: 0 = padrão, 1 = UM, 2 = TODOS)
+//   CONFIRMACAO      ids[0..quantidade)
+//   REPLICACAO       x, y, mdc (mdc = 0 se não informado), id (da requisição; 0 = sem ID)
+//   REPLICACAO_SEQ   seq, x, y, mdc
+//   REPLICACAO_LOTE  valores[0..3*quantidade) = x, y, mdc de cada linha, ids[0..quantidade) = ID de cada linha,
+//                    seq (modo SEQUENCIADOR: sequência da primeira linha, as seguintes em ordem; 0 fora dele)
+//   SEQUENCIA        valor (na resposta: última sequência gravada)
+//   LINHAS           valor (total), numeros[0..3*quantidade) = porta, linhas, atraso de cada réplica (-1 = fora do ar)
+//   CACHE            numeros[0..quantidade) = acertos, falhas, remoções, capacidade
+//   OK               id
+//   ERRO             texto
+//   ACQUIRE_LOCK,    x (porta do servidor que pede/libera o lock; 0 = não informada). O LoadBalancer libera o lock
+//   RELEASE_LOCK     de um servidor que sai do cluster e ignora o RELEASE_LOCK de quem não está com ele
+//   GRANTED          valor (versão dos membros do cluster quando o lock foi concedido)
+//   REGISTRAR        x (porta do servidor), opcao (1 = ainda vai sincronizar os dados), valor (última linha/sequência local)
+//   HEARTBEAT        x (porta), valor (última linha/sequência local), y (limite de ESCRITAs simultâneas do servidor)
+//   SAIR, PRONTO     x (porta)
+//   MEMBROS          valor (versão), seq (sequência atual do LoadBalancer),
+//                    numeros[0..2*quantidade) = porta e geração de cada membro
+//   SINCRONIZAR      valor (primeira linha, começando em 0), quantidade (máximo de linhas)
+//   TRECHO           valor (primeira linha), valores[0..3*quantidade) = x, y, mdc de cada linha
+//   REJEITADO        id (requisição recusada; 0 se não houver), valor (tentar de novo depois de tantos ms),
+//                    x, y (quando vem de um servidor: porta e limite atual de ESCRITAs simultâneas)
+//   METRICAS         pedido sem campos; resposta: texto ("nome=valor" separados por espaço)
+//   COMPARAR         opcao (nível da árvore de Merkle, 0 = folhas), valor (primeiro nó), quantidade (máximo de nós)
+//   RESUMO           valor (linhas do arquivo), x (linhas por folha), numeros[0..quantidade) = hash de cada nó pedido
+public final class Mensagem {
+    public static final byte LEITURA_PADRAO = 0;
+    public static final byte LEITURA_UM = 1;
+    public static final byte LEITURA_TODOS = 2;
+
+    public final TipoMensagem tipo;
+    public long id;
+    public long seq;
+    public long valor;
+    public int x;
+    public int y;
+    public int mdc;
+    public byte opcao;
+    public int quantidade;
+    public long[] ids;
+    public int[] valores;
+    public long[] numeros;
+    public String texto;
+
+    public Mensagem(TipoMensagem tipo) {
+        this.tipo = tipo;
+    }
+
+    public static Mensagem simples(TipoMensagem tipo) {
+        return new Mensagem(tipo);
+    }
+
+    public static Mensagem escrita(long id, int x, int y, long seq) {
+        Mensagem m = new Mensagem(TipoMensagem.ESCRITA);
+        m.id = id;
+        m.x = x;
+        m.y = y;
+        m.seq = seq;
+        return m;
+    }
+
+    // 'pares' guarda x, y de cada par em sequência
+    public static Mensagem escritaLote(long id, int[] pares, int quantidade, long seq) {
+        Mensagem m = new Mensagem(TipoMensagem.ESCRITA_LOTE);
+        m.id = id;
+        m.valores = pares;
+        m.quantidade = quantidade;
+        m.seq = seq;
+        return m;
+    }
+
+    public static Mensagem leitura(byte nivel) {
+        Mensagem m = new Mensagem(TipoMensagem.LEITURA);
+        m.opcao = nivel;
+        return m;
+    }
+
+    public static Mensagem confirmacao(long[] ids, int quantidade) {
+        Mensagem m = new Mensagem(TipoMensagem.CONFIRMACAO);
+        m.ids = ids;
+        m.quantidade = quantidade;
+        return m;
+    }
+
+    public static Mensagem replicacao(long id, int x, int y, int mdc) {
+        Mensagem m = new Mensagem(TipoMensagem.REPLICACAO);
+        m.id = id;
+        m.x = x;
+        m.y = y;
+        m.mdc = mdc;
+        return m;
+    }
+
+    public static Mensagem replicacaoSeq(long seq, int x, int y, int mdc) {
+        Mensagem m = new Mensagem(TipoMensagem.REPLICACAO_SEQ);
+        m.seq = seq;
+        m.x = x;
+        m.y = y;
+        m.mdc = mdc;
+        return m;
+    }
+
+    // 'valores' guarda x, y, mdc de cada linha em sequência; 'ids' o ID da requisição de cada linha
+    public static Mensagem replicacaoLote(int[] valores, long[] ids, int quantidade) {
+        Mensagem m = new Mensagem(TipoMensagem.REPLICACAO_LOTE);
+        m.valores = valores;
+        m.ids = ids;
+        m.quantidade = quantidade;
+        return m;
+    }
+
+    public static Mensagem comValor(TipoMensagem tipo, long valor) {
+        Mensagem m = new Mensagem(tipo);
+        m.valor = valor;
+        return m;
+    }
+
+    public static Mensagem comparar(int nivel, long primeiroNo, int quantidade) {
+        Mensagem m = new Mensagem(TipoMensagem.COMPARAR);
+        m.opcao = (byte) nivel;
+        m.valor = primeiroNo;
+        m.quantidade = quantidade;
+        return m;
+    }
+
+    public static Mensagem resumo(long linhas, int linhasPorFolha, long[] hashes) {
+        Mensagem m = new Mensagem(TipoMensagem.RESUMO);
+        m.valor = linhas;
+        m.x = linhasPorFolha;
+        m.numeros = hashes;
+        m.quantidade = hashes.length;
+        return m;
+    }
+
+    public static Mensagem comPorta(TipoMensagem tipo, int porta, long valor) {
+        Mensagem m = new Mensagem(tipo);
+        m.x = porta;
+        m.valor = valor;
+        return m;
+    }
+
+    public static Mensagem ok(long id) {
+        Mensagem m = new Mensagem(TipoMensagem.OK);
+        m.id = id;
+        return m;
+    }
+
+    public static Mensagem rejeitado(long id, long tentarEmMs) {
+        Mensagem m = new Mensagem(TipoMensagem.REJEITADO);
+        m.id = id;
+        m.valor = tentarEmMs;
+        return m;
+    }
+
+    public static Mensagem erro(String texto) {
+        Mensagem m = new Mensagem(TipoMensagem.ERRO);
+        m.texto = texto;
+        return m;
+    }
+
+    @Override
+    public String toString() {
+        return CodecTexto.formatar(this);
+    }
+}
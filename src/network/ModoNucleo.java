@@ -0,0 +1,9 @@
+package network;
+
+// Formas de atender as conexões recebidas
+public enum ModoNucleo {
+    // Uma thread por conexão (threads virtuais quando a JVM suporta, senão um pool limitado)
+    THREADS,
+    // Uma única thread com Selector lê todos os sockets; o processamento vai para o pool de trabalho
+    NIO
+}
@@ -0,0 +1,169 @@
+package network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+// Núcleo orientado a eventos: uma única thread com Selector aceita e lê todas as conexões.
+// Os bytes lidos são entregues à SessaoProtocolo, que manda o processamento para o pool de trabalho.
+// As respostas são enfileiradas pela thread de trabalho e escritas pela thread do Selector.
+class NucleoNio extends NucleoServidor {
+    private static final int TAMANHO_BUFFER = 16 * 1024;
+
+    private Selector selector;
+    private int conexoesAtivas = 0; // Só acessado pela thread do Selector
+
+    NucleoNio(int porta, ProcessadorMensagem processador) {
+        super(porta, processador);
+    }
+
+    @Override
+    public void iniciar() throws IOException {
+        ExecutorService trabalho = FabricaExecutores.trabalho("trabalho-" + porta, maxThreads);
+        // Buffer de leitura compartilhado: só a thread do Selector lê
+        ByteBuffer leitura = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            selector = Selector.open();
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(porta), backlog);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            while (true) {
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            aceitar(serverChannel, trabalho);
+                        } else {
+                            ConexaoNio conexao = (ConexaoNio) key.attachment();
+                            if (key.isReadable()) conexao.ler(leitura);
+                            if (key.isValid() && key.isWritable()) conexao.escreverPendentes();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        Object anexo = key.attachment();
+                        if (anexo instanceof ConexaoNio) ((ConexaoNio) anexo).encerrar();
+                    }
+                }
+            }
+        }
+    }
+
+    private void aceitar(ServerSocketChannel serverChannel, ExecutorService trabalho) throws IOException {
+        SocketChannel canal = serverChannel.accept();
+        if (canal == null) return;
+
+        if (conexoesAtivas >= maxConexoes) {
+            // Limite de conexões atingido: recusa
+            canal.close();
+            return;
+        }
+
+        canal.configureBlocking(false);
+        canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = canal.register(selector, SelectionKey.OP_READ);
+        ConexaoNio conexao = new ConexaoNio(canal, key);
+        conexao.sessao = new SessaoProtocolo(processador, trabalho, conexao, canal.socket().getInetAddress());
+        key.attach(conexao);
+        conexoesAtivas++;
+    }
+
+    // Estado de uma conexão aceita pelo Selector
+    private class ConexaoNio implements SessaoProtocolo.Saida {
+        private final SocketChannel canal;
+        private final SelectionKey key;
+        private SessaoProtocolo sessao;
+
+        // Respostas prontas aguardando o socket aceitar escrita
+        private final Queue<ByteBuffer> saidaPendente = new ConcurrentLinkedQueue<>();
+        private volatile boolean fecharAposEscrever = false;
+        private boolean encerrada = false;
+
+        ConexaoNio(SocketChannel canal, SelectionKey key) {
+            this.canal = canal;
+            this.key = key;
+        }
+
+        // Thread do Selector: lê o que chegou e entrega para a sessão montar as mensagens
+        void ler(ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            int lidos = canal.read(buffer);
+            if (lidos < 0) {
+                encerrar();
+                return;
+            }
+            buffer.flip();
+            sessao.bytesRecebidos(buffer);
+        }
+
+        // Thread do Selector: envia as respostas enfileiradas
+        void escreverPendentes() throws IOException {
+            ByteBuffer pendente;
+            while ((pendente = saidaPendente.peek()) != null) {
+                canal.write(pendente);
+                if (pendente.hasRemaining()) {
+                    return; // Socket cheio, continua quando ficar disponível
+                }
+                saidaPendente.poll();
+            }
+
+            if (fecharAposEscrever) {
+                encerrar();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+                // Uma resposta pode ter sido enfileirada entre o laço acima e a troca de interesse
+                if (!saidaPendente.isEmpty()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+
+        // Thread de trabalho: copia a resposta para a fila e acorda o Selector
+        @Override
+        public void escrever(ByteBuffer dados) {
+            ByteBuffer copia = ByteBuffer.allocate(dados.remaining());
+            copia.put(dados).flip();
+            saidaPendente.add(copia);
+            agendarEscrita();
+        }
+
+        @Override
+        public void fechar() {
+            fecharAposEscrever = true;
+            agendarEscrita();
+        }
+
+        private void agendarEscrita() {
+            try {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                selector.wakeup();
+            } catch (CancelledKeyException e) {
+                // Conexão já encerrada
+            }
+        }
+
+        void encerrar() {
+            if (encerrada) return;
+            encerrada = true;
+            conexoesAtivas--;
+            key.cancel();
+            try {
+                canal.close();
+            } catch (IOException e) {
+                // Ignora
+            }
+        }
+    }
+}
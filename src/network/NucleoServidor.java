@@ -0,0 +1,38 @@
+package network;
+
+import config.Configuracao;
+
+import java.io.IOException;
+
+// Núcleo de rede usado tanto pelo LoadBalancer quanto pelo ApplicationServer.
+// O modo é escolhido por configuração:
+//   -Dnucleo.modo=THREADS|NIO     (padrão THREADS)
+//   -Dnucleo.backlog=1024         (fila de conexões pendentes no accept)
+//   -Dnucleo.maxConexoes=10000    (conexões simultâneas aceitas)
+//   -Dnucleo.maxThreads=256       (tarefas de processamento simultâneas, com ou sem threads virtuais)
+public abstract class NucleoServidor {
+    protected final int porta;
+    protected final ProcessadorMensagem processador;
+    protected final int backlog;
+    protected final int maxConexoes;
+    protected final int maxThreads;
+
+    protected NucleoServidor(int porta, ProcessadorMensagem processador) {
+        this.porta = porta;
+        this.processador = processador;
+        this.backlog = Configuracao.inteiro("nucleo.backlog", 1024);
+        this.maxConexoes = Configuracao.inteiro("nucleo.maxConexoes", 10000);
+        this.maxThreads = Configuracao.inteiro("nucleo.maxThreads", 256);
+    }
+
+    public static NucleoServidor criar(int porta, ProcessadorMensagem processador) {
+        ModoNucleo modo = ModoNucleo.valueOf(Configuracao.texto("nucleo.modo", "THREADS").toUpperCase());
+        if (modo == ModoNucleo.NIO) {
+            return new NucleoNio(porta, processador);
+        }
+        return new NucleoThreads(porta, processador);
+    }
+
+    // Bloqueia a thread chamadora aceitando conexões
+    public abstract void iniciar() throws IOException;
+}
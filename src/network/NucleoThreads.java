@@ -0,0 +1,101 @@
+package network;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Núcleo bloqueante: cada conexão tem uma thread lendo o socket.
+// Com threads virtuais (Java 21+) isso custa pouco; sem elas, o número de conexões e de
+// threads de processamento é limitado pela configuração.
+class NucleoThreads extends NucleoServidor {
+    private static final int TAMANHO_BLOCO = 16 * 1024;
+
+    private final AtomicInteger conexoesAtivas = new AtomicInteger();
+
+    NucleoThreads(int porta, ProcessadorMensagem processador) {
+        super(porta, processador);
+    }
+
+    @Override
+    public void iniciar() throws IOException {
+        ExecutorService conexoes = FabricaExecutores.trabalho("conexao-" + porta, maxConexoes);
+        ExecutorService trabalho = FabricaExecutores.trabalho("trabalho-" + porta, maxThreads);
+
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(porta), backlog);
+
+            while (true) {
+                Socket socket = serverSocket.accept();
+
+                if (conexoesAtivas.incrementAndGet() > maxConexoes) {
+                    // Limite de conexões atingido: recusa em vez de criar mais threads
+                    conexoesAtivas.decrementAndGet();
+                    fechar(socket);
+                    continue;
+                }
+
+                try {
+                    conexoes.execute(() -> tratarConexao(socket, trabalho));
+                } catch (RejectedExecutionException e) {
+                    conexoesAtivas.decrementAndGet();
+                    fechar(socket);
+                }
+            }
+        }
+    }
+
+    private void tratarConexao(Socket socket, ExecutorService trabalho) {
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = socket.getInputStream();
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            SessaoProtocolo sessao = new SessaoProtocolo(processador, trabalho, new SessaoProtocolo.Saida() {
+                @Override
+                public void escrever(ByteBuffer dados) {
+                    try {
+                        synchronized (out) {
+                            out.write(dados.array(), dados.arrayOffset() + dados.position(), dados.remaining());
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        NucleoThreads.this.fechar(socket);
+                    }
+                }
+
+                @Override
+                public void fechar() {
+                    NucleoThreads.this.fechar(socket);
+                }
+            }, socket.getInetAddress());
+
+            // Mesmo bloco de leitura para toda a conexão
+            byte[] bloco = new byte[TAMANHO_BLOCO];
+            ByteBuffer recebidos = ByteBuffer.wrap(bloco);
+            int lidos;
+            while ((lidos = in.read(bloco)) >= 0) {
+                recebidos.clear().limit(lidos);
+                sessao.bytesRecebidos(recebidos);
+            }
+        } catch (IOException e) {
+            // Conexão encerrada pelo outro lado (ou mensagem fora do protocolo)
+        } finally {
+            fechar(socket);
+            conexoesAtivas.decrementAndGet();
+        }
+    }
+
+    private void fechar(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignora
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package network;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Mantém um pequeno número de conexões persistentes por destino (porta).
+// As conexões são criadas sob demanda e recriadas automaticamente se caírem.
+public class PoolConexoes {
+    private final String host;
+    private final int conexoesPorDestino;
+    private final Map<Integer, Conexao[]> conexoes = new ConcurrentHashMap<>();
+    private final AtomicInteger rodizio = new AtomicInteger();
+
+    public PoolConexoes(String host, int conexoesPorDestino) {
+        this.host = host;
+        this.conexoesPorDestino = conexoesPorDestino;
+    }
+
+    // Devolve uma conexão aberta para a porta (rodízio entre as conexões do destino)
+    public Conexao obter(int porta) throws IOException {
+        Conexao[] slots = conexoes.computeIfAbsent(porta, p -> new Conexao[conexoesPorDestino]);
+        int i = Math.floorMod(rodizio.getAndIncrement(), slots.length);
+
+        synchronized (slots) {
+            Conexao conexao = slots[i];
+            if (conexao == null || !conexao.isAberta()) {
+                conexao = new Conexao(host, porta);
+                slots[i] = conexao;
+            }
+            return conexao;
+        }
+    }
+
+    // Envia uma requisição e devolve o Future da resposta (falha se não conseguir conectar)
+    public CompletableFuture<Mensagem> enviar(int porta, Mensagem mensagem) {
+        try {
+            return obter(porta).enviar(mensagem);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Envia uma mensagem sem esperar resposta
+    public void notificar(int porta, Mensagem mensagem) throws IOException {
+        obter(porta).notificar(mensagem);
+    }
+
+    public void fecharTodas() {
+        for (Conexao[] slots : conexoes.values()) {
+            synchronized (slots) {
+                for (Conexao c : slots) {
+                    if (c != null) c.close();
+                }
+            }
+        }
+        conexoes.clear();
+    }
+}
@@ -0,0 +1,7 @@
+package network;
+
+// Quem recebe mensagens (LoadBalancer ou ApplicationServer) implementa esta interface.
+// A resposta pode ser enviada na hora ou guardada para depois (ex: fila do lock).
+public interface ProcessadorMensagem {
+    void processar(Mensagem mensagem, Resposta resposta);
+}
@@ -0,0 +1,15 @@
+package network;
+
+import java.net.InetAddress;
+
+// Canal de volta para quem enviou a mensagem.
+// Cada requisição deve receber exatamente uma resposta.
+public interface Resposta {
+    void responder(Mensagem mensagem);
+
+    // Endereço de quem enviou a mensagem, ou null. Usado para limites por cliente: é o mesmo para
+    // todas as conexões de um cliente (os clientes antigos abrem uma conexão por requisição).
+    default InetAddress origem() {
+        return null;
+    }
+}
@@ -0,0 +1,217 @@
+package network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// Interpreta os bytes recebidos em uma conexão, independente de como o socket é lido
+// (thread bloqueante ou Selector NIO). O formato é descoberto pelo início da conexão:
+//  - Binária: começa com CodecBinario.MAGICO e a versão, depois quadros com tamanho (CodecBinario).
+//  - Texto multiplexada: começa com a linha "MUX" e depois recebe várias linhas "ID#MENSAGEM".
+//  - Texto legada: uma única linha, uma resposta, e o socket é fechado (compatível com clientes antigos).
+// Nas duas multiplexadas cada mensagem é processada em paralelo e a resposta volta com o mesmo ID.
+class SessaoProtocolo {
+    private static final int TAMANHO_INICIAL = 8 * 1024;
+
+    // Como a sessão devolve dados para o socket
+    interface Saida {
+        // Envia os bytes entre position e limit. O buffer é reaproveitado depois que o método retorna.
+        void escrever(ByteBuffer dados);
+
+        void fechar();
+    }
+
+    private enum Formato {INDEFINIDO, BINARIO, TEXTO_MUX, TEXTO_LEGADO}
+
+    private final ProcessadorMensagem processador;
+    private final Executor executor;
+    private final Saida saida;
+    // Endereço do outro lado da conexão (Resposta.origem)
+    private final InetAddress remoto;
+
+    // Bytes recebidos que ainda não formam uma mensagem completa (só a thread de leitura usa)
+    private ByteBuffer entrada = ByteBuffer.allocate(TAMANHO_INICIAL);
+    // Buffer onde as respostas são montadas (protegido pelo lock da sessão)
+    private ByteBuffer bufferSaida = ByteBuffer.allocate(TAMANHO_INICIAL);
+    // Definido pela thread de leitura antes de despachar a primeira mensagem
+    private volatile Formato formato = Formato.INDEFINIDO;
+
+    SessaoProtocolo(ProcessadorMensagem processador, Executor executor, Saida saida, InetAddress remoto) {
+        this.processador = processador;
+        this.executor = executor;
+        this.saida = saida;
+        this.remoto = remoto;
+    }
+
+    // Chamado sempre pela mesma thread (a que lê o socket) com os bytes entre position e limit.
+    // Lança IOException se o outro lado mandar algo fora do protocolo; a conexão deve ser fechada.
+    void bytesRecebidos(ByteBuffer dados) throws IOException {
+        garantirEspaco(dados.remaining());
+        entrada.put(dados);
+        entrada.flip();
+        try {
+            while (entrada.hasRemaining()) {
+                if (formato == Formato.INDEFINIDO && entrada.get(entrada.position()) == CodecBinario.MAGICO) {
+                    if (entrada.remaining() < 2) break;
+                    entrada.get();
+                    byte versao = entrada.get();
+                    if (versao != CodecBinario.VERSAO) {
+                        throw new IOException("Versão de protocolo não suportada: " + versao);
+                    }
+                    formato = Formato.BINARIO;
+                }
+                boolean consumiu = formato == Formato.BINARIO ? lerQuadro() : lerLinha();
+                if (!consumiu) break;
+            }
+        } finally {
+            entrada.compact();
+        }
+    }
+
+    // Um quadro binário completo, se já chegou
+    private boolean lerQuadro() throws IOException {
+        int tamanho;
+        try {
+            tamanho = CodecBinario.quadroCompleto(entrada);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        if (tamanho < 0) return false;
+
+        int fim = entrada.position() + Integer.BYTES + tamanho;
+        int limite = entrada.limit();
+        entrada.getInt();
+        long correlacao = entrada.getLong();
+        Mensagem mensagem;
+        // O limite no fim do quadro impede que um quadro mal formado leia o próximo
+        entrada.limit(fim);
+        try {
+            mensagem = CodecBinario.ler(entrada);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Quadro inválido: " + e.getMessage());
+        } finally {
+            entrada.limit(limite);
+            entrada.position(fim);
+        }
+
+        despachar(mensagem, correlacao);
+        return true;
+    }
+
+    // Uma linha de texto completa, se já chegou
+    private boolean lerLinha() {
+        int inicio = entrada.position();
+        int fim = -1;
+        for (int i = inicio; i < entrada.limit(); i++) {
+            if (entrada.get(i) == '\n') {
+                fim = i;
+                break;
+            }
+        }
+        if (fim < 0) return false;
+
+        int tamanho = fim - inicio;
+        if (tamanho > 0 && entrada.get(fim - 1) == '\r') tamanho--;
+        String linha = new String(entrada.array(), entrada.arrayOffset() + inicio, tamanho, StandardCharsets.UTF_8);
+        entrada.position(fim + 1);
+        linhaRecebida(linha);
+        return true;
+    }
+
+    private void linhaRecebida(String linha) {
+        if (formato == Formato.INDEFINIDO) {
+            if (linha.equals(Conexao.HANDSHAKE)) {
+                formato = Formato.TEXTO_MUX;
+                return;
+            }
+            formato = Formato.TEXTO_LEGADO;
+        }
+
+        long correlacao = Conexao.SEM_RESPOSTA;
+        String texto = linha;
+        if (formato == Formato.TEXTO_MUX) {
+            int sep = linha.indexOf(Conexao.SEPARADOR);
+            if (sep < 0) return;
+            try {
+                correlacao = Long.parseLong(linha.substring(0, sep));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            texto = linha.substring(sep + 1);
+        }
+
+        Mensagem mensagem;
+        try {
+            mensagem = CodecTexto.ler(texto);
+        } catch (IllegalArgumentException e) {
+            responder(correlacao, Mensagem.erro(e.getMessage()));
+            return;
+        }
+        despachar(mensagem, correlacao);
+    }
+
+    // Não bloqueia a leitura: a próxima mensagem pode chegar enquanto esta é processada
+    private void despachar(Mensagem mensagem, long correlacao) {
+        Resposta resposta = new Resposta() {
+            @Override
+            public void responder(Mensagem r) {
+                SessaoProtocolo.this.responder(correlacao, r);
+            }
+
+            @Override
+            public InetAddress origem() {
+                return remoto;
+            }
+        };
+        try {
+            executor.execute(() -> processador.processar(mensagem, resposta));
+        } catch (RejectedExecutionException e) {
+            // Limite de threads atingido: recusa explicitamente em vez de crescer sem limite
+            resposta.responder(Mensagem.erro("SOBRECARGA"));
+        }
+    }
+
+    // Chamado pelas threads de trabalho; as respostas de uma conexão saem uma de cada vez
+    private synchronized void responder(long correlacao, Mensagem mensagem) {
+        switch (formato) {
+            case BINARIO:
+                if (correlacao == Conexao.SEM_RESPOSTA) return;
+                int tamanho = CodecBinario.tamanho(mensagem);
+                if (bufferSaida.capacity() < tamanho) bufferSaida = ByteBuffer.allocate(tamanho);
+                bufferSaida.clear();
+                CodecBinario.escrever(mensagem, correlacao, bufferSaida);
+                bufferSaida.flip();
+                saida.escrever(bufferSaida);
+                break;
+            case TEXTO_MUX:
+                if (correlacao == Conexao.SEM_RESPOSTA) return;
+                escreverLinha(correlacao + "" + Conexao.SEPARADOR + CodecTexto.formatar(mensagem));
+                break;
+            default:
+                // O socket fica aberto até a resposta ser enviada (ela pode vir depois, ex: fila do lock)
+                escreverLinha(CodecTexto.formatar(mensagem));
+                saida.fechar();
+                break;
+        }
+    }
+
+    private void escreverLinha(String linha) {
+        saida.escrever(ByteBuffer.wrap((linha + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void garantirEspaco(int bytes) throws IOException {
+        if (entrada.remaining() >= bytes) return;
+        int necessario = entrada.position() + bytes;
+        if (necessario > CodecBinario.TAMANHO_MAXIMO + CodecBinario.CABECALHO) {
+            throw new IOException("Mensagem maior que o limite de " + CodecBinario.TAMANHO_MAXIMO + " bytes");
+        }
+        ByteBuffer maior = ByteBuffer.allocate(Math.max(necessario, entrada.capacity() * 2));
+        entrada.flip();
+        maior.put(entrada);
+        entrada = maior;
+    }
+}
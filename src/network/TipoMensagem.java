@@ -0,0 +1,51 @@
+package network;
+
+// Tipos de mensagem trocados entre cliente, LoadBalancer e servidores.
+// O código é o byte que identifica o tipo no protocolo binário; o nome é usado no protocolo texto.
+public enum TipoMensagem {
+    ESCRITA(1),
+    LEITURA(2),
+    CONFIRMACAO(3),
+    ACQUIRE_LOCK(4),
+    GRANTED(5),
+    RELEASE_LOCK(6),
+    REPLICACAO(7),
+    REPLICACAO_SEQ(8),
+    REPLICACAO_LOTE(9),
+    ACK_REPLICACAO(10),
+    SEQUENCIA(11),
+    LINHAS(12),
+    CACHE(13),
+    OK(14),
+    ERRO(15),
+    REGISTRAR(16),
+    HEARTBEAT(17),
+    SAIR(18),
+    PRONTO(19),
+    MEMBROS(20),
+    SINCRONIZAR(21),
+    TRECHO(22),
+    REJEITADO(23),
+    METRICAS(24),
+    ESCRITA_LOTE(25),
+    COMPARAR(26),
+    RESUMO(27);
+
+    private static final TipoMensagem[] POR_CODIGO = new TipoMensagem[128];
+
+    static {
+        for (TipoMensagem tipo : values()) POR_CODIGO[tipo.codigo] = tipo;
+    }
+
+    public final byte codigo;
+
+    TipoMensagem(int codigo) {
+        this.codigo = (byte) codigo;
+    }
+
+    public static TipoMensagem porCodigo(byte codigo) {
+        TipoMensagem tipo = codigo >= 0 ? POR_CODIGO[codigo] : null;
+        if (tipo == null) throw new IllegalArgumentException("Tipo de mensagem desconhecido: " + codigo);
+        return tipo;
+    }
+}
@@ -0,0 +1,79 @@
+package observabilidade;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histograma de latências (em ns) com custo fixo por registro e sem lock, no estilo do HdrHistogram.
+//
+// As faixas são log-lineares: cada potência de 2 é dividida em 16 partes iguais, então o valor
+// reportado de um percentil fica no máximo ~6% acima do valor real, de nanossegundos a horas,
+// com 976 contadores no total. Registrar é só calcular o índice (alguns deslocamentos) e
+// incrementar um contador atômico.
+public class Histograma {
+    private static final int BITS_SUB = 4;
+    private static final int SUB = 1 << BITS_SUB;
+    private static final int FAIXAS = (64 - BITS_SUB + 1) * SUB;
+
+    private final AtomicLongArray contagens = new AtomicLongArray(FAIXAS);
+    private final LongAdder quantidade = new LongAdder();
+    private final LongAdder soma = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+
+    public void registrar(long valor) {
+        if (valor < 0) valor = 0;
+        contagens.incrementAndGet(indice(valor));
+        quantidade.increment();
+        soma.add(valor);
+        long atual = maximo.get();
+        while (valor > atual && !maximo.compareAndSet(atual, valor)) atual = maximo.get();
+    }
+
+    public long quantidade() {
+        return quantidade.sum();
+    }
+
+    public long media() {
+        long n = quantidade.sum();
+        return n == 0 ? 0 : soma.sum() / n;
+    }
+
+    public long maximo() {
+        return maximo.get();
+    }
+
+    // Menor valor com pelo menos a fração 'p' (0 a 1) dos registros abaixo ou igual a ele
+    // (o limite superior da faixa onde o percentil caiu)
+    public long percentil(double p) {
+        long[] copia = new long[FAIXAS];
+        long total = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            copia[i] = contagens.get(i);
+            total += copia[i];
+        }
+        if (total == 0) return 0;
+
+        long alvo = Math.max(1, (long) Math.ceil(p * total));
+        long acumulado = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= alvo) return Math.min(limiteSuperior(i), maximo.get());
+        }
+        return maximo.get();
+    }
+
+    // Valores até 15 têm faixa própria; acima, o expoente escolhe o bloco e os 4 bits seguintes a faixa dentro dele
+    private static int indice(long valor) {
+        if (valor < SUB) return (int) valor;
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        int mantissa = (int) (valor >>> (expoente - BITS_SUB)) & (SUB - 1);
+        return (expoente - BITS_SUB + 1) * SUB + mantissa;
+    }
+
+    private static long limiteSuperior(int indice) {
+        if (indice < SUB) return indice;
+        int expoente = indice / SUB + BITS_SUB - 1;
+        long inicio = (long) (SUB + indice % SUB) << (expoente - BITS_SUB);
+        return inicio + (1L << (expoente - BITS_SUB)) - 1;
+    }
+}
@@ -0,0 +1,130 @@
+package observabilidade;
+
+import config.Configuracao;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Log do LoadBalancer e dos servidores, com níveis, escrito no console por uma thread própria.
+//
+// - Quem registra só coloca a linha numa fila: escrever no console (lento e com lock) sai do
+//   caminho das requisições.
+// - Fila limitada: se o console não acompanhar, as linhas novas são descartadas e contadas
+//   (ninguém fica esperando por causa do log).
+// - As mensagens de cada requisição são DEBUG e nem são montadas no nível padrão: debug()
+//   recebe um Supplier, chamado só se o nível estiver ativo.
+// - ERRO e AVISO vão para System.err; INFO e DEBUG para System.out.
+//
+//   -Dlog.nivel=ERRO|AVISO|INFO|DEBUG   (padrão INFO)
+public final class Log {
+    public enum Nivel { ERRO, AVISO, INFO, DEBUG }
+
+    private static final int CAPACIDADE_FILA = 65536;
+
+    private static final Nivel NIVEL = nivelConfigurado();
+    private static final BlockingQueue<Linha> fila = new ArrayBlockingQueue<>(CAPACIDADE_FILA);
+    private static final LongAdder descartadas = new LongAdder();
+
+    private static class Linha {
+        final Nivel nivel;
+        final String texto;
+
+        Linha(Nivel nivel, String texto) {
+            this.nivel = nivel;
+            this.texto = texto;
+        }
+    }
+
+    static {
+        Thread t = new Thread(Log::loopEscrita, "log-console");
+        t.setDaemon(true);
+        t.start();
+        // Ao encerrar, escreve o que ainda estiver na fila
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::descarregar, "log-encerramento"));
+    }
+
+    private Log() {
+    }
+
+    public static boolean ativo(Nivel nivel) {
+        return nivel.ordinal() <= NIVEL.ordinal();
+    }
+
+    public static void erro(String texto) {
+        registrar(Nivel.ERRO, texto);
+    }
+
+    public static void aviso(String texto) {
+        registrar(Nivel.AVISO, texto);
+    }
+
+    public static void info(String texto) {
+        registrar(Nivel.INFO, texto);
+    }
+
+    public static void debug(Supplier<String> texto) {
+        if (ativo(Nivel.DEBUG)) registrar(Nivel.DEBUG, texto.get());
+    }
+
+    // Linhas perdidas porque a fila estava cheia
+    public static long descartadas() {
+        return descartadas.sum();
+    }
+
+    private static void registrar(Nivel nivel, String texto) {
+        if (!ativo(nivel)) return;
+        if (!fila.offer(new Linha(nivel, texto))) descartadas.increment();
+    }
+
+    private static void loopEscrita() {
+        List<Linha> linhas = new ArrayList<>();
+        while (true) {
+            try {
+                linhas.add(fila.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            fila.drainTo(linhas);
+            escrever(linhas);
+            linhas.clear();
+        }
+    }
+
+    private static synchronized void descarregar() {
+        List<Linha> linhas = new ArrayList<>();
+        fila.drainTo(linhas);
+        escrever(linhas);
+    }
+
+    // Um print por saída para o lote inteiro (System.out é lido a cada vez: pode ter sido trocado)
+    private static synchronized void escrever(List<Linha> linhas) {
+        StringBuilder saida = new StringBuilder();
+        StringBuilder erros = new StringBuilder();
+        for (Linha l : linhas) {
+            (l.nivel.ordinal() <= Nivel.AVISO.ordinal() ? erros : saida).append(l.texto).append(System.lineSeparator());
+        }
+        imprimir(System.out, saida);
+        imprimir(System.err, erros);
+    }
+
+    private static void imprimir(PrintStream destino, StringBuilder texto) {
+        if (texto.length() == 0) return;
+        destino.print(texto);
+        destino.flush();
+    }
+
+    private static Nivel nivelConfigurado() {
+        String valor = Configuracao.texto("log.nivel", "INFO").toUpperCase();
+        try {
+            return Nivel.valueOf(valor);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[Configuracao] Valor inválido para log.nivel: " + valor + ". Usando INFO");
+            return Nivel.INFO;
+        }
+    }
+}
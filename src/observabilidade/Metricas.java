@@ -0,0 +1,91 @@
+package observabilidade;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import javax.management.ObjectName;
+
+// Métricas de um componente (LoadBalancer ou servidor).
+//
+// - Contadores: LongAdder (sem disputa entre as threads que incrementam).
+// - Histogramas de latência, registrados em ns e mostrados em µs: quantidade, média, p50, p99, p999 e máximo.
+// - Medidores: valores lidos só na hora da consulta (tamanho de filas, requisições pendentes...).
+// Nada é calculado no caminho das requisições além do incremento/registro.
+//
+// Consulta: mensagem METRICAS (java runners.RunMetricas <porta>) ou JMX (jconsole), no objeto
+// projectOne:type=Metricas,name=<componente>.
+public class Metricas {
+    private final String componente;
+    private final Map<String, LongAdder> contadores = new ConcurrentHashMap<>();
+    private final Map<String, Histograma> histogramas = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> medidores = new ConcurrentHashMap<>();
+    // Medidores cujos nomes mudam com o tempo (ex: um por servidor do cluster)
+    private final List<Consumer<Map<String, Long>>> grupos = new CopyOnWriteArrayList<>();
+
+    public Metricas(String componente) {
+        this.componente = componente;
+        medidor("log.descartadas", Log::descartadas);
+    }
+
+    // Guarde a referência: a busca pelo nome é só para a criação
+    public LongAdder contador(String nome) {
+        return contadores.computeIfAbsent(nome, n -> new LongAdder());
+    }
+
+    public Histograma histograma(String nome) {
+        return histogramas.computeIfAbsent(nome, n -> new Histograma());
+    }
+
+    public void medidor(String nome, LongSupplier valor) {
+        medidores.put(nome, valor);
+    }
+
+    public void grupo(Consumer<Map<String, Long>> valores) {
+        grupos.add(valores);
+    }
+
+    // Todos os valores atuais, em ordem de nome
+    public Map<String, Long> valores() {
+        Map<String, Long> valores = new TreeMap<>();
+        contadores.forEach((nome, c) -> valores.put(nome, c.sum()));
+        medidores.forEach((nome, m) -> valores.put(nome, m.getAsLong()));
+        for (Consumer<Map<String, Long>> g : grupos) g.accept(valores);
+        histogramas.forEach((nome, h) -> {
+            valores.put(nome + ".quantidade", h.quantidade());
+            valores.put(nome + ".mediaUs", h.media() / 1000);
+            valores.put(nome + ".p50Us", h.percentil(0.50) / 1000);
+            valores.put(nome + ".p99Us", h.percentil(0.99) / 1000);
+            valores.put(nome + ".p999Us", h.percentil(0.999) / 1000);
+            valores.put(nome + ".maxUs", h.maximo() / 1000);
+        });
+        return valores;
+    }
+
+    // "nome=valor" separados por espaço (resposta da mensagem METRICAS)
+    public String texto() {
+        StringBuilder sb = new StringBuilder();
+        valores().forEach((nome, valor) -> {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(nome).append('=').append(valor);
+        });
+        return sb.toString();
+    }
+
+    // Publica no servidor JMX da JVM (vários componentes na mesma JVM têm nomes diferentes)
+    public void publicarJmx() {
+        try {
+            ObjectName nome = new ObjectName("projectOne:type=Metricas,name=" + ObjectName.quote(componente));
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(nome)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricasJmx(this), nome);
+            }
+        } catch (Exception e) {
+            Log.aviso("Não foi possível publicar as métricas no JMX: " + e.getMessage());
+        }
+    }
+}
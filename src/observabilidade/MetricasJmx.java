@@ -0,0 +1,67 @@
+package observabilidade;
+
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+
+// Métricas no JMX: cada valor de Metricas.valores() é um atributo somente leitura (Long).
+// Os atributos são relidos a cada consulta (histogramas e servidores novos aparecem sozinhos).
+class MetricasJmx implements DynamicMBean {
+    private final Metricas metricas;
+
+    MetricasJmx(Metricas metricas) {
+        this.metricas = metricas;
+    }
+
+    @Override
+    public Object getAttribute(String nome) throws AttributeNotFoundException {
+        Long valor = metricas.valores().get(nome);
+        if (valor == null) throw new AttributeNotFoundException(nome);
+        return valor;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] nomes) {
+        Map<String, Long> valores = metricas.valores();
+        AttributeList lista = new AttributeList();
+        for (String nome : nomes) {
+            Long valor = valores.get(nome);
+            if (valor != null) lista.add(new Attribute(nome, valor));
+        }
+        return lista;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Long> valores = metricas.valores();
+        MBeanAttributeInfo[] atributos = new MBeanAttributeInfo[valores.size()];
+        int i = 0;
+        for (String nome : valores.keySet()) {
+            atributos[i++] = new MBeanAttributeInfo(nome, "java.lang.Long", nome, true, false, false);
+        }
+        return new MBeanInfo(Metricas.class.getName(), "Métricas do componente", atributos,
+                new MBeanConstructorInfo[0], new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+    }
+
+    @Override
+    public void setAttribute(Attribute atributo) {
+        throw new UnsupportedOperationException("Métricas são somente leitura");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList atributos) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String operacao, Object[] parametros, String[] assinatura) {
+        throw new UnsupportedOperationException(operacao);
+    }
+}
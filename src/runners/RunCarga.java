@@ -0,0 +1,13 @@
+package runners;
+
+import desempenho.CargaPontaAPonta;
+
+public class RunCarga {
+    public static void main(String[] args) throws Exception {
+        // Exemplo de execução: java -Dcarga.concorrencia=256 -Descrita.modo=LOTE runners.RunCarga
+        // Sobe LoadBalancer e servidores no mesmo processo, em portas livres
+        new CargaPontaAPonta().executar();
+        // Os componentes não têm como ser parados: encerra o processo
+        System.exit(0);
+    }
+}
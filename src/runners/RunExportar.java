@@ -0,0 +1,19 @@
+package runners;
+
+import server.ArmazenamentoSegmentado;
+
+import java.nio.file.Paths;
+
+public class RunExportar {
+    public static void main(String[] args) throws Exception {
+        // Gera o arquivo texto (formato antigo) a partir do armazenamento segmentado
+        // Exemplo de execução: java runners.RunExportar dados_server_9001 dados_server_9001.txt
+        if (args.length < 2) {
+            System.out.println("Uso: java runners.RunExportar <diretorio_segmentos> <arquivo_saida.txt>");
+            System.exit(1);
+        }
+
+        ArmazenamentoSegmentado.exportarTexto(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Exportado para " + args[1]);
+    }
+}
@@ -0,0 +1,31 @@
+package runners;
+
+import network.Mensagem;
+import network.PoolConexoes;
+import network.TipoMensagem;
+
+import java.util.concurrent.TimeUnit;
+
+public class RunMetricas {
+    public static void main(String[] args) throws Exception {
+        // Mostra as métricas do LoadBalancer ou de um servidor, uma por linha
+        // Exemplo de execução: java runners.RunMetricas 8080   (ou a porta de um servidor, ex: 9001)
+        if (args.length < 1) {
+            System.out.println("Uso: java runners.RunMetricas <porta>");
+            System.exit(1);
+        }
+
+        PoolConexoes pool = new PoolConexoes("localhost", 1);
+        try {
+            Mensagem resposta = pool.enviar(Integer.parseInt(args[0]), Mensagem.simples(TipoMensagem.METRICAS))
+                    .get(5, TimeUnit.SECONDS);
+            if (resposta.tipo != TipoMensagem.METRICAS) {
+                System.out.println("Resposta inesperada: " + resposta);
+                System.exit(1);
+            }
+            for (String valor : resposta.texto.split(" ")) System.out.println(valor);
+        } finally {
+            pool.fecharTodas();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package runners;
+
+import server.VerificadorReplicas;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class RunVerificador {
+    public static void main(String[] args) throws Exception {
+        // Exemplo de execução: java runners.RunVerificador dados_server_9001.txt dados_server_9002.txt dados_server_9003.txt
+        List<String> arquivos = args.length > 0
+                ? Arrays.asList(args)
+                : Arrays.asList("dados_server_9001.txt", "dados_server_9002.txt", "dados_server_9003.txt");
+
+        boolean tudoConsistente = true;
+        for (VerificadorReplicas.Resultado r : VerificadorReplicas.verificar(arquivos)) {
+            if (r.consistente()) {
+                System.out.println(r.arquivo + ": " + r.linhas + " linhas, OK");
+            } else {
+                tudoConsistente = false;
+                System.out.println(r.arquivo + ": " + r.linhas + " linhas, DIVERGE na linha " + r.primeiraDivergencia);
+            }
+        }
+
+        System.out.println(tudoConsistente ? "Réplicas consistentes." : "Réplicas DIVERGENTES.");
+        System.exit(tudoConsistente ? 0 : 1);
+    }
+}
@@ -0,0 +1,319 @@
+package server;
+
+import config.Cluster;
+import config.Configuracao;
+import network.Mensagem;
+import network.PoolConexoes;
+import network.TipoMensagem;
+import observabilidade.Histograma;
+import observabilidade.Log;
+import observabilidade.Metricas;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Anti-entropia: em segundo plano, compara o arquivo deste servidor com o de um vizinho (um por rodada,
+// em rodízio) e copia dele só os trechos que diferem.
+//
+// - A comparação usa a árvore de Merkle de cada arquivo (ArvoreMerkle, mensagens COMPARAR/RESUMO) e só
+//   desce onde os hashes diferem: réplicas iguais custam uma mensagem por nível do topo, e cada folha
+//   diferente custa dois nós por nível até ela. Só entram as folhas que as duas réplicas já completaram
+//   (o fim do arquivo ainda está recebendo escritas).
+// - As linhas das folhas diferentes vêm por SINCRONIZAR/TRECHO e substituem as locais (FileManager.reparar).
+// - Cada folha diferente é votada: as outras réplicas informam o hash dela, e a cópia do vizinho só
+//   substitui a local se for a da maioria. Sem maioria, só o servidor com menos linhas se corrige (ele
+//   perdeu escritas, como na entrada no cluster); com o mesmo número de linhas a folha não é mexida e
+//   a divergência fica só no log (senão uma linha corrompida numa réplica seria copiada para as outras).
+//   Cada servidor só mexe no próprio arquivo: a réplica em minoria se corrige na rodada dela.
+// - UNITARIA/LOTE: uma escrita perdida no meio desloca todas as linhas seguintes, e o fim do arquivo só
+//   pode ser acertado com ninguém gravando. Então o reparo é feito com o lock do LoadBalancer: a
+//   comparação é refeita com ele e o fim do arquivo fica igual ao do vizinho.
+// - SEQUENCIADOR: a linha N é sempre a sequência N. As folhas diferentes são trocadas sem lock (o número
+//   de linhas não muda) e as linhas que faltam no fim vão para o BufferReordenacao.
+// - Um vizinho com mais linhas e nenhuma folha diferente está só adiantado; se continuar igual de uma
+//   rodada para a outra (sem escritas novas), as linhas que faltam aqui são copiadas.
+//
+//   -Dantientropia.intervaloMs=10000 (0 = desligada)  -Dantientropia.maxFolhasRodada=64
+public class AntiEntropia {
+    private static final long TIMEOUT_MS = 5000;
+    // Mesmo limite do TRECHO no ServerWorker
+    private static final int LINHAS_POR_TRECHO = 1000;
+
+    private final int minhaPorta;
+    private final PoolConexoes pool;
+    private final VisaoCluster visao;
+    private final FileManager fileManager;
+    private final ArvoreMerkle arvore;
+    // Só existe no modo SEQUENCIADOR (null nos outros modos)
+    private final BufferReordenacao bufferReordenacao;
+    private final int portaLb = Cluster.portaLoadBalancer();
+    private final long intervaloMs = Configuracao.longo("antientropia.intervaloMs", 10000);
+    private final int maxFolhasRodada = Math.max(1, Configuracao.inteiro("antientropia.maxFolhasRodada", 64));
+
+    private final LongAdder rodadas;
+    private final LongAdder folhasDivergentes;
+    private final LongAdder folhasSemMaioria;
+    private final LongAdder linhasCopiadas;
+    private final Histograma duracao;
+
+    // Rodízio entre os vizinhos, e o que cada lado tinha na última rodada (para perceber um atraso parado)
+    private int proximoVizinho = 0;
+    private int ultimoVizinho = -1;
+    private long ultimasLocais = -1;
+    private long ultimasRemotas = -1;
+
+    public AntiEntropia(int minhaPorta, PoolConexoes pool, VisaoCluster visao, FileManager fileManager,
+                        BufferReordenacao bufferReordenacao, Metricas metricas) throws IOException {
+        this.minhaPorta = minhaPorta;
+        this.pool = pool;
+        this.visao = visao;
+        this.fileManager = fileManager;
+        this.arvore = fileManager.resumo();
+        this.bufferReordenacao = bufferReordenacao;
+        this.rodadas = metricas.contador("antientropia.rodadas");
+        this.folhasDivergentes = metricas.contador("antientropia.folhasDivergentes");
+        this.folhasSemMaioria = metricas.contador("antientropia.folhasSemMaioria");
+        this.linhasCopiadas = metricas.contador("antientropia.linhasCopiadas");
+        this.duracao = metricas.histograma("antientropia.rodada");
+        metricas.medidor("antientropia.folhas", arvore::folhas);
+    }
+
+    public void iniciar() {
+        if (intervaloMs <= 0) return;
+        ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "antientropia-" + minhaPorta);
+            t.setDaemon(true);
+            return t;
+        });
+        agendador.scheduleWithFixedDelay(this::rodada, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void rodada() {
+        List<Integer> vizinhos = visao.vizinhos();
+        if (vizinhos.isEmpty()) return;
+        int vizinho = vizinhos.get(Math.floorMod(proximoVizinho++, vizinhos.size()));
+
+        long inicio = System.nanoTime();
+        try {
+            comparar(vizinho);
+        } catch (Exception e) {
+            Log.aviso("Anti-entropia com o servidor " + vizinho + " falhou: " + e.getMessage());
+        } finally {
+            rodadas.increment();
+            duracao.registrar(System.nanoTime() - inicio);
+        }
+    }
+
+    private void comparar(int vizinho) throws Exception {
+        Mensagem topo = consultar(vizinho, Mensagem.comparar(0, 0, 0));
+        if (topo.x != arvore.linhasPorFolha()) {
+            Log.aviso("Servidor " + vizinho + " usa " + topo.x + " linhas por folha (aqui " + arvore.linhasPorFolha()
+                    + "): anti-entropia desligada com ele");
+            return;
+        }
+        long locais = arvore.linhas();
+        long remotas = topo.valor;
+        boolean parado = vizinho == ultimoVizinho && locais == ultimasLocais && remotas == ultimasRemotas;
+        ultimoVizinho = vizinho;
+        ultimasLocais = locais;
+        ultimasRemotas = remotas;
+
+        // O vizinho é quem se corrige (na rodada dele)
+        if (remotas < locais) return;
+
+        List<Long> diferentes = folhasDivergentes(vizinho, Math.min(arvore.folhas(), remotas / arvore.linhasPorFolha()));
+        folhasDivergentes.add(diferentes.size());
+        List<Long> divergentes = daMaioria(vizinho, diferentes, remotas > locais);
+        boolean atrasado = remotas > locais && parado;
+        if (divergentes.isEmpty() && !atrasado) {
+            Log.debug(() -> "Anti-entropia: nada a copiar do servidor " + vizinho + " até a linha " + Math.min(locais, remotas));
+            return;
+        }
+        Log.info("Anti-entropia: " + divergentes.size() + " folha(s) a copiar do servidor " + vizinho
+                + (atrasado ? ", " + (remotas - locais) + " linha(s) atrás dele" : "") + ". Reparando...");
+
+        if (bufferReordenacao != null) {
+            repararSequenciador(vizinho, divergentes, atrasado ? remotas : locais);
+        } else {
+            repararComLock(vizinho);
+        }
+    }
+
+    // SEQUENCIADOR: sem lock. As folhas comparadas estão completas nas duas réplicas, então não mudam mais;
+    // o fim que falta entra pelo BufferReordenacao, que ignora o que já chegou pela replicação.
+    private void repararSequenciador(int vizinho, List<Long> divergentes, long remotas) throws Exception {
+        NavigableMap<Long, List<String>> trechos = buscarFolhas(vizinho, divergentes);
+        fileManager.reparar(trechos, -1);
+        contarCopiadas(trechos);
+
+        long proxima = bufferReordenacao.ultimaAplicada();
+        long fim = Math.min(remotas, proxima + (long) maxFolhasRodada * arvore.linhasPorFolha());
+        if (proxima < fim) {
+            List<String> linhas = buscarLinhas(vizinho, proxima, fim);
+            // Linha N do arquivo = sequência N + 1 (as linhas começam em 0)
+            bufferReordenacao.receberTrecho(proxima + 1, linhas);
+            linhasCopiadas.add(linhas.size());
+        }
+    }
+
+    // UNITARIA/LOTE: com o lock ninguém grava, os dois arquivos estão parados. A comparação é refeita
+    // (o arquivo pode ter mudado desde a primeira) e, se todas as folhas diferentes couberem nesta rodada,
+    // o fim do arquivo passa a ser o do vizinho.
+    private void repararComLock(int vizinho) throws Exception {
+        Mensagem grant = LockLoadBalancer.adquirir(pool, portaLb, minhaPorta);
+        if (grant.tipo != TipoMensagem.GRANTED) throw new IllegalStateException("lock negado: " + grant);
+        try {
+            long remotas = consultar(vizinho, Mensagem.comparar(0, 0, 0)).valor;
+            if (remotas < arvore.linhas()) return;
+            long folhasComuns = Math.min(arvore.folhas(), remotas / arvore.linhasPorFolha());
+            List<Long> diferentes = folhasDivergentes(vizinho, folhasComuns);
+            List<Long> divergentes = daMaioria(vizinho, diferentes, remotas > arvore.linhas());
+            NavigableMap<Long, List<String>> trechos = buscarFolhas(vizinho, divergentes);
+
+            long total = -1;
+            // O fim só passa a ser o do vizinho se este arquivo for ficar igual ao dele
+            if (divergentes.size() == diferentes.size() && diferentes.size() < maxFolhasRodada) {
+                // Depois das folhas comuns: menos de uma folha daqui, o resto é o que falta
+                long inicioFim = folhasComuns * arvore.linhasPorFolha();
+                long fim = Math.min(remotas, inicioFim + (long) maxFolhasRodada * arvore.linhasPorFolha());
+                if (inicioFim < fim) trechos.put(inicioFim, buscarLinhas(vizinho, inicioFim, fim));
+                total = fim;
+            }
+            fileManager.reparar(trechos, total);
+            contarCopiadas(trechos);
+        } finally {
+            LockLoadBalancer.liberar(pool, portaLb, minhaPorta);
+        }
+    }
+
+    // Folhas entre as 'folhas' primeiras cujo hash difere do vizinho, em ordem (no máximo maxFolhasRodada)
+    private List<Long> folhasDivergentes(int vizinho, long folhas) throws Exception {
+        List<Long> divergentes = new ArrayList<>();
+        // [0, folhas) coberto pelos maiores nós completos, da esquerda para a direita (um por nível)
+        long coberto = 0;
+        for (int nivel = 63 - Long.numberOfLeadingZeros(Math.max(1, folhas)); nivel >= 0; nivel--) {
+            if (coberto + (1L << nivel) > folhas) continue;
+            long no = coberto >> nivel;
+            if (!iguais(consultar(vizinho, Mensagem.comparar(nivel, no, 1)).numeros, arvore.hashes(nivel, no, 1), 0)) {
+                descer(vizinho, nivel, no, divergentes);
+            }
+            coberto += 1L << nivel;
+            if (divergentes.size() >= maxFolhasRodada) break;
+        }
+        return divergentes;
+    }
+
+    // Das folhas diferentes do vizinho, as que devem ser copiadas dele: as em que a cópia dele é a da maioria
+    // das réplicas que já completaram a folha (esta e o vizinho incluídos). Sem maioria, só se o vizinho
+    // tiver mais linhas que esta réplica; senão a divergência é só registrada.
+    private List<Long> daMaioria(int vizinho, List<Long> diferentes, boolean vizinhoAdiantado) throws Exception {
+        List<Long> copiar = new ArrayList<>();
+        for (long folha : diferentes) {
+            long[] remoto = consultar(vizinho, Mensagem.comparar(0, folha, 1)).numeros;
+            long[] local = arvore.hashes(0, folha, 1);
+            // A folha mudou no meio da comparação: entra na próxima rodada
+            if (iguais(remoto, local, 0)) continue;
+
+            int votos = 2;
+            int aFavor = 1;
+            int contra = 1;
+            for (int outro : visao.vizinhos()) {
+                if (outro == vizinho) continue;
+                long[] hash;
+                try {
+                    hash = consultar(outro, Mensagem.comparar(0, folha, 1)).numeros;
+                } catch (Exception e) {
+                    continue; // Fora do ar: não vota
+                }
+                if (hash.length == 0) continue; // Ainda não completou a folha
+                votos++;
+                if (hash[0] == remoto[0]) aFavor++;
+                else if (hash[0] == local[0]) contra++;
+            }
+
+            if (aFavor * 2 > votos) {
+                copiar.add(folha);
+            } else if (contra * 2 > votos) {
+                Log.debug(() -> "Anti-entropia: a folha " + folha + " daqui é a da maioria; o servidor " + vizinho + " se corrige");
+            } else if (vizinhoAdiantado) {
+                copiar.add(folha);
+            } else {
+                folhasSemMaioria.increment();
+                Log.aviso("Anti-entropia: folha " + folha + " (linhas a partir de " + folha * arvore.linhasPorFolha()
+                        + ") difere do servidor " + vizinho + " sem maioria entre " + votos + " réplica(s). Não reparada.");
+            }
+        }
+        return copiar;
+    }
+
+    // O nó (nivel, no) difere: compara os dois filhos e desce pelos que diferem
+    private void descer(int vizinho, int nivel, long no, List<Long> divergentes) throws Exception {
+        if (divergentes.size() >= maxFolhasRodada) return;
+        if (nivel == 0) {
+            divergentes.add(no);
+            return;
+        }
+        long primeiro = no * 2;
+        long[] remotos = consultar(vizinho, Mensagem.comparar(nivel - 1, primeiro, 2)).numeros;
+        long[] locais = arvore.hashes(nivel - 1, primeiro, 2);
+        for (int i = 0; i < 2; i++) {
+            if (!iguais(remotos, locais, i)) descer(vizinho, nivel - 1, primeiro + i, divergentes);
+        }
+    }
+
+    // Um nó que falta de um dos lados (o arquivo mudou no meio da comparação) conta como igual:
+    // ele entra na próxima rodada
+    private static boolean iguais(long[] remotos, long[] locais, int i) {
+        return i >= remotos.length || i >= locais.length || remotos[i] == locais[i];
+    }
+
+    // Linhas das folhas, juntando folhas vizinhas num único trecho
+    private NavigableMap<Long, List<String>> buscarFolhas(int vizinho, List<Long> folhas) throws Exception {
+        NavigableMap<Long, List<String>> trechos = new TreeMap<>();
+        int linhasPorFolha = arvore.linhasPorFolha();
+        for (int i = 0; i < folhas.size(); ) {
+            int j = i + 1;
+            while (j < folhas.size() && folhas.get(j) == folhas.get(j - 1) + 1) j++;
+            long inicio = folhas.get(i) * linhasPorFolha;
+            long fim = (folhas.get(j - 1) + 1) * linhasPorFolha;
+            trechos.put(inicio, buscarLinhas(vizinho, inicio, fim));
+            i = j;
+        }
+        return trechos;
+    }
+
+    // Linhas [inicio, fim) do vizinho, em pedidos de até LINHAS_POR_TRECHO
+    private List<String> buscarLinhas(int vizinho, long inicio, long fim) throws Exception {
+        List<String> linhas = new ArrayList<>((int) (fim - inicio));
+        for (long proxima = inicio; proxima < fim; ) {
+            Mensagem pedido = Mensagem.comValor(TipoMensagem.SINCRONIZAR, proxima);
+            pedido.quantidade = (int) Math.min(LINHAS_POR_TRECHO, fim - proxima);
+            Mensagem trecho = consultar(vizinho, pedido);
+            if (trecho.tipo != TipoMensagem.TRECHO || trecho.quantidade == 0) {
+                throw new IllegalStateException("servidor " + vizinho + " não enviou a linha " + proxima);
+            }
+            for (int i = 0; i < trecho.quantidade; i++) {
+                linhas.add(Registro.formatar(trecho.valores[i * 3], trecho.valores[i * 3 + 1], trecho.valores[i * 3 + 2]));
+            }
+            proxima += trecho.quantidade;
+        }
+        return linhas;
+    }
+
+    private void contarCopiadas(NavigableMap<Long, List<String>> trechos) {
+        for (List<String> linhas : trechos.values()) linhasCopiadas.add(linhas.size());
+    }
+
+    private Mensagem consultar(int porta, Mensagem pedido) throws Exception {
+        Mensagem resposta = pool.enviar(porta, pedido).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (resposta.tipo == TipoMensagem.ERRO) throw new IllegalStateException(resposta.texto);
+        return resposta;
+    }
+}
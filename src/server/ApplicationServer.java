@@ -1,31 +1,96 @@
 package server;
 
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.List;
+import network.PoolConexoes;
+import config.Configuracao;
+import config.ModoEscrita;
+import network.NucleoServidor;
+import observabilidade.Log;
+import observabilidade.Metricas;
 
 // Ele apenas inicia o servidor e aceita conexões
 // E delegaa para ServerWorker para processar cada requisição
 public class ApplicationServer {
     private int minhaPorta;
-    private List<Integer> portasVizinhos;
     private FileManager fileManager;
+    // Conexões persistentes com o LoadBalancer e com os vizinhos (lock, replicação e confirmação)
+    private PoolConexoes pool;
 
-    public ApplicationServer(int porta, List<Integer> vizinhos) {
+    public ApplicationServer(int porta) {
         this.minhaPorta = porta;
-        this.portasVizinhos = vizinhos;
         this.fileManager = new FileManager("dados_server_" + porta + ".txt");
+        this.pool = new PoolConexoes("localhost", 2);
     }
 
     public void start() {
-        System.out.println("=== Servidor iniciado na porta " + minhaPorta + " ===");
-        try (ServerSocket serverSocket = new ServerSocket(minhaPorta)) {
-            while (true) {
-                Socket socket = serverSocket.accept();
-                new Thread(new ServerWorker(socket, fileManager, portasVizinhos)).start();
+        Log.info("=== Servidor iniciado na porta " + minhaPorta + " ===");
+        try {
+            // Os vizinhos vêm da lista de membros mantida pelo LoadBalancer
+            // Consultadas pela mensagem METRICAS (java runners.RunMetricas <porta>) ou pelo JMX
+            Metricas metricas = new Metricas("servidor-" + minhaPorta);
+            VisaoCluster visao = new VisaoCluster(minhaPorta, pool);
+            Replicador replicador = new Replicador(visao, pool, metricas);
+            RequisicoesAplicadas aplicadas = new RequisicoesAplicadas(Configuracao.inteiro("deduplicacao.capacidade", 262144));
+
+            // No modo LOTE os resultados são gravados e replicados em grupo por uma thread dedicada
+            GrupoCommit grupoCommit = null;
+            if (ModoEscrita.configurado() == ModoEscrita.LOTE) {
+                grupoCommit = new GrupoCommit(minhaPorta, fileManager, replicador, visao, aplicadas, pool, Configuracao.inteiro("escrita.maxLote", 256),
+                        metricas);
+                grupoCommit.iniciar();
+                Log.info("Modo de escrita: LOTE (gravação em grupo)");
+            }
+
+            // No modo SEQUENCIADOR não há lock: as escritas são gravadas na ordem numerada pelo LoadBalancer
+            BufferReordenacao bufferReordenacao = null;
+            if (ModoEscrita.configurado() == ModoEscrita.SEQUENCIADOR) {
+                bufferReordenacao = new BufferReordenacao(fileManager);
+                Log.info("Modo de escrita: SEQUENCIADOR (última sequência gravada: "
+                        + bufferReordenacao.ultimaAplicada() + ")");
             }
+
+            CacheMdc cacheMdc = new CacheMdc(Configuracao.inteiro("cache.mdc.capacidade", 65536));
+            LimiteConcorrencia limite = new LimiteConcorrencia();
+            TrabalhoSimulado trabalho = new TrabalhoSimulado(minhaPorta, limite.maximo(), metricas);
+            Log.info("Trabalho simulado das escritas: " + trabalho.modelo());
+
+            ServerWorker worker = new ServerWorker(minhaPorta, fileManager, pool, replicador, visao, aplicadas, limite,
+                    grupoCommit, bufferReordenacao, cacheMdc, trabalho, metricas);
+
+            ParticipacaoCluster participacao = new ParticipacaoCluster(minhaPorta, pool, visao, fileManager,
+                    bufferReordenacao, limite);
+            // Monta a árvore de Merkle do arquivo antes de aceitar conexões
+            AntiEntropia antiEntropia = new AntiEntropia(minhaPorta, pool, visao, fileManager, bufferReordenacao, metricas);
+            registrarMedidores(metricas, limite, cacheMdc, bufferReordenacao);
+            // Ao encerrar: avisa o LoadBalancer e garante que o que está pendente vá para o disco
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                participacao.sair();
+                fileManager.fechar();
+            }));
+
+            // A entrada no cluster precisa do servidor já aceitando conexões (recebe replicações enquanto sincroniza)
+            // A anti-entropia começa depois dela
+            Thread entrada = new Thread(() -> {
+                participacao.entrar();
+                antiEntropia.iniciar();
+            }, "entrada-cluster");
+            entrada.setDaemon(true);
+            entrada.start();
+
+            NucleoServidor.criar(minhaPorta, worker).iniciar();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    // Valores lidos só quando alguém consulta as métricas
+    private void registrarMedidores(Metricas metricas, LimiteConcorrencia limite, CacheMdc cacheMdc,
+                                    BufferReordenacao bufferReordenacao) {
+        metricas.medidor("concorrencia.limite", limite::limite);
+        metricas.medidor("escrita.emAndamento", limite::emAndamento);
+        metricas.medidor("cache.acertos", cacheMdc::acertos);
+        metricas.medidor("cache.falhas", cacheMdc::falhas);
+        metricas.medidor("arquivo.linhas", fileManager::contarLinhas);
+        if (bufferReordenacao != null) metricas.medidor("reordenacao.aguardando", bufferReordenacao::aguardando);
+        metricas.publicarJmx();
+    }
+}
@@ -0,0 +1,24 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// Motor de armazenamento usado pelo FileManager
+public interface Armazenamento extends Closeable {
+
+    // Acrescenta as linhas no fim, na ordem recebida
+    void escrever(List<String> linhas) throws IOException;
+
+    // Quantidade de linhas gravadas (não relê o arquivo)
+    long linhas();
+
+    // Lê 'quantidade' linhas a partir da linha 'inicio' (começando em 0)
+    List<String> ler(long inicio, int quantidade) throws IOException;
+
+    // Descarta as linhas a partir da linha 'linhas' (reparo da anti-entropia; o resto só acrescenta no fim)
+    void truncar(long linhas) throws IOException;
+
+    // Força os dados para o disco (fsync)
+    void sincronizar() throws IOException;
+}
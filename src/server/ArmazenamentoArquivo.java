@@ -0,0 +1,338 @@
+package server;
+
+import observabilidade.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Armazenamento em um único arquivo texto (dados_server_XXXX.txt), só com acréscimos no fim.
+// O arquivo fica aberto o tempo todo e o número de linhas é mantido em memória, então contar
+// linhas não relê mais o arquivo.
+//
+// Índice: a cada INTERVALO_INDICE linhas guardamos a posição (offset) em que a linha começa.
+// Ele fica em memória e também em um arquivo ".idx" ao lado dos dados (um long por entrada).
+// Ao iniciar, o índice é carregado do ".idx" e só o trecho do arquivo depois da última entrada
+// precisa ser relido para recuperar a contagem.
+public class ArmazenamentoArquivo implements Armazenamento {
+    private static final int INTERVALO_INDICE = 64;
+    private static final int TAMANHO_BLOCO = 64 * 1024;
+
+    private final FileChannel canal;
+    private final FileChannel canalIndice;
+    private final PoliticaFsync politica;
+    private ScheduledExecutorService sincronizador;
+
+    // indice[k] = offset onde começa a linha k * INTERVALO_INDICE
+    private long[] indice = new long[1024];
+    private int entradasIndice = 0;
+    // Quantas entradas do índice já estão no arquivo ".idx"
+    private int entradasGravadas = 0;
+
+    private long linhas = 0;
+    // Fim dos dados válidos (próxima posição de escrita)
+    private long tamanho = 0;
+    // Existem dados escritos que ainda não passaram por fsync
+    private boolean pendenteSincronizar = false;
+    // Uma escrita falhou e não foi possível cortar o que ela deixou depois de 'tamanho'
+    private boolean restoNoFim = false;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_BLOCO);
+
+    public ArmazenamentoArquivo(String arquivo, PoliticaFsync politica, long intervaloFsyncMs) throws IOException {
+        Path caminho = Paths.get(arquivo);
+        this.politica = politica;
+        this.canal = FileChannel.open(caminho,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.canalIndice = FileChannel.open(Paths.get(arquivo + ".idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        recuperar();
+
+        if (politica == PoliticaFsync.INTERVALO) {
+            sincronizador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fsync-" + caminho.getFileName());
+                t.setDaemon(true);
+                return t;
+            });
+            sincronizador.scheduleWithFixedDelay(() -> {
+                try {
+                    sincronizar();
+                } catch (IOException e) {
+                    Log.erro("Erro no fsync periódico de " + caminho + ": " + e.getMessage());
+                }
+            }, intervaloFsyncMs, intervaloFsyncMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Tudo ou nada: se a gravação falhar, a contagem e o índice voltam ao que eram antes e o que
+    // chegou ao arquivo é cortado, então quem chamou pode tentar de novo (e não deve confirmar a escrita)
+    @Override
+    public synchronized void escrever(List<String> novasLinhas) throws IOException {
+        long linhasAntes = linhas;
+        long tamanhoAntes = tamanho;
+        int entradasAntes = entradasIndice;
+        try {
+            if (restoNoFim) cortarResto();
+            buffer.clear();
+            for (String linha : novasLinhas) {
+                if (linhas % INTERVALO_INDICE == 0) {
+                    adicionarIndice(tamanho + buffer.position());
+                }
+
+                byte[] bytes = linha.getBytes(StandardCharsets.UTF_8);
+                garantirEspaco(bytes.length + 1);
+                buffer.put(bytes).put((byte) '\n');
+                linhas++;
+
+                if (politica == PoliticaFsync.SEMPRE) {
+                    descarregarBuffer();
+                    canal.force(false);
+                }
+            }
+            descarregarBuffer();
+            gravarIndice();
+
+            if (politica == PoliticaFsync.LOTE) {
+                canal.force(false);
+                canalIndice.force(false);
+            } else if (politica == PoliticaFsync.INTERVALO) {
+                pendenteSincronizar = true;
+            }
+        } catch (IOException e) {
+            desfazer(linhasAntes, tamanhoAntes, entradasAntes);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized long linhas() {
+        return linhas;
+    }
+
+    @Override
+    public synchronized List<String> ler(long inicio, int quantidade) throws IOException {
+        List<String> resultado = new ArrayList<>();
+        if (inicio < 0 || inicio >= linhas || quantidade <= 0) return resultado;
+
+        // Começa na entrada do índice mais próxima e pula as linhas até 'inicio'
+        int entrada = (int) (inicio / INTERVALO_INDICE);
+        long posicao = indice[entrada];
+        long pular = inicio - (long) entrada * INTERVALO_INDICE;
+
+        ByteBuffer bloco = ByteBuffer.allocate(TAMANHO_BLOCO);
+        ByteArrayOutputStream linhaAtual = new ByteArrayOutputStream();
+
+        while (posicao < tamanho && resultado.size() < quantidade) {
+            bloco.clear();
+            bloco.limit((int) Math.min(bloco.capacity(), tamanho - posicao));
+            int lidos = canal.read(bloco, posicao);
+            if (lidos <= 0) break;
+            posicao += lidos;
+            bloco.flip();
+
+            while (bloco.hasRemaining() && resultado.size() < quantidade) {
+                byte b = bloco.get();
+                if (b != '\n') {
+                    if (pular == 0) linhaAtual.write(b);
+                    continue;
+                }
+                if (pular > 0) {
+                    pular--;
+                } else {
+                    resultado.add(linhaAtual.toString(StandardCharsets.UTF_8));
+                    linhaAtual.reset();
+                }
+            }
+        }
+        return resultado;
+    }
+
+    @Override
+    public synchronized void truncar(long novasLinhas) throws IOException {
+        if (novasLinhas < 0 || novasLinhas >= linhas) return;
+        long posicao = posicaoLinha(novasLinhas);
+        canal.truncate(posicao);
+        tamanho = posicao;
+        linhas = novasLinhas;
+
+        // Ficam só as entradas das linhas que continuam no arquivo
+        entradasIndice = (int) ((novasLinhas + INTERVALO_INDICE - 1) / INTERVALO_INDICE);
+        if (entradasGravadas > entradasIndice) {
+            entradasGravadas = entradasIndice;
+            canalIndice.truncate((long) entradasGravadas * Long.BYTES);
+        }
+        // Raro: vai direto para o disco, seja qual for a política
+        canal.force(false);
+        canalIndice.force(false);
+    }
+
+    @Override
+    public synchronized void sincronizar() throws IOException {
+        if (!pendenteSincronizar) return;
+        canal.force(false);
+        canalIndice.force(false);
+        pendenteSincronizar = false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (sincronizador != null) sincronizador.shutdown();
+        canal.force(false);
+        canalIndice.force(false);
+        canal.close();
+        canalIndice.close();
+    }
+
+    // Carrega o índice salvo e relê apenas o fim do arquivo para achar as linhas que faltam
+    private void recuperar() throws IOException {
+        long tamanhoArquivo = canal.size();
+
+        // Entradas do ".idx" (descarta as que apontam para depois do fim dos dados)
+        long tamanhoIndice = canalIndice.size() - canalIndice.size() % Long.BYTES;
+        ByteBuffer entradas = ByteBuffer.allocate((int) tamanhoIndice);
+        while (entradas.hasRemaining() && canalIndice.read(entradas, entradas.position()) > 0) {
+            // continua lendo
+        }
+        entradas.flip();
+        long anterior = -1;
+        while (entradas.remaining() >= Long.BYTES) {
+            long offset = entradas.getLong();
+            if (offset <= anterior || offset >= tamanhoArquivo) break;
+            adicionarIndice(offset);
+            anterior = offset;
+        }
+        entradasGravadas = entradasIndice;
+
+        // Relê a partir da última linha indexada
+        long inicioLinha = entradasIndice > 0 ? indice[entradasIndice - 1] : 0;
+        long contadas = entradasIndice > 0 ? (long) (entradasIndice - 1) * INTERVALO_INDICE : 0;
+        long posicao = inicioLinha;
+        ByteBuffer bloco = ByteBuffer.allocate(TAMANHO_BLOCO);
+
+        while (posicao < tamanhoArquivo) {
+            bloco.clear();
+            int lidos = canal.read(bloco, posicao);
+            if (lidos <= 0) break;
+            bloco.flip();
+            for (int i = 0; i < lidos; i++) {
+                if (bloco.get(i) == '\n') {
+                    if (contadas % INTERVALO_INDICE == 0 && contadas / INTERVALO_INDICE >= entradasIndice) {
+                        adicionarIndice(inicioLinha);
+                    }
+                    contadas++;
+                    inicioLinha = posicao + i + 1;
+                }
+            }
+            posicao += lidos;
+        }
+
+        // Uma linha sem '\n' no final é resto de uma escrita interrompida: descarta
+        if (inicioLinha < tamanhoArquivo) {
+            Log.aviso("Descartando " + (tamanhoArquivo - inicioLinha) + " bytes incompletos no fim do arquivo.");
+            canal.truncate(inicioLinha);
+        }
+        while (entradasIndice > 0 && indice[entradasIndice - 1] >= inicioLinha) {
+            entradasIndice--;
+        }
+
+        linhas = contadas;
+        tamanho = inicioLinha;
+
+        // Reescreve o ".idx" só com as entradas válidas
+        entradasGravadas = Math.min(entradasGravadas, entradasIndice);
+        canalIndice.truncate((long) entradasGravadas * Long.BYTES);
+        gravarIndice();
+    }
+
+    // Offset onde começa a linha 'numero' (menor que 'linhas')
+    private long posicaoLinha(long numero) throws IOException {
+        int entrada = (int) (numero / INTERVALO_INDICE);
+        long posicao = indice[entrada];
+        long pular = numero - (long) entrada * INTERVALO_INDICE;
+
+        ByteBuffer bloco = ByteBuffer.allocate(TAMANHO_BLOCO);
+        while (pular > 0) {
+            bloco.clear();
+            bloco.limit((int) Math.min(bloco.capacity(), tamanho - posicao));
+            int lidos = canal.read(bloco, posicao);
+            if (lidos <= 0) throw new IOException("Fim do arquivo antes da linha " + numero);
+            for (int i = 0; i < lidos; i++) {
+                if (bloco.get(i) == '\n' && --pular == 0) return posicao + i + 1;
+            }
+            posicao += lidos;
+        }
+        return posicao;
+    }
+
+    // Volta ao estado de antes de uma escrita que falhou
+    private void desfazer(long linhasAntes, long tamanhoAntes, int entradasAntes) {
+        buffer.clear();
+        linhas = linhasAntes;
+        tamanho = tamanhoAntes;
+        entradasIndice = entradasAntes;
+        entradasGravadas = Math.min(entradasGravadas, entradasIndice);
+        try {
+            cortarResto();
+        } catch (IOException e) {
+            // Tenta de novo na próxima escrita (até lá ninguém lê depois de 'tamanho')
+            restoNoFim = true;
+            Log.erro("Não foi possível cortar o resto da escrita que falhou: " + e.getMessage());
+        }
+    }
+
+    // Corta o arquivo e o ".idx" no fim dos dados válidos
+    private void cortarResto() throws IOException {
+        canal.truncate(tamanho);
+        canalIndice.truncate((long) entradasGravadas * Long.BYTES);
+        restoNoFim = false;
+    }
+
+    private void adicionarIndice(long offset) {
+        if (entradasIndice == indice.length) {
+            indice = Arrays.copyOf(indice, indice.length * 2);
+        }
+        indice[entradasIndice++] = offset;
+    }
+
+    // Acrescenta no ".idx" as entradas novas
+    private void gravarIndice() throws IOException {
+        if (entradasGravadas == entradasIndice) return;
+        ByteBuffer novas = ByteBuffer.allocate((entradasIndice - entradasGravadas) * Long.BYTES);
+        for (int i = entradasGravadas; i < entradasIndice; i++) novas.putLong(indice[i]);
+        novas.flip();
+        long posicao = (long) entradasGravadas * Long.BYTES;
+        while (novas.hasRemaining()) {
+            posicao += canalIndice.write(novas, posicao);
+        }
+        entradasGravadas = entradasIndice;
+    }
+
+    private void garantirEspaco(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return;
+        descarregarBuffer();
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(bytes);
+        }
+    }
+
+    // Escreve o conteúdo do buffer no fim do arquivo
+    private void descarregarBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            tamanho += canal.write(buffer, tamanho);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,414 @@
+package server;
+
+import observabilidade.Log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Armazenamento em segmentos dentro de um diretório (ex: dados_server_9001/).
+//
+// - O segmento ativo é um arquivo texto "segmento_<primeira linha>.log" gravado pelo ArmazenamentoArquivo.
+// - Quando ele passa de -Darmazenamento.maxLinhasSegmento linhas ou fica mais velho que
+//   -Darmazenamento.maxIdadeSegmentoMs, um novo segmento ativo é aberto e o anterior é selado em
+//   segundo plano: convertido para "segmento_<primeira linha>.sel", com x/y/mdc em varint comprimido
+//   (FormatoSelado), bem menor que a frase em português de cada linha.
+// - Compactação: segmentos selados vizinhos pequenos (ex: fechados por idade) são juntados enquanto
+//   couberem no tamanho máximo de um segmento.
+// - O número no nome do arquivo é a linha em que o segmento começa, então achar o segmento de uma
+//   linha não exige ler nada.
+// - exportarTexto() gera o arquivo texto completo no formato antigo, para compatibilidade.
+public class ArmazenamentoSegmentado implements Armazenamento {
+    private static final String PREFIXO = "segmento_";
+    private static final String EXTENSAO_ATIVO = ".log";
+    private static final String EXTENSAO_SELADO = ".sel";
+
+    private final Path diretorio;
+    private final PoliticaFsync politica;
+    private final long intervaloFsyncMs;
+    private final long maxLinhasSegmento;
+    private final long maxIdadeSegmentoMs;
+
+    // Primeira linha -> segmento (todos, inclusive o ativo)
+    private final TreeMap<Long, Segmento> segmentos = new TreeMap<>();
+    private Segmento ativo;
+    private ArmazenamentoArquivo escritor;
+    private long criacaoAtivo;
+
+    private final ExecutorService selador = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "selador-segmentos");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Um segmento do log. 'quantidade' só é conhecida para os selados (-1 nos demais)
+    private static class Segmento {
+        final long primeiraLinha;
+        final Path arquivo;
+        final boolean selado;
+        final long quantidade;
+
+        Segmento(long primeiraLinha, Path arquivo, boolean selado, long quantidade) {
+            this.primeiraLinha = primeiraLinha;
+            this.arquivo = arquivo;
+            this.selado = selado;
+            this.quantidade = quantidade;
+        }
+    }
+
+    public ArmazenamentoSegmentado(String diretorio, String arquivoLegado, PoliticaFsync politica,
+                                   long intervaloFsyncMs, long maxLinhasSegmento, long maxIdadeSegmentoMs) throws IOException {
+        this.diretorio = Paths.get(diretorio);
+        this.politica = politica;
+        this.intervaloFsyncMs = intervaloFsyncMs;
+        this.maxLinhasSegmento = Math.max(1, maxLinhasSegmento);
+        this.maxIdadeSegmentoMs = maxIdadeSegmentoMs;
+
+        Files.createDirectories(this.diretorio);
+        importarLegado(arquivoLegado);
+        recuperar();
+    }
+
+    @Override
+    public synchronized void escrever(List<String> linhas) throws IOException {
+        long linhasAtivo = escritor.linhas();
+        boolean cheio = linhasAtivo >= maxLinhasSegmento;
+        boolean velho = linhasAtivo > 0 && System.currentTimeMillis() - criacaoAtivo >= maxIdadeSegmentoMs;
+        if (cheio || velho) {
+            rolar();
+        }
+        escritor.escrever(linhas);
+    }
+
+    @Override
+    public synchronized long linhas() {
+        return ativo.primeiraLinha + escritor.linhas();
+    }
+
+    @Override
+    public List<String> ler(long inicio, int quantidade) throws IOException {
+        synchronized (this) {
+            // No segmento ativo o índice dele acha a linha sem ler o segmento desde o começo
+            if (inicio >= ativo.primeiraLinha) return escritor.ler(inicio - ativo.primeiraLinha, quantidade);
+        }
+        List<String> resultado = new ArrayList<>();
+        try (FonteLinhas leitor = leitor(inicio)) {
+            String linha;
+            while (resultado.size() < quantidade && (linha = leitor.proxima()) != null) {
+                resultado.add(linha);
+            }
+        }
+        return resultado;
+    }
+
+    // Só dentro do segmento ativo: os selados não são reescritos
+    @Override
+    public synchronized void truncar(long novasLinhas) throws IOException {
+        if (novasLinhas < ativo.primeiraLinha) {
+            throw new IOException("A linha " + novasLinhas + " está num segmento selado (o ativo começa na linha "
+                    + ativo.primeiraLinha + ")");
+        }
+        escritor.truncar(novasLinhas - ativo.primeiraLinha);
+    }
+
+    @Override
+    public void sincronizar() throws IOException {
+        ArmazenamentoArquivo atual;
+        synchronized (this) {
+            atual = escritor;
+        }
+        atual.sincronizar();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        selador.shutdown();
+        escritor.close();
+    }
+
+    // Leitura contínua a partir de uma linha, atravessando todos os segmentos
+    public FonteLinhas leitor(long inicio) {
+        List<Segmento> lista;
+        long total;
+        synchronized (this) {
+            lista = instantaneo(inicio);
+            total = linhas();
+        }
+        return new LeitorSegmentos(lista, inicio, total, this);
+    }
+
+    // Segmentos atuais a partir do que contém a linha 'inicio'
+    private synchronized List<Segmento> instantaneo(long inicio) {
+        Long primeiro = segmentos.floorKey(Math.max(0, inicio));
+        return new ArrayList<>(primeiro == null ? segmentos.values() : segmentos.tailMap(primeiro).values());
+    }
+
+    // Gera o arquivo texto completo, no mesmo formato do armazenamento original
+    public void exportarTexto(Path destino) throws IOException {
+        exportar(leitor(0), destino);
+    }
+
+    // Exporta um diretório de segmentos sem precisar abrir o armazenamento para escrita
+    public static void exportarTexto(Path diretorio, Path destino) throws IOException {
+        exportar(abrirLeitura(diretorio), destino);
+    }
+
+    // Leitura de um diretório de segmentos (ex: pelo verificador de réplicas com o servidor parado)
+    public static FonteLinhas abrirLeitura(Path diretorio) throws IOException {
+        List<Segmento> lista = new ArrayList<>(listar(diretorio).values());
+        return new LeitorSegmentos(lista, 0, Long.MAX_VALUE, null);
+    }
+
+    // Fecha o segmento ativo, abre um novo e manda selar o anterior
+    private void rolar() throws IOException {
+        Segmento anterior = ativo;
+        long proximaLinha = linhas();
+        escritor.close();
+
+        abrirAtivo(proximaLinha);
+        Log.info("Novo segmento iniciado na linha " + proximaLinha);
+        selador.execute(() -> selar(anterior));
+    }
+
+    private void abrirAtivo(long primeiraLinha) throws IOException {
+        Path arquivo = caminho(diretorio, primeiraLinha, EXTENSAO_ATIVO);
+        ativo = new Segmento(primeiraLinha, arquivo, false, -1);
+        segmentos.put(primeiraLinha, ativo);
+        escritor = new ArmazenamentoArquivo(arquivo.toString(), politica, intervaloFsyncMs);
+        criacaoAtivo = System.currentTimeMillis();
+    }
+
+    // Thread do selador: converte um segmento ".log" fechado para ".sel"
+    private void selar(Segmento segmento) {
+        try {
+            long limite;
+            synchronized (this) {
+                Long proximo = segmentos.higherKey(segmento.primeiraLinha);
+                if (proximo == null) return;
+                limite = proximo - segmento.primeiraLinha;
+            }
+
+            Path destino = caminho(diretorio, segmento.primeiraLinha, EXTENSAO_SELADO);
+            long quantidade = FormatoSelado.selar(() -> FonteLinhas.deArquivoTexto(segmento.arquivo, limite), destino);
+
+            synchronized (this) {
+                segmentos.put(segmento.primeiraLinha, new Segmento(segmento.primeiraLinha, destino, true, quantidade));
+            }
+            Files.deleteIfExists(segmento.arquivo);
+            Files.deleteIfExists(Paths.get(segmento.arquivo + ".idx"));
+            Log.info("Segmento " + segmento.primeiraLinha + " selado (" + quantidade + " linhas).");
+
+            compactar(segmento.primeiraLinha);
+        } catch (IOException e) {
+            Log.erro("Erro ao selar segmento " + segmento.arquivo + ": " + e.getMessage());
+        }
+    }
+
+    // Junta o segmento selado com o selado anterior, se os dois couberem em um segmento
+    private void compactar(long primeiraLinha) throws IOException {
+        Segmento atual;
+        Segmento anterior;
+        synchronized (this) {
+            atual = segmentos.get(primeiraLinha);
+            Map.Entry<Long, Segmento> entrada = segmentos.lowerEntry(primeiraLinha);
+            anterior = entrada == null ? null : entrada.getValue();
+        }
+        if (anterior == null || !anterior.selado || atual == null || !atual.selado) return;
+        if (anterior.quantidade + atual.quantidade > maxLinhasSegmento) return;
+
+        List<Segmento> partes = Arrays.asList(anterior, atual);
+        long quantidade = FormatoSelado.selar(() -> new LeitorSegmentos(partes, anterior.primeiraLinha, Long.MAX_VALUE, null),
+                anterior.arquivo);
+
+        synchronized (this) {
+            segmentos.put(anterior.primeiraLinha, new Segmento(anterior.primeiraLinha, anterior.arquivo, true, quantidade));
+            segmentos.remove(atual.primeiraLinha);
+        }
+        // Se cair antes de apagar, a recuperação percebe que o segmento já está contido no anterior.
+        // Um leitor que ainda lista este arquivo pega um instantâneo novo ao não encontrá-lo (LeitorSegmentos).
+        Files.deleteIfExists(atual.arquivo);
+        Log.info("Segmentos " + anterior.primeiraLinha + " e " + atual.primeiraLinha + " compactados.");
+    }
+
+    // Primeira execução com armazenamento segmentado: o arquivo texto antigo vira o primeiro segmento
+    private void importarLegado(String arquivoLegado) throws IOException {
+        if (arquivoLegado == null) return;
+        Path legado = Paths.get(arquivoLegado);
+        if (!Files.exists(legado) || Files.size(legado) == 0) return;
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            if (arquivos.findAny().isPresent()) return;
+        }
+        Files.copy(legado, caminho(diretorio, 0, EXTENSAO_ATIVO));
+        Log.info("Arquivo " + legado + " importado como primeiro segmento.");
+    }
+
+    private void recuperar() throws IOException {
+        segmentos.putAll(listar(diretorio));
+
+        // O ativo é o último ".log"; se o último for selado, começa um ativo novo depois dele
+        Map.Entry<Long, Segmento> ultimo = segmentos.lastEntry();
+        if (ultimo != null && !ultimo.getValue().selado) {
+            segmentos.remove(ultimo.getKey());
+            abrirAtivo(ultimo.getKey());
+        } else if (ultimo != null) {
+            abrirAtivo(ultimo.getKey() + ultimo.getValue().quantidade);
+        } else {
+            abrirAtivo(0);
+        }
+
+        // ".log" antigos que não chegaram a ser selados
+        for (Segmento s : new ArrayList<>(segmentos.values())) {
+            if (!s.selado && s != ativo) {
+                selador.execute(() -> selar(s));
+            }
+        }
+    }
+
+    // Lista os segmentos de um diretório, limpando restos de operações interrompidas
+    private static TreeMap<Long, Segmento> listar(Path diretorio) throws IOException {
+        TreeMap<Long, Segmento> encontrados = new TreeMap<>();
+        List<Path> arquivos;
+        try (Stream<Path> lista = Files.list(diretorio)) {
+            // Selados primeiro, para saber quais ".log" já foram selados
+            arquivos = lista.sorted(Comparator.comparing((Path p) -> !p.toString().endsWith(EXTENSAO_SELADO))
+                            .thenComparing(Comparator.naturalOrder()))
+                    .collect(Collectors.toList());
+        }
+
+        for (Path arquivo : arquivos) {
+            String nome = arquivo.getFileName().toString();
+            if (nome.endsWith(".tmp")) {
+                Files.deleteIfExists(arquivo);
+                continue;
+            }
+            if (!nome.startsWith(PREFIXO)) continue;
+
+            boolean selado = nome.endsWith(EXTENSAO_SELADO);
+            if (!selado && !nome.endsWith(EXTENSAO_ATIVO)) continue;
+
+            long primeira = Long.parseLong(nome.substring(PREFIXO.length(), nome.indexOf('.')));
+            if (!selado && encontrados.containsKey(primeira)) {
+                // Já foi selado mas o ".log" não chegou a ser apagado
+                Files.deleteIfExists(arquivo);
+                Files.deleteIfExists(Paths.get(arquivo + ".idx"));
+                continue;
+            }
+            long quantidade = selado ? FormatoSelado.lerQuantidade(arquivo) : -1;
+            encontrados.put(primeira, new Segmento(primeira, arquivo, selado, quantidade));
+        }
+
+        // Segmentos já contidos no selado anterior (compactação interrompida antes de apagar)
+        long fimAnterior = -1;
+        for (Iterator<Segmento> it = encontrados.values().iterator(); it.hasNext(); ) {
+            Segmento s = it.next();
+            if (s.primeiraLinha < fimAnterior) {
+                Files.deleteIfExists(s.arquivo);
+                it.remove();
+                continue;
+            }
+            fimAnterior = s.selado ? s.primeiraLinha + s.quantidade : -1;
+        }
+        return encontrados;
+    }
+
+    private static void exportar(FonteLinhas fonte, Path destino) throws IOException {
+        try (FonteLinhas leitor = fonte;
+             BufferedWriter out = Files.newBufferedWriter(destino, StandardCharsets.UTF_8)) {
+            String linha;
+            while ((linha = leitor.proxima()) != null) {
+                out.write(linha);
+                out.newLine();
+            }
+        }
+    }
+
+    private static Path caminho(Path diretorio, long primeiraLinha, String extensao) {
+        return diretorio.resolve(String.format("%s%020d%s", PREFIXO, primeiraLinha, extensao));
+    }
+
+    // Lê os segmentos em sequência a partir de uma linha qualquer
+    private static class LeitorSegmentos implements FonteLinhas {
+        // Armazenamento de onde veio a lista (null na leitura sem o armazenamento aberto, sem compactação)
+        private final ArmazenamentoSegmentado dono;
+        private List<Segmento> segmentos;
+        private final long fim;
+        private long proximaLinha;
+        private int indice = 0;
+        private FonteLinhas atual;
+        private long fimAtual;
+
+        LeitorSegmentos(List<Segmento> segmentos, long inicio, long fim, ArmazenamentoSegmentado dono) {
+            this.dono = dono;
+            this.segmentos = segmentos;
+            this.proximaLinha = Math.max(0, inicio);
+            this.fim = fim;
+        }
+
+        @Override
+        public String proxima() throws IOException {
+            while (proximaLinha < fim) {
+                if (atual == null) {
+                    if (indice >= segmentos.size()) return null;
+                    abrirSegmento(indice++);
+                    continue;
+                }
+
+                String linha = proximaLinha < fimAtual ? atual.proxima() : null;
+                if (linha == null) {
+                    atual.close();
+                    atual = null;
+                    continue;
+                }
+                proximaLinha++;
+                return linha;
+            }
+            return null;
+        }
+
+        private void abrirSegmento(int i) throws IOException {
+            Segmento s = segmentos.get(i);
+            long inicioProximo = i + 1 < segmentos.size() ? segmentos.get(i + 1).primeiraLinha : Long.MAX_VALUE;
+            fimAtual = s.selado ? s.primeiraLinha + s.quantidade : inicioProximo;
+            if (proximaLinha >= fimAtual) return; // Segmento inteiro antes do início pedido
+
+            try {
+                // Já posicionado na linha pedida (os selados pulam direto para o bloco dela)
+                atual = abrir(s, proximaLinha - s.primeiraLinha);
+            } catch (NoSuchFileException e) {
+                // Compactado depois do instantâneo: continua da mesma linha com a lista atual de segmentos
+                List<Segmento> novos = dono != null ? dono.instantaneo(proximaLinha) : null;
+                if (novos == null || novos.stream().anyMatch(n -> n.arquivo.equals(s.arquivo))) throw e;
+                segmentos = novos;
+                indice = 0;
+            }
+        }
+
+        // Abre o segmento já na linha 'pular' dele
+        private FonteLinhas abrir(Segmento s, long pular) throws IOException {
+            if (s.selado) return FormatoSelado.abrir(s.arquivo, pular);
+            FonteLinhas texto;
+            try {
+                texto = FonteLinhas.deArquivoTexto(s.arquivo, -1);
+            } catch (NoSuchFileException e) {
+                // Foi selado enquanto líamos
+                Path selado = caminho(s.arquivo.getParent(), s.primeiraLinha, EXTENSAO_SELADO);
+                return FormatoSelado.abrir(selado, pular);
+            }
+            for (long l = 0; l < pular; l++) {
+                if (texto.proxima() == null) break;
+            }
+            return texto;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (atual != null) atual.close();
+        }
+    }
+}
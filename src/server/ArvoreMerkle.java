@@ -0,0 +1,107 @@
+package server;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Árvore de Merkle das linhas do arquivo de dados, usada pela anti-entropia (AntiEntropia).
+//
+// - Folha: hash de um bloco de 'linhasPorFolha' linhas seguidas (a ordem das linhas conta).
+//   Só blocos completos viram folha; as linhas do bloco em andamento ficam num hash parcial.
+// - Nível k: o nó i resume as folhas [i * 2^k, (i + 1) * 2^k). Um nó só existe quando os dois filhos
+//   existem, então um nó nunca muda depois de criado (o arquivo só cresce no fim).
+// - Atualizada a cada gravação pelo FileManager (custo de um hash por linha, sem reler o arquivo).
+//   Duas réplicas com o mesmo nó têm, com altíssima probabilidade, as mesmas linhas naquele intervalo.
+public class ArvoreMerkle {
+    private static final int MAX_NIVEIS = 63;
+    private static final long SEMENTE = 0x6A09E667F3BCC909L;
+    private static final long MULTIPLICADOR = 0x9E3779B97F4A7C15L;
+
+    private final int linhasPorFolha;
+    // niveis[k][0..tamanhos[k]) = hashes dos nós do nível k (nível 0 = folhas)
+    private final long[][] niveis = new long[MAX_NIVEIS][];
+    private final int[] tamanhos = new int[MAX_NIVEIS];
+    // Bloco em andamento
+    private long hashParcial = SEMENTE;
+    private int linhasParciais = 0;
+
+    public ArvoreMerkle(int linhasPorFolha) {
+        this.linhasPorFolha = Math.max(1, linhasPorFolha);
+    }
+
+    public int linhasPorFolha() {
+        return linhasPorFolha;
+    }
+
+    // Linhas novas no fim do arquivo
+    public synchronized void acrescentar(List<String> linhas) {
+        for (String linha : linhas) {
+            hashParcial = misturar(hashParcial * MULTIPLICADOR + hashLinha(linha));
+            if (++linhasParciais == linhasPorFolha) {
+                adicionarNo(0, hashParcial);
+                hashParcial = SEMENTE;
+                linhasParciais = 0;
+            }
+        }
+    }
+
+    // Descarta tudo a partir da folha que contém a linha 'linhas'. Quem chama acrescenta de novo
+    // as linhas [folhas() * linhasPorFolha, linhas) antes das próximas.
+    public synchronized void truncar(long linhas) {
+        long folhas = linhas / linhasPorFolha;
+        for (int nivel = 0; nivel < MAX_NIVEIS; nivel++) {
+            tamanhos[nivel] = (int) Math.min(tamanhos[nivel], folhas >> nivel);
+        }
+        hashParcial = SEMENTE;
+        linhasParciais = 0;
+    }
+
+    // Blocos completos
+    public synchronized long folhas() {
+        return tamanhos[0];
+    }
+
+    public synchronized long linhas() {
+        return (long) tamanhos[0] * linhasPorFolha + linhasParciais;
+    }
+
+    // Hashes dos nós [primeiro, primeiro + quantidade) do nível; só os que já existem
+    public synchronized long[] hashes(int nivel, long primeiro, int quantidade) {
+        if (nivel < 0 || nivel >= MAX_NIVEIS || primeiro < 0 || quantidade <= 0 || primeiro >= tamanhos[nivel]) {
+            return new long[0];
+        }
+        int fim = (int) Math.min(primeiro + quantidade, tamanhos[nivel]);
+        return Arrays.copyOfRange(niveis[nivel], (int) primeiro, fim);
+    }
+
+    private void adicionarNo(int nivel, long hash) {
+        if (niveis[nivel] == null) {
+            niveis[nivel] = new long[16];
+        } else if (tamanhos[nivel] == niveis[nivel].length) {
+            niveis[nivel] = Arrays.copyOf(niveis[nivel], niveis[nivel].length * 2);
+        }
+        long[] nos = niveis[nivel];
+        int n = ++tamanhos[nivel];
+        nos[n - 1] = hash;
+        // Dois irmãos completos: cria o pai
+        if (n % 2 == 0 && nivel + 1 < MAX_NIVEIS) {
+            adicionarNo(nivel + 1, misturar(nos[n - 2] * MULTIPLICADOR + nos[n - 1]));
+        }
+    }
+
+    // FNV-1a de 64 bits dos caracteres da linha
+    private static long hashLinha(String linha) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < linha.length(); i++) {
+            h ^= linha.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return h;
+    }
+
+    // Finalizador do SplitMix64: espalha cada bit da entrada por todo o resultado
+    private static long misturar(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
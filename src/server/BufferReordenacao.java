@@ -0,0 +1,96 @@
+package server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Usado no modo SEQUENCIADOR.
+// Cada ESCRITA recebe do LoadBalancer um número de sequência (1, 2, 3, ...), que é também o número da
+// linha que ela vai ocupar no arquivo. As escritas (locais ou replicadas) podem chegar fora de ordem;
+// elas ficam guardadas aqui até que todas as anteriores tenham chegado, e então são gravadas em ordem.
+// Assim todos os servidores terminam com as linhas na mesma ordem sem precisar de lock.
+// Se a gravação falhar, as linhas voltam para o buffer e a próxima escrita (ou a retransmissão) tenta de novo.
+public class BufferReordenacao {
+    private final FileManager fileManager;
+    // Próxima sequência a ser gravada no arquivo
+    private long proximaSequencia;
+    // Escritas que chegaram antes da vez: sequência -> linha
+    private final Map<Long, String> foraDeOrdem = new HashMap<>();
+
+    public BufferReordenacao(FileManager fileManager) {
+        this.fileManager = fileManager;
+        // As linhas que já estão no arquivo correspondem às sequências 1..N
+        this.proximaSequencia = fileManager.contarLinhas() + 1;
+    }
+
+    // Recebe uma escrita; grava ela e todas as seguintes que já estiverem disponíveis.
+    // Sequências repetidas (retransmissão ou replicação duplicada) não são guardadas de novo.
+    public synchronized void receber(long sequencia, String linha) throws IOException {
+        if (sequencia >= proximaSequencia) foraDeOrdem.putIfAbsent(sequencia, linha);
+        gravarProntas();
+    }
+
+    // Várias escritas de sequências consecutivas (ESCRITA_LOTE): como receber() para cada uma,
+    // com uma única gravação no fim
+    public synchronized void receber(long primeiraSequencia, List<String> linhas) throws IOException {
+        for (int i = 0; i < linhas.size(); i++) {
+            long sequencia = primeiraSequencia + i;
+            if (sequencia >= proximaSequencia) foraDeOrdem.putIfAbsent(sequencia, linhas.get(i));
+        }
+        gravarProntas();
+    }
+
+    // Linhas copiadas de outro servidor ao entrar no cluster: 'linhas' ocupa as sequências a partir de
+    // 'primeiraSequencia'. As que já foram gravadas são ignoradas; as escritas que estavam esperando
+    // por essas linhas são gravadas logo em seguida.
+    public synchronized void receberTrecho(long primeiraSequencia, List<String> linhas) throws IOException {
+        // Com um buraco antes do trecho o resto fica para a próxima cópia
+        if (primeiraSequencia <= proximaSequencia) {
+            for (int i = 0; i < linhas.size(); i++) {
+                long sequencia = primeiraSequencia + i;
+                if (sequencia >= proximaSequencia) foraDeOrdem.put(sequencia, linhas.get(i));
+            }
+        }
+        gravarProntas();
+    }
+
+    // Grava as escritas que já podem ir para o arquivo (a próxima sequência e as que vêm logo depois).
+    // Se a gravação falhar elas voltam para o buffer.
+    private void gravarProntas() throws IOException {
+        long primeira = proximaSequencia;
+        List<String> prontas = new ArrayList<>();
+        String proxima;
+        while ((proxima = foraDeOrdem.remove(proximaSequencia)) != null) {
+            prontas.add(proxima);
+            proximaSequencia++;
+        }
+        if (prontas.isEmpty()) return;
+
+        try {
+            fileManager.escreverLinhas(prontas);
+        } catch (IOException e) {
+            for (int i = 0; i < prontas.size(); i++) foraDeOrdem.put(primeira + i, prontas.get(i));
+            proximaSequencia = primeira;
+            throw e;
+        }
+    }
+
+    // Maior sequência recebida (gravada ou esperando no buffer)
+    public synchronized long maiorRecebida() {
+        long maior = proximaSequencia - 1;
+        for (long sequencia : foraDeOrdem.keySet()) maior = Math.max(maior, sequencia);
+        return maior;
+    }
+
+    // Última sequência gravada no arquivo
+    public synchronized long ultimaAplicada() {
+        return proximaSequencia - 1;
+    }
+
+    // Quantas escritas estão esperando uma sequência anterior chegar
+    public synchronized int aguardando() {
+        return foraDeOrdem.size();
+    }
+}
@@ -0,0 +1,159 @@
+package server;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Cache limitado de resultados de MDC, compartilhado por todas as requisições do servidor.
+//
+// - A chave é o par normalizado (menor, maior) em um único long, então (x, y) e (y, x) caem na
+//   mesma entrada e não há objetos (Long/Integer) criados por consulta.
+// - Organização associativa por conjunto: cada chave só pode ficar em um conjunto de VIAS posições.
+//   Quando o conjunto está cheio, sai a entrada usada há mais tempo (LRU dentro do conjunto).
+// - Os conjuntos são divididos em faixas com um lock cada, para threads diferentes não disputarem
+//   o mesmo lock.
+public class CacheMdc {
+    private static final int VIAS = 8;
+    private static final int FAIXAS = 64;
+    private static final long VAZIO = -1L;
+
+    private final long[] chaves;
+    private final int[] valores;
+    // Momento do último uso de cada posição (relógio da faixa), para escolher quem sai
+    private final int[] usos;
+    private final int[] relogios = new int[FAIXAS];
+    private final Object[] travas = new Object[FAIXAS];
+    private final int mascaraConjuntos;
+
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+    private final LongAdder remocoes = new LongAdder();
+
+    public CacheMdc(int capacidade) {
+        // Quantidade de conjuntos arredondada para potência de 2 (índice com máscara em vez de divisão)
+        int conjuntos = Integer.highestOneBit(Math.max(FAIXAS, capacidade / VIAS));
+        this.mascaraConjuntos = conjuntos - 1;
+        this.chaves = new long[conjuntos * VIAS];
+        this.valores = new int[conjuntos * VIAS];
+        this.usos = new int[conjuntos * VIAS];
+        Arrays.fill(chaves, VAZIO);
+        for (int i = 0; i < FAIXAS; i++) travas[i] = new Object();
+    }
+
+    // Devolve o MDC do par, calculando e guardando se ainda não estiver no cache
+    public int obter(int x, int y) {
+        long chave = chave(x, y);
+        if (chave == VAZIO) return mdc(x, y); // (-1, -1) coincide com a marca de posição vazia
+        int conjunto = conjunto(chave);
+        int faixa = conjunto & (FAIXAS - 1);
+        int base = conjunto * VIAS;
+
+        synchronized (travas[faixa]) {
+            for (int i = base; i < base + VIAS; i++) {
+                if (chaves[i] == chave) {
+                    usos[i] = ++relogios[faixa];
+                    acertos.increment();
+                    return valores[i];
+                }
+            }
+        }
+
+        // Calcula fora do lock
+        falhas.increment();
+        int mdc = mdc(x, y);
+        guardar(chave, conjunto, faixa, base, mdc);
+        return mdc;
+    }
+
+    // Guarda um resultado já calculado (ex: recebido na replicação)
+    public void registrar(int x, int y, int mdc) {
+        long chave = chave(x, y);
+        if (chave == VAZIO) return;
+        int conjunto = conjunto(chave);
+        guardar(chave, conjunto, conjunto & (FAIXAS - 1), conjunto * VIAS, mdc);
+    }
+
+    public long acertos() {
+        return acertos.sum();
+    }
+
+    public long falhas() {
+        return falhas.sum();
+    }
+
+    public long remocoes() {
+        return remocoes.sum();
+    }
+
+    public int capacidade() {
+        return chaves.length;
+    }
+
+    // MDC binário para pares não negativos (os do cliente); Euclides para os outros, com o mesmo
+    // resultado de sempre (o binário não trata sinal)
+    public static int mdc(int a, int b) {
+        return (a | b) >= 0 ? mdcBinario(a, b) : calcular(a, b);
+    }
+
+    // MDC binário (Stein): só deslocamentos e subtrações, sem a divisão do resto (a mais cara das operações inteiras).
+    // min/abs em vez de trocar a e b num if: o JIT gera código sem desvio (o if erraria a previsão metade das vezes).
+    // Entradas não negativas.
+    public static int mdcBinario(int a, int b) {
+        if (a == 0) return b;
+        if (b == 0) return a;
+        int comum = Integer.numberOfTrailingZeros(a | b);
+        a >>>= Integer.numberOfTrailingZeros(a);
+        do {
+            b >>>= Integer.numberOfTrailingZeros(b);
+            int diferenca = b - a;
+            a = Math.min(a, b);
+            b = Math.abs(diferenca);
+        } while (b != 0);
+        return a << comum;
+    }
+
+    // Algoritmo de Euclides
+    public static int calcular(int a, int b) {
+        while (b != 0) {
+            int temp = b;
+            b = a % b;
+            a = temp;
+        }
+        return a;
+    }
+
+    private void guardar(long chave, int conjunto, int faixa, int base, int mdc) {
+        synchronized (travas[faixa]) {
+            int vitima = base;
+            for (int i = base; i < base + VIAS; i++) {
+                if (chaves[i] == chave) {
+                    // Outra thread já guardou enquanto calculávamos
+                    usos[i] = ++relogios[faixa];
+                    return;
+                }
+                if (chaves[i] == VAZIO) {
+                    vitima = i;
+                    break;
+                }
+                if (usos[i] - usos[vitima] < 0) vitima = i;
+            }
+
+            if (chaves[vitima] != VAZIO) remocoes.increment();
+            chaves[vitima] = chave;
+            valores[vitima] = mdc;
+            usos[vitima] = ++relogios[faixa];
+        }
+    }
+
+    // (menor, maior) em um long: o MDC não depende da ordem do par
+    private static long chave(int x, int y) {
+        int menor = Math.min(x, y);
+        int maior = Math.max(x, y);
+        return ((long) menor << 32) | (maior & 0xFFFFFFFFL);
+    }
+
+    private int conjunto(long chave) {
+        // Espalha os bits antes de aplicar a máscara (pares próximos não caem no mesmo conjunto)
+        long h = chave * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mascaraConjuntos;
+    }
+}
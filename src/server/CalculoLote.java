@@ -0,0 +1,76 @@
+package server;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// MDCs de um lote de pares (ESCRITA_LOTE) em paralelo.
+//
+// - Entrada e saída em arrays de int primitivos, sem objetos por par: o laço de cada trecho lê
+//   pares consecutivos da memória e o JIT compila ele inteiro com o MDC binário (CacheMdc.mdcBinario)
+//   embutido.
+// - Fork-join: o intervalo é dividido ao meio até ter no máximo LIMIAR pares; as metades rodam no
+//   ForkJoinPool comum (quem chama também calcula, em vez de só esperar).
+// - Lotes pequenos são calculados direto, sem criar tarefas.
+// - Não usa o CacheMdc: a consulta custa mais que o MDC binário e encheria o cache com pares de uma vez só.
+public final class CalculoLote {
+    // ~35 ns por par: trechos de algumas dezenas de microssegundos, bem acima do custo de uma tarefa
+    static final int LIMIAR = 2048;
+
+    private CalculoLote() {
+    }
+
+    // pares[0..2*quantidade) = x, y de cada par.
+    // Devolve x, y e mdc de cada par em sequência (o formato dos valores da REPLICACAO_LOTE).
+    public static int[] calcular(int[] pares, int quantidade) {
+        int[] resultado = new int[quantidade * 3];
+        if (quantidade <= LIMIAR) {
+            calcularTrecho(pares, resultado, 0, quantidade);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Trecho(pares, resultado, 0, quantidade));
+        }
+        return resultado;
+    }
+
+    // Só numa thread (comparação nas medições)
+    public static int[] calcularSequencial(int[] pares, int quantidade) {
+        int[] resultado = new int[quantidade * 3];
+        calcularTrecho(pares, resultado, 0, quantidade);
+        return resultado;
+    }
+
+    private static void calcularTrecho(int[] pares, int[] resultado, int inicio, int fim) {
+        for (int i = inicio; i < fim; i++) {
+            int x = pares[i * 2];
+            int y = pares[i * 2 + 1];
+            resultado[i * 3] = x;
+            resultado[i * 3 + 1] = y;
+            resultado[i * 3 + 2] = CacheMdc.mdc(x, y);
+        }
+    }
+
+    private static class Trecho extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] pares;
+        private final int[] resultado;
+        private final int inicio;
+        private final int fim;
+
+        Trecho(int[] pares, int[] resultado, int inicio, int fim) {
+            this.pares = pares;
+            this.resultado = resultado;
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        @Override
+        protected void compute() {
+            if (fim - inicio <= LIMIAR) {
+                calcularTrecho(pares, resultado, inicio, fim);
+                return;
+            }
+            int meio = (inicio + fim) >>> 1;
+            invokeAll(new Trecho(pares, resultado, inicio, meio), new Trecho(pares, resultado, meio, fim));
+        }
+    }
+}
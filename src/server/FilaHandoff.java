@@ -0,0 +1,131 @@
+package server;
+
+import network.Mensagem;
+import network.PoolConexoes;
+import network.TipoMensagem;
+import observabilidade.Log;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Hinted handoff: mensagens de replicação que um vizinho não confirmou.
+// Uma thread em segundo plano tenta entregá-las em ordem até o vizinho voltar,
+// sem segurar o lock nem a thread que pediu a replicação.
+class FilaHandoff {
+    private final int porta;
+    private final PoolConexoes pool;
+    private final long intervaloRetentativaMs;
+    private final LinkedBlockingQueue<Entrega> fila = new LinkedBlockingQueue<>();
+    // Mensagens ainda não confirmadas (inclui a que está sendo tentada agora)
+    private int pendentes = 0;
+    private Thread thread;
+    // O vizinho saiu do cluster: nada mais é entregue
+    private boolean descartada = false;
+
+    private static class Entrega {
+        final Mensagem mensagem;
+        final CompletableFuture<Void> entregue;
+
+        Entrega(Mensagem mensagem, CompletableFuture<Void> entregue) {
+            this.mensagem = mensagem;
+            this.entregue = entregue;
+        }
+    }
+
+    FilaHandoff(int porta, PoolConexoes pool, long intervaloRetentativaMs) {
+        this.porta = porta;
+        this.pool = pool;
+        this.intervaloRetentativaMs = intervaloRetentativaMs;
+    }
+
+    // Enfileira apenas se já houver mensagens atrasadas para este vizinho; senão devolve null
+    synchronized CompletableFuture<Void> adicionarSeAtrasado(Mensagem mensagem) {
+        if (pendentes == 0) return null;
+        CompletableFuture<Void> entregue = new CompletableFuture<>();
+        adicionar(mensagem, entregue);
+        return entregue;
+    }
+
+    synchronized void adicionar(Mensagem mensagem, CompletableFuture<Void> entregue) {
+        if (descartada) {
+            entregue.complete(null);
+            return;
+        }
+        pendentes++;
+        fila.add(new Entrega(mensagem, entregue));
+        if (thread == null) {
+            thread = new Thread(this::entregarPendentes, "handoff-" + porta);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    synchronized int tamanho() {
+        return pendentes;
+    }
+
+    private synchronized int confirmar() {
+        return --pendentes;
+    }
+
+    // Libera quem espera pelas entregas pendentes e encerra a thread
+    void descartar() {
+        Thread t;
+        synchronized (this) {
+            descartada = true;
+            t = thread;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+        liberarPendentes(null);
+    }
+
+    private void liberarPendentes(Entrega atual) {
+        if (atual != null) atual.entregue.complete(null);
+        Entrega entrega;
+        while ((entrega = fila.poll()) != null) entrega.entregue.complete(null);
+        synchronized (this) {
+            pendentes = 0;
+        }
+    }
+
+    private void entregarPendentes() {
+        Entrega entrega = null;
+        while (true) {
+            try {
+                entrega = fila.take();
+                // Só passa para a próxima quando o vizinho confirmar esta
+                while (!tentar(entrega.mensagem)) {
+                    Log.aviso("Vizinho " + porta + " continua OFF. " + tamanho() + " replicações aguardando.");
+                    Thread.sleep(intervaloRetentativaMs);
+                }
+                entrega.entregue.complete(null);
+                entrega = null;
+                if (confirmar() == 0) {
+                    Log.info("Vizinho " + porta + " sincronizado novamente.");
+                }
+            } catch (InterruptedException e) {
+                liberarPendentes(entrega);
+                return;
+            }
+        }
+    }
+
+    private boolean tentar(Mensagem mensagem) throws InterruptedException {
+        CompletableFuture<Mensagem> resposta = pool.enviar(porta, mensagem);
+        while (true) {
+            try {
+                return resposta.get(intervaloRetentativaMs, TimeUnit.MILLISECONDS).tipo == TipoMensagem.ACK_REPLICACAO;
+            } catch (TimeoutException e) {
+                // Vizinho lento: continua esperando a mesma resposta em vez de reenviar (evitaria linha duplicada)
+                Log.aviso("Vizinho " + porta + " ainda não respondeu a replicação...");
+            } catch (ExecutionException e) {
+                return false;
+            }
+        }
+    }
+}
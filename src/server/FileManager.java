@@ -1,38 +1,148 @@
 package server;
 
+import config.Configuracao;
+import observabilidade.Log;
+
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 
+// Fachada de acesso ao arquivo de dados do servidor.
+// A gravação de fato fica a cargo do motor de armazenamento, configurável por:
+//   -Darmazenamento.tipo=ARQUIVO|SEGMENTADO       (padrão ARQUIVO: um único arquivo texto)
+//   -Darmazenamento.fsync=SEMPRE|LOTE|INTERVALO   (padrão INTERVALO)
+//   -Darmazenamento.intervaloFsyncMs=1000
+//   -Darmazenamento.maxLinhasSegmento=100000      (SEGMENTADO)
+//   -Darmazenamento.maxIdadeSegmentoMs=3600000    (SEGMENTADO)
+//   -Dantientropia.linhasPorFolha=256             (linhas por folha da árvore de Merkle)
 public class FileManager {
-    private File file;
+    // Linhas lidas por vez ao reler o arquivo (montagem da árvore e reparo)
+    private static final int LINHAS_POR_LEITURA = 65536;
+
+    private final Armazenamento armazenamento;
+    // Árvore de Merkle das linhas; só existe depois da primeira chamada a resumo()
+    private ArvoreMerkle resumo;
 
     public FileManager(String filename) {
-        this.file = new File(filename);
+        PoliticaFsync politica = PoliticaFsync.configurada();
+        long intervaloFsyncMs = Configuracao.longo("armazenamento.intervaloFsyncMs", 1000);
         try {
-            if (!file.exists()) {
-                file.createNewFile();
+            if (Configuracao.texto("armazenamento.tipo", "ARQUIVO").equalsIgnoreCase("SEGMENTADO")) {
+                // dados_server_9001.txt -> diretório dados_server_9001/
+                this.armazenamento = new ArmazenamentoSegmentado(diretorioSegmentos(filename), filename,
+                        politica, intervaloFsyncMs,
+                        Configuracao.longo("armazenamento.maxLinhasSegmento", 100000),
+                        Configuracao.longo("armazenamento.maxIdadeSegmentoMs", 60 * 60 * 1000));
+            } else {
+                this.armazenamento = new ArmazenamentoArquivo(filename, politica, intervaloFsyncMs);
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException("Não foi possível abrir o arquivo " + filename, e);
         }
     }
 
     // Sincronização para exclusão mútua na escrita local
     // synchronized impede de dois arquivos serem escritos ao mesmo tempo
-    public synchronized void escreverLinha(String texto) {
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)))) {
-            out.println(texto);
-        } catch (IOException e) {
-            e.printStackTrace();
+    public synchronized void escreverLinha(String texto) throws IOException {
+        escreverLinhas(Collections.singletonList(texto));
+    }
+
+    // Grava várias linhas de uma vez (usado na gravação em grupo).
+    // Se falhar, nenhuma linha fica gravada e quem chamou não pode confirmar a escrita.
+    public synchronized void escreverLinhas(List<String> textos) throws IOException {
+        armazenamento.escrever(textos);
+        if (resumo != null) resumo.acrescentar(textos);
+    }
+
+    // Não relê o arquivo: a contagem é mantida a cada escrita
+    public long contarLinhas() {
+        return armazenamento.linhas();
+    }
+
+    // Lê linhas a partir da posição 'inicio' (a primeira linha é 0).
+    // Uma lista vazia é o fim do arquivo; erro de leitura vira exceção, não "não há mais linhas".
+    public List<String> lerLinhas(long inicio, int quantidade) throws IOException {
+        return armazenamento.ler(inicio, quantidade);
+    }
+
+    // Árvore de Merkle das linhas (anti-entropia). Na primeira chamada relê o arquivo inteiro para montá-la;
+    // depois ela é atualizada a cada gravação.
+    public synchronized ArvoreMerkle resumo() throws IOException {
+        if (resumo == null) {
+            ArvoreMerkle arvore = new ArvoreMerkle(Configuracao.inteiro("antientropia.linhasPorFolha", 256));
+            acrescentarLocais(arvore, 0, contarLinhas());
+            resumo = arvore;
+        }
+        return resumo;
+    }
+
+    // Reparo da anti-entropia: troca as linhas de cada trecho (primeira linha -> linhas recebidas) e, com
+    // total >= 0, deixa o arquivo com 'total' linhas. O armazenamento só acrescenta no fim, então o arquivo
+    // é cortado no primeiro trecho e regravado dali em diante: as linhas locais que não mudaram são relidas
+    // antes (só as linhas dos trechos vieram pela rede).
+    public synchronized void reparar(NavigableMap<Long, List<String>> trechos, long total) throws IOException {
+        long atual = armazenamento.linhas();
+        long fim = total >= 0 ? total : atual;
+        long inicio = trechos.isEmpty() ? Math.min(atual, fim) : Math.min(trechos.firstKey(), Math.min(atual, fim));
+        if (inicio >= fim && fim == atual) return;
+
+        List<String> novas = new ArrayList<>();
+        long proxima = inicio;
+        for (Map.Entry<Long, List<String>> trecho : trechos.entrySet()) {
+            copiarLocais(proxima, Math.min(trecho.getKey(), fim), novas);
+            for (String linha : trecho.getValue()) {
+                if (inicio + novas.size() >= fim) break;
+                novas.add(linha);
+            }
+            proxima = inicio + novas.size();
+        }
+        copiarLocais(proxima, fim, novas);
+        if (inicio + novas.size() != fim) {
+            throw new IOException("Reparo incompleto: faltam as linhas " + (inicio + novas.size()) + " a " + fim);
+        }
+
+        armazenamento.truncar(inicio);
+        armazenamento.escrever(novas);
+        if (resumo != null) {
+            // A folha em que o corte caiu é refeita com as linhas de antes do corte
+            resumo.truncar(inicio);
+            acrescentarLocais(resumo, resumo.folhas() * resumo.linhasPorFolha(), inicio);
+            resumo.acrescentar(novas);
+        }
+    }
+
+    // Linhas locais [inicio, fim) em 'destino' (só as que existem)
+    private void copiarLocais(long inicio, long fim, List<String> destino) throws IOException {
+        for (long linha = inicio; linha < fim; ) {
+            List<String> lidas = armazenamento.ler(linha, (int) Math.min(LINHAS_POR_LEITURA, fim - linha));
+            if (lidas.isEmpty()) return;
+            destino.addAll(lidas);
+            linha += lidas.size();
+        }
+    }
+
+    private void acrescentarLocais(ArvoreMerkle arvore, long inicio, long fim) throws IOException {
+        for (long linha = inicio; linha < fim; ) {
+            List<String> lidas = lerLinhas(linha, (int) Math.min(LINHAS_POR_LEITURA, fim - linha));
+            if (lidas.isEmpty()) return;
+            arvore.acrescentar(lidas);
+            linha += lidas.size();
         }
     }
 
-    public synchronized int contarLinhas() {
-        int linhas = 0;
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            while (reader.readLine() != null) linhas++;
+    public static String diretorioSegmentos(String filename) {
+        return filename.endsWith(".txt") ? filename.substring(0, filename.length() - 4) : filename + "_segmentos";
+    }
+
+    // Grava o que estiver pendente no disco e fecha o arquivo
+    public void fechar() {
+        try {
+            armazenamento.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.erro("Erro ao fechar o arquivo de dados: " + e.getMessage());
         }
-        return linhas;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,37 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Leitura sequencial de linhas, venha ela de um arquivo texto, de um segmento selado
+// ou de vários segmentos em sequência
+public interface FonteLinhas extends Closeable {
+
+    // Próxima linha, ou null quando acabar
+    String proxima() throws IOException;
+
+    // Lê um arquivo texto; 'limite' < 0 lê até o fim
+    static FonteLinhas deArquivoTexto(Path arquivo, long limite) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8);
+        return new FonteLinhas() {
+            private long lidas = 0;
+
+            @Override
+            public String proxima() throws IOException {
+                if (limite >= 0 && lidas >= limite) return null;
+                String linha = reader.readLine();
+                if (linha != null) lidas++;
+                return linha;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,242 @@
+package server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Formato dos segmentos selados (arquivos ".sel").
+//
+//   cabeçalho (fora da compressão): 'S' 'L' | formato (1 byte) | quantidade de linhas (8 bytes)
+//   corpo (GZIP):
+//     formato REGISTROS: para cada linha, x, y e mdc como varint (1 a 5 bytes cada, em vez da frase inteira)
+//     formato TEXTO:     para cada linha, tamanho em varint + bytes UTF-8 (usado se alguma linha
+//                        não estiver no formato "O MDC entre X e Y é M")
+//   índice (formato com COM_INDICE): o corpo é uma sequência de membros GZIP independentes de
+//     LINHAS_POR_BLOCO linhas cada, e depois dele vem o offset de cada membro (8 bytes cada),
+//     LINHAS_POR_BLOCO (4 bytes) e a quantidade de membros (4 bytes). Ler a partir da linha N começa
+//     no membro dela, em vez de descomprimir o segmento desde o início (SINCRONIZAR lê em trechos).
+//     Os membros juntos continuam sendo um GZIP válido, então a leitura sequencial não muda; os
+//     selados antigos, sem índice, são lidos do início.
+final class FormatoSelado {
+    private static final byte MAGICO_1 = 'S';
+    private static final byte MAGICO_2 = 'L';
+    private static final byte REGISTROS = 1;
+    private static final byte TEXTO = 2;
+    private static final byte COM_INDICE = 0x10;
+    private static final int TAMANHO_CABECALHO = 11;
+    private static final int LINHAS_POR_BLOCO = 4096;
+
+    private FormatoSelado() {
+    }
+
+    // Grava as linhas da fonte em 'destino' (via arquivo temporário + rename). Devolve a quantidade de linhas.
+    // A fonte é aberta de novo se for preciso cair para o formato TEXTO.
+    static long selar(Callable<FonteLinhas> abrirFonte, Path destino) throws IOException {
+        Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+
+        long quantidade = gravar(abrirFonte, temporario, REGISTROS);
+        if (quantidade < 0) {
+            quantidade = gravar(abrirFonte, temporario, TEXTO);
+        }
+
+        Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return quantidade;
+    }
+
+    // Lê só o cabeçalho
+    static long lerQuantidade(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+            while (cabecalho.hasRemaining() && canal.read(cabecalho) > 0) {
+                // continua lendo
+            }
+            cabecalho.flip();
+            if (cabecalho.remaining() < TAMANHO_CABECALHO
+                    || cabecalho.get() != MAGICO_1 || cabecalho.get() != MAGICO_2) {
+                throw new IOException("Segmento selado inválido: " + arquivo);
+            }
+            cabecalho.get(); // formato
+            return cabecalho.getLong();
+        }
+    }
+
+    static FonteLinhas abrir(Path arquivo) throws IOException {
+        return abrir(arquivo, 0);
+    }
+
+    // Leitura a partir da linha 'inicio' do segmento (0 = a primeira)
+    static FonteLinhas abrir(Path arquivo, long inicio) throws IOException {
+        FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ);
+        try {
+            ByteBuffer cabecalho = lerBytes(canal, 0, TAMANHO_CABECALHO);
+            if (cabecalho.get() != MAGICO_1 || cabecalho.get() != MAGICO_2) {
+                throw new IOException("Segmento selado inválido: " + arquivo);
+            }
+            byte formato = cabecalho.get();
+            long quantidade = cabecalho.getLong();
+
+            // Começo do membro GZIP que contém a linha 'inicio'
+            long posicao = TAMANHO_CABECALHO;
+            long primeira = 0;
+            if ((formato & COM_INDICE) != 0 && inicio > 0 && inicio < quantidade) {
+                long fimIndice = canal.size() - 2 * Integer.BYTES;
+                ByteBuffer rodape = lerBytes(canal, fimIndice, 2 * Integer.BYTES);
+                int linhasPorBloco = rodape.getInt();
+                int blocos = rodape.getInt();
+                int bloco = (int) Math.min(inicio / linhasPorBloco, blocos - 1);
+                posicao = lerBytes(canal, fimIndice - (long) (blocos - bloco) * Long.BYTES, Long.BYTES).getLong();
+                primeira = (long) bloco * linhasPorBloco;
+            }
+            canal.position(posicao);
+            InputStream in = new BufferedInputStream(new GZIPInputStream(Channels.newInputStream(canal), 16 * 1024));
+
+            FonteLinhas fonte = fonte(in, (byte) (formato & ~COM_INDICE), primeira, quantidade);
+            for (long l = primeira; l < inicio; l++) {
+                if (fonte.proxima() == null) break;
+            }
+            return fonte;
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    private static FonteLinhas fonte(InputStream in, byte formato, long primeira, long quantidade) {
+        return new FonteLinhas() {
+            private long lidas = primeira;
+
+            @Override
+            public String proxima() throws IOException {
+                if (lidas >= quantidade) return null;
+                lidas++;
+                if (formato == REGISTROS) {
+                    int x = (int) lerVarint(in);
+                    int y = (int) lerVarint(in);
+                    int mdc = (int) lerVarint(in);
+                    return Registro.formatar(x, y, mdc);
+                }
+                byte[] bytes = new byte[(int) lerVarint(in)];
+                new DataInputStream(in).readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    // Devolve -1 se o formato REGISTROS foi pedido e alguma linha não pôde ser convertida
+    private static long gravar(Callable<FonteLinhas> abrirFonte, Path destino, byte formato) throws IOException {
+        long quantidade = 0;
+        List<Long> blocos = new ArrayList<>();
+        try (FileOutputStream arquivoOut = new FileOutputStream(destino.toFile());
+             FonteLinhas fonte = abrirFonte.call()) {
+            arquivoOut.write(new byte[TAMANHO_CABECALHO]); // preenchido no fim
+            FileChannel canal = arquivoOut.getChannel();
+
+            OutputStream out = null;
+            String linha;
+            while ((linha = fonte.proxima()) != null) {
+                if (quantidade % LINHAS_POR_BLOCO == 0) {
+                    // Fecha o membro GZIP anterior (o arquivo continua aberto) e começa outro
+                    if (out != null) out.close();
+                    blocos.add(canal.position());
+                    out = new BufferedOutputStream(new GZIPOutputStream(semFechar(arquivoOut), 16 * 1024), 16 * 1024);
+                }
+                if (formato == REGISTROS) {
+                    Registro registro = Registro.deTexto(linha);
+                    if (registro == null) {
+                        out.close();
+                        return -1;
+                    }
+                    escreverVarint(out, registro.x & 0xFFFFFFFFL);
+                    escreverVarint(out, registro.y & 0xFFFFFFFFL);
+                    escreverVarint(out, registro.mdc & 0xFFFFFFFFL);
+                } else {
+                    byte[] bytes = linha.getBytes(StandardCharsets.UTF_8);
+                    escreverVarint(out, bytes.length);
+                    out.write(bytes);
+                }
+                quantidade++;
+            }
+            if (out != null) out.close();
+
+            DataOutputStream indice = new DataOutputStream(new BufferedOutputStream(semFechar(arquivoOut)));
+            for (long offset : blocos) indice.writeLong(offset);
+            indice.writeInt(LINHAS_POR_BLOCO);
+            indice.writeInt(blocos.size());
+            indice.close();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+
+        // Cabeçalho com a quantidade final
+        try (FileChannel canal = FileChannel.open(destino, StandardOpenOption.WRITE)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+            cabecalho.put(MAGICO_1).put(MAGICO_2).put((byte) (formato | COM_INDICE)).putLong(quantidade).flip();
+            while (cabecalho.hasRemaining()) {
+                canal.write(cabecalho, cabecalho.position());
+            }
+            canal.force(true);
+        }
+        return quantidade;
+    }
+
+    // Fechar o stream só descarrega: o arquivo continua aberto para o próximo membro GZIP
+    private static OutputStream semFechar(OutputStream arquivo) {
+        return new FilterOutputStream(arquivo) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    private static ByteBuffer lerBytes(FileChannel canal, long posicao, int tamanho) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(tamanho);
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicao + buffer.position()) < 0) throw new EOFException("Segmento selado truncado");
+        }
+        return buffer.flip();
+    }
+
+    private static void escreverVarint(OutputStream out, long valor) throws IOException {
+        while ((valor & ~0x7FL) != 0) {
+            out.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        out.write((int) valor);
+    }
+
+    private static long lerVarint(InputStream in) throws IOException {
+        long valor = 0;
+        int deslocamento = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Segmento selado truncado");
+            valor |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) return valor;
+            deslocamento += 7;
+        }
+    }
+}
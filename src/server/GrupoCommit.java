@@ -0,0 +1,171 @@
+package server;
+
+import config.Cluster;
+import network.Mensagem;
+import network.PoolConexoes;
+import network.TipoMensagem;
+import observabilidade.Histograma;
+import observabilidade.Log;
+import observabilidade.Metricas;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Gravação em grupo (group commit).
+// Os resultados já calculados entram numa fila; uma única thread pega tudo o que estiver acumulado,
+// pede o lock ao LoadBalancer UMA vez, grava todas as linhas, replica o lote inteiro numa única
+// mensagem e libera o lock. Enquanto espera o lock, a fila continua enchendo, então o próximo
+// lote tende a ser maior justamente quando o sistema está mais carregado.
+// A ordem total dos arquivos continua garantida pelo lock: cada lote é gravado inteiro, na mesma
+// ordem, em todos os servidores.
+public class GrupoCommit {
+    private final int portaLb = Cluster.portaLoadBalancer();
+    private final int minhaPorta;
+
+    private final FileManager fileManager;
+    private final Replicador replicador;
+    private final VisaoCluster visao;
+    private final RequisicoesAplicadas aplicadas;
+    private final PoolConexoes pool;
+    private final int maxLote;
+    private final BlockingQueue<ResultadoPendente> fila = new LinkedBlockingQueue<>();
+    private final LongAdder lotes;
+    private final LongAdder linhasGravadas;
+    private final Histograma esperaLock;
+    private final Histograma posseLock;
+
+    // Resultado calculado aguardando ser gravado
+    private static class ResultadoPendente {
+        final long idReq;
+        final int x;
+        final int y;
+        final int mdc;
+        final CompletableFuture<Void> concluido = new CompletableFuture<>();
+
+        ResultadoPendente(long idReq, int x, int y, int mdc) {
+            this.idReq = idReq;
+            this.x = x;
+            this.y = y;
+            this.mdc = mdc;
+        }
+    }
+
+    public GrupoCommit(int minhaPorta, FileManager fileManager, Replicador replicador, VisaoCluster visao,
+                       RequisicoesAplicadas aplicadas, PoolConexoes pool, int maxLote, Metricas metricas) {
+        this.minhaPorta = minhaPorta;
+        this.fileManager = fileManager;
+        this.replicador = replicador;
+        this.visao = visao;
+        this.aplicadas = aplicadas;
+        this.pool = pool;
+        this.maxLote = Math.max(1, maxLote);
+        this.lotes = metricas.contador("grupoCommit.lotes");
+        this.linhasGravadas = metricas.contador("grupoCommit.linhas");
+        // Os mesmos do ServerWorker: o lock é pedido daqui no modo LOTE
+        this.esperaLock = metricas.histograma("lock.espera");
+        this.posseLock = metricas.histograma("lock.posse");
+        metricas.medidor("grupoCommit.fila", fila::size);
+    }
+
+    public void iniciar() {
+        Thread t = new Thread(this::loopCommit, "grupo-commit");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Coloca um resultado na fila; o Future completa quando o lote dele for gravado e replicado
+    public CompletableFuture<Void> submeter(long idReq, int x, int y, int mdc) {
+        ResultadoPendente pendente = new ResultadoPendente(idReq, x, y, mdc);
+        fila.add(pendente);
+        return pendente.concluido;
+    }
+
+    private void loopCommit() {
+        List<ResultadoPendente> lote = new ArrayList<>();
+        while (true) {
+            try {
+                // Espera pelo menos um resultado e pega o que mais estiver acumulado
+                lote.add(fila.take());
+                fila.drainTo(lote, maxLote - 1);
+
+                gravarLote(lote);
+                for (ResultadoPendente p : lote) p.concluido.complete(null);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // O LoadBalancer vai retransmitir o que não foi confirmado
+                Log.erro("Erro ao gravar lote de " + lote.size() + " resultados: " + e.getMessage());
+                for (ResultadoPendente p : lote) p.concluido.completeExceptionally(e);
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    private void gravarLote(List<ResultadoPendente> lote) throws Exception {
+        Log.debug(() -> "Lote com " + lote.size() + " resultados. Solicitando LOCK ao LoadBalancer...");
+        long pedidoLock = System.nanoTime();
+        Mensagem response = LockLoadBalancer.adquirir(pool, portaLb, minhaPorta);
+        long lockAdquirido = System.nanoTime();
+        esperaLock.registrar(lockAdquirido - pedidoLock);
+        if (response.tipo != TipoMensagem.GRANTED) {
+            throw new IOException("LoadBalancer não concedeu o lock: " + response);
+        }
+
+        try {
+            // Quem entrou no cluster antes deste lock também precisa receber o lote
+            visao.garantirVersao(response.valor);
+
+            List<String> linhas = new ArrayList<>(lote.size());
+            // x, y e mdc de cada linha (o vizinho não precisa recalcular) e o ID da requisição
+            int[] valores = new int[lote.size() * 3];
+            long[] idsLinhas = new long[lote.size()];
+            int n = 0;
+            for (ResultadoPendente p : lote) {
+                // Retransmissão de algo já gravado (com o lock, quem gravou antes já replicou para cá)
+                if (!aplicadas.registrar(p.idReq)) continue;
+                linhas.add(Registro.formatar(p.x, p.y, p.mdc));
+                valores[n * 3] = p.x;
+                valores[n * 3 + 1] = p.y;
+                valores[n * 3 + 2] = p.mdc;
+                idsLinhas[n++] = p.idReq;
+            }
+
+            if (n > 0) {
+                // Escrita Local (uma única abertura do arquivo para o lote todo)
+                try {
+                    fileManager.escreverLinhas(linhas);
+                } catch (IOException e) {
+                    // Nada foi gravado: as retransmissões do LoadBalancer precisam gravar de novo
+                    for (int i = 0; i < n; i++) aplicadas.esquecer(idsLinhas[i]);
+                    throw e;
+                }
+
+                // Uma rodada de replicação para o lote inteiro
+                replicador.replicarComConfirmacao(Mensagem.replicacaoLote(valores, idsLinhas, n));
+            }
+            lotes.increment();
+            linhasGravadas.add(n);
+        } finally {
+            LockLoadBalancer.liberar(pool, portaLb, minhaPorta);
+            posseLock.registrar(System.nanoTime() - lockAdquirido);
+        }
+        Log.debug(() -> "Lote gravado e replicado. LOCK liberado.");
+
+        // Uma única confirmação com todos os IDs (inclusive os que já estavam gravados)
+        long[] ids = new long[lote.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = lote.get(i).idReq;
+        try {
+            pool.notificar(portaLb, Mensagem.confirmacao(ids, ids.length));
+        } catch (IOException e) {
+            Log.erro("Erro ao enviar confirmação ao LoadBalancer: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package server;
+
+import config.Configuracao;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Limite de ESCRITAs em processamento ao mesmo tempo neste servidor, ajustado sozinho (AIMD).
+// - Enquanto as escritas terminam abaixo da latência alvo, o limite sobe 1 a cada 'limite'
+//   escritas concluídas (cresce devagar, como a janela do TCP).
+// - Uma escrita acima da latência alvo corta o limite em 10% (no máximo uma vez por intervalo
+//   alvo, para uma rajada de escritas lentas não derrubar o limite de uma vez).
+// Acima do limite a ESCRITA é recusada e volta para o LoadBalancer, que a manda para outro servidor.
+// O limite atual vai para o LoadBalancer no HEARTBEAT e no REJEITADO.
+//
+//   -Dconcorrencia.limiteInicial=64  -Dconcorrencia.limiteMin=4  -Dconcorrencia.limiteMax=1024
+//   -Dconcorrencia.latenciaAlvoMs=500  -Dconcorrencia.tentarEmMs=50
+public class LimiteConcorrencia {
+    private static final double FATOR_REDUCAO = 0.9;
+
+    private final int minimo = Math.max(1, Configuracao.inteiro("concorrencia.limiteMin", 4));
+    private final int maximo = Math.max(minimo, Configuracao.inteiro("concorrencia.limiteMax", 1024));
+    private final long latenciaAlvoNanos = Configuracao.longo("concorrencia.latenciaAlvoMs", 500) * 1_000_000;
+    private final long tentarEmMs = Configuracao.longo("concorrencia.tentarEmMs", 50);
+
+    private final AtomicInteger emAndamento = new AtomicInteger();
+    private volatile int limite = Math.max(minimo, Math.min(maximo, Configuracao.inteiro("concorrencia.limiteInicial", 64)));
+    // Protegidos por 'this'
+    private int concluidasNoLimite = 0;
+    private long ultimaReducao = System.nanoTime();
+
+    // Reserva uma vaga; false se o servidor já está no limite
+    public boolean tentarAdquirir() {
+        while (true) {
+            int atual = emAndamento.get();
+            if (atual >= limite) return false;
+            if (emAndamento.compareAndSet(atual, atual + 1)) return true;
+        }
+    }
+
+    // Devolve a vaga e ajusta o limite com a latência da escrita
+    public void liberar(long latenciaNanos) {
+        emAndamento.decrementAndGet();
+        synchronized (this) {
+            if (latenciaNanos > latenciaAlvoNanos) {
+                long agora = System.nanoTime();
+                if (agora - ultimaReducao >= latenciaAlvoNanos) {
+                    limite = Math.max(minimo, (int) (limite * FATOR_REDUCAO));
+                    ultimaReducao = agora;
+                    concluidasNoLimite = 0;
+                }
+            } else if (++concluidasNoLimite >= limite) {
+                limite = Math.min(maximo, limite + 1);
+                concluidasNoLimite = 0;
+            }
+        }
+    }
+
+    public int limite() {
+        return limite;
+    }
+
+    // Maior limite possível (escritas em andamento nunca passam disso)
+    public int maximo() {
+        return maximo;
+    }
+
+    public int emAndamento() {
+        return emAndamento.get();
+    }
+
+    // Quanto o LoadBalancer deve esperar antes de mandar de novo uma ESCRITA recusada
+    public long tentarEmMs() {
+        return tentarEmMs;
+    }
+}
@@ -0,0 +1,31 @@
+package server;
+
+import network.Mensagem;
+import network.PoolConexoes;
+import network.TipoMensagem;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+// Pedido do lock de escrita ao LoadBalancer.
+// A fila de espera do lock é limitada: cheia, o LoadBalancer responde REJEITADO com o tempo de espera
+// e o pedido é repetido depois dele. Devolve a resposta final (GRANTED, ou ERRO).
+// Pedido e liberação levam a porta do servidor: o LoadBalancer libera o lock (e descarta os pedidos na fila)
+// de um servidor que sai do cluster.
+final class LockLoadBalancer {
+
+    private LockLoadBalancer() {
+    }
+
+    static Mensagem adquirir(PoolConexoes pool, int portaLb, int minhaPorta) throws ExecutionException, InterruptedException {
+        while (true) {
+            Mensagem resposta = pool.enviar(portaLb, Mensagem.comPorta(TipoMensagem.ACQUIRE_LOCK, minhaPorta, 0)).get();
+            if (resposta.tipo != TipoMensagem.REJEITADO) return resposta;
+            Thread.sleep(Math.max(1, resposta.valor));
+        }
+    }
+
+    static void liberar(PoolConexoes pool, int portaLb, int minhaPorta) throws IOException {
+        pool.notificar(portaLb, Mensagem.comPorta(TipoMensagem.RELEASE_LOCK, minhaPorta, 0));
+    }
+}
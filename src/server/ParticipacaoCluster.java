@@ -0,0 +1,236 @@
+package server;
+
+import config.Cluster;
+import network.Mensagem;
+import network.PoolConexoes;
+import network.TipoMensagem;
+import observabilidade.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Participação deste servidor no cluster:
+//  - entrar(): registra no LoadBalancer e copia dos vizinhos as linhas que faltam aqui (transferência de estado)
+//  - HEARTBEAT periódico; a resposta traz a lista de membros atualizada. Se este servidor não estiver
+//    nela, o LoadBalancer o removeu (ficou sem HEARTBEAT): ele entra de novo e copia o que perdeu
+//  - sair(): avisa o LoadBalancer ao encerrar
+//
+// Como a entrada não perde nenhuma escrita:
+//  - UNITARIA/LOTE: o servidor pega o lock do LoadBalancer, copia tudo o que o vizinho mais adiantado
+//    tem e se registra antes de soltar o lock. Com o lock na mão ninguém grava, e quem pegar o lock
+//    depois já recebe no GRANTED a versão da lista com este servidor incluído.
+//  - SEQUENCIADOR: o servidor se registra primeiro (passa a receber as replicações, que esperam no
+//    BufferReordenacao) e o LoadBalancer informa a sequência S daquele momento. As escritas depois de S
+//    chegam pela replicação; as linhas até S são copiadas dos vizinhos. Depois disso avisa PRONTO e
+//    começa a receber ESCRITAs.
+public class ParticipacaoCluster {
+    private static final int LINHAS_POR_TRECHO = 1000;
+    private static final long TIMEOUT_MS = 5000;
+
+    private final int minhaPorta;
+    private final PoolConexoes pool;
+    private final VisaoCluster visao;
+    private final FileManager fileManager;
+    // Só existe no modo SEQUENCIADOR (null nos outros modos)
+    private final BufferReordenacao bufferReordenacao;
+    // O limite atual de ESCRITAs simultâneas vai no HEARTBEAT (o LoadBalancer roteia com ele)
+    private final LimiteConcorrencia limite;
+    private final int portaLb = Cluster.portaLoadBalancer();
+    private final long intervaloHeartbeatMs = Cluster.intervaloHeartbeatMs();
+    // A entrada de novo roda na thread do HEARTBEAT, que fica parada enquanto isso
+    private final ScheduledExecutorService agendador;
+    private final AtomicBoolean reentrando = new AtomicBoolean();
+    private volatile boolean saiu;
+
+    public ParticipacaoCluster(int minhaPorta, PoolConexoes pool, VisaoCluster visao, FileManager fileManager,
+                               BufferReordenacao bufferReordenacao, LimiteConcorrencia limite) {
+        this.minhaPorta = minhaPorta;
+        this.pool = pool;
+        this.visao = visao;
+        this.fileManager = fileManager;
+        this.bufferReordenacao = bufferReordenacao;
+        this.limite = limite;
+        this.agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "heartbeat-" + minhaPorta);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Bloqueia até conseguir entrar (o LoadBalancer pode ainda não estar no ar) e depois inicia os HEARTBEATs
+    public void entrar() {
+        if (!entrarNoCluster()) return;
+        agendador.scheduleWithFixedDelay(this::enviarHeartbeat, intervaloHeartbeatMs, intervaloHeartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Devolve false se a thread foi interrompida antes de conseguir
+    private boolean entrarNoCluster() {
+        while (true) {
+            try {
+                if (bufferReordenacao != null) {
+                    entrarSequenciador();
+                } else {
+                    entrarComLock();
+                }
+                break;
+            } catch (Exception e) {
+                Log.aviso("Não foi possível entrar no cluster (" + e.getMessage() + "). Tentando novamente...");
+                try {
+                    Thread.sleep(intervaloHeartbeatMs);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        Log.info("Servidor " + minhaPorta + " no cluster com " + fileManager.contarLinhas()
+                + " linhas. Vizinhos: " + visao.vizinhos());
+        return true;
+    }
+
+    public void sair() {
+        saiu = true;
+        try {
+            pool.notificar(portaLb, Mensagem.comPorta(TipoMensagem.SAIR, minhaPorta, 0));
+        } catch (Exception e) {
+            // Sem o aviso, o LoadBalancer remove o servidor quando os HEARTBEATs pararem
+        }
+    }
+
+    private void entrarComLock() throws Exception {
+        Mensagem grant = LockLoadBalancer.adquirir(pool, portaLb, minhaPorta);
+        if (grant.tipo != TipoMensagem.GRANTED) throw new IllegalStateException("lock negado: " + grant);
+        try {
+            visao.atualizar(consultar(portaLb, Mensagem.simples(TipoMensagem.MEMBROS)));
+
+            // Com o lock ninguém está gravando: o vizinho com mais linhas tem o arquivo completo
+            int fonte = -1;
+            long alvo = fileManager.contarLinhas();
+            for (int vizinho : visao.vizinhos()) {
+                try {
+                    long linhas = consultar(vizinho, Mensagem.leitura(Mensagem.LEITURA_PADRAO)).valor;
+                    if (linhas > alvo) {
+                        alvo = linhas;
+                        fonte = vizinho;
+                    }
+                } catch (Exception e) {
+                    // Vizinho fora do ar: copia de outro
+                }
+            }
+
+            if (fonte >= 0) {
+                long inicio = fileManager.contarLinhas();
+                Log.info("Copiando " + (alvo - inicio) + " linhas do servidor " + fonte + "...");
+                while (fileManager.contarLinhas() < alvo) {
+                    long proxima = fileManager.contarLinhas();
+                    List<String> linhas = pedirTrecho(fonte, proxima, (int) Math.min(LINHAS_POR_TRECHO, alvo - proxima));
+                    if (linhas.isEmpty()) throw new IllegalStateException("servidor " + fonte + " não enviou as linhas");
+                    fileManager.escreverLinhas(linhas);
+                }
+            }
+
+            visao.atualizar(consultar(portaLb, Mensagem.comPorta(TipoMensagem.REGISTRAR, minhaPorta, alvo)));
+        } finally {
+            LockLoadBalancer.liberar(pool, portaLb, minhaPorta);
+        }
+    }
+
+    private void entrarSequenciador() throws Exception {
+        Mensagem registro = Mensagem.comPorta(TipoMensagem.REGISTRAR, minhaPorta, bufferReordenacao.maiorRecebida());
+        registro.opcao = 1; // ainda vai sincronizar
+        Mensagem membros = consultar(portaLb, registro);
+        visao.atualizar(membros);
+
+        // Escritas depois de 'alvo' chegam pela replicação; as anteriores são copiadas dos vizinhos
+        long alvo = membros.seq;
+        int tentativasSemAvanco = 0;
+        while (bufferReordenacao.ultimaAplicada() < alvo && !visao.vizinhos().isEmpty()) {
+            long proxima = bufferReordenacao.ultimaAplicada();
+            int quantidade = (int) Math.min(LINHAS_POR_TRECHO, alvo - proxima);
+
+            boolean avancou = false;
+            for (int vizinho : visao.vizinhos()) {
+                try {
+                    List<String> linhas = pedirTrecho(vizinho, proxima, quantidade);
+                    if (!linhas.isEmpty()) {
+                        // Linha N do arquivo = sequência N + 1 (as linhas começam em 0)
+                        bufferReordenacao.receberTrecho(proxima + 1, linhas);
+                        avancou = true;
+                        break;
+                    }
+                } catch (Exception e) {
+                    // Tenta o próximo vizinho
+                }
+            }
+
+            if (!avancou) {
+                // Os vizinhos ainda não gravaram essas sequências: espera um pouco
+                if (++tentativasSemAvanco % 50 == 0) {
+                    Log.aviso("Aguardando os vizinhos gravarem a sequência " + (proxima + 1) + " para copiar...");
+                }
+                Thread.sleep(100);
+            }
+        }
+
+        consultar(portaLb, Mensagem.comPorta(TipoMensagem.PRONTO, minhaPorta, 0));
+    }
+
+    // Linhas [inicio, inicio + quantidade) do arquivo do vizinho (pode vir menos se ele não tiver todas)
+    private List<String> pedirTrecho(int porta, long inicio, int quantidade) throws Exception {
+        Mensagem pedido = Mensagem.comValor(TipoMensagem.SINCRONIZAR, inicio);
+        pedido.quantidade = quantidade;
+        Mensagem trecho = consultar(porta, pedido);
+        if (trecho.tipo != TipoMensagem.TRECHO) throw new IllegalStateException(trecho.toString());
+
+        List<String> linhas = new ArrayList<>(trecho.quantidade);
+        for (int i = 0; i < trecho.quantidade; i++) {
+            linhas.add(Registro.formatar(trecho.valores[i * 3], trecho.valores[i * 3 + 1], trecho.valores[i * 3 + 2]));
+        }
+        return linhas;
+    }
+
+    private Mensagem consultar(int porta, Mensagem pedido) throws Exception {
+        Mensagem resposta = pool.enviar(porta, pedido).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (resposta.tipo == TipoMensagem.ERRO) throw new IllegalStateException(resposta.texto);
+        return resposta;
+    }
+
+    private void enviarHeartbeat() {
+        // O LoadBalancer usa o valor para continuar a numeração se ele reiniciar (modo SEQUENCIADOR)
+        long ultima = bufferReordenacao != null ? bufferReordenacao.maiorRecebida() : fileManager.contarLinhas();
+        Mensagem heartbeat = Mensagem.comPorta(TipoMensagem.HEARTBEAT, minhaPorta, ultima);
+        heartbeat.y = limite.limite();
+        pool.enviar(portaLb, heartbeat)
+                .orTimeout(intervaloHeartbeatMs, TimeUnit.MILLISECONDS)
+                .whenComplete((membros, erro) -> {
+                    if (erro != null) return;
+                    visao.atualizar(membros);
+                    if (!contem(membros, minhaPorta) && !saiu && reentrando.compareAndSet(false, true)) {
+                        agendador.execute(this::reentrar);
+                    }
+                });
+    }
+
+    // Removido do cluster: as escritas desse tempo não chegaram aqui, então passa de novo pela entrada
+    // (transferência de estado) em vez de voltar direto como ATIVO
+    private void reentrar() {
+        Log.aviso("Servidor " + minhaPorta + " foi removido do cluster. Entrando de novo...");
+        try {
+            entrarNoCluster();
+        } finally {
+            reentrando.set(false);
+        }
+    }
+
+    private static boolean contem(Mensagem membros, int porta) {
+        if (membros.tipo != TipoMensagem.MEMBROS) return true;
+        for (int i = 0; i < membros.quantidade; i++) {
+            if (membros.numeros[i * 2] == porta) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,17 @@
+package server;
+
+import config.Configuracao;
+
+// Quando os dados escritos são forçados para o disco (-Darmazenamento.fsync=...)
+public enum PoliticaFsync {
+    // Depois de cada linha
+    SEMPRE,
+    // Uma vez por chamada de escrita (um lote de linhas)
+    LOTE,
+    // Por uma thread em segundo plano a cada -Darmazenamento.intervaloFsyncMs
+    INTERVALO;
+
+    public static PoliticaFsync configurada() {
+        return valueOf(Configuracao.texto("armazenamento.fsync", "INTERVALO").toUpperCase());
+    }
+}
@@ -0,0 +1,47 @@
+package server;
+
+// Uma linha do arquivo de dados: o par recebido e o MDC calculado.
+// Centraliza o formato texto ("O MDC entre X e Y é M") para que ele possa ser
+// convertido para o formato binário compacto dos segmentos selados e de volta.
+public final class Registro {
+    private static final String PREFIXO = "O MDC entre ";
+    private static final String SEPARADOR_E = " e ";
+    private static final String SEPARADOR_E_ACENTO = " é ";
+
+    public final int x;
+    public final int y;
+    public final int mdc;
+
+    public Registro(int x, int y, int mdc) {
+        this.x = x;
+        this.y = y;
+        this.mdc = mdc;
+    }
+
+    public static String formatar(int x, int y, int mdc) {
+        return PREFIXO + x + SEPARADOR_E + y + SEPARADOR_E_ACENTO + mdc;
+    }
+
+    public String paraTexto() {
+        return formatar(x, y, mdc);
+    }
+
+    // Interpreta uma linha no formato texto; devolve null se a linha não estiver nesse formato
+    public static Registro deTexto(String linha) {
+        if (!linha.startsWith(PREFIXO)) return null;
+        int fimX = linha.indexOf(SEPARADOR_E, PREFIXO.length());
+        if (fimX < 0) return null;
+        int fimY = linha.indexOf(SEPARADOR_E_ACENTO, fimX + SEPARADOR_E.length());
+        if (fimY < 0) return null;
+        try {
+            int x = Integer.parseInt(linha.substring(PREFIXO.length(), fimX));
+            int y = Integer.parseInt(linha.substring(fimX + SEPARADOR_E.length(), fimY));
+            int mdc = Integer.parseInt(linha.substring(fimY + SEPARADOR_E_ACENTO.length()));
+            Registro registro = new Registro(x, y, mdc);
+            // Garante que a conversão de volta gera exatamente a mesma linha
+            return registro.paraTexto().equals(linha) ? registro : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package server;
+
+import config.Configuracao;
+import config.ModoEscrita;
+import network.Mensagem;
+import network.PoolConexoes;
+import network.TipoMensagem;
+import observabilidade.Histograma;
+import observabilidade.Log;
+import observabilidade.Metricas;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+// Envia mensagens de replicação para os vizinhos (os membros atuais do cluster, ver VisaoCluster).
+// A mensagem vai para todos os vizinhos ao mesmo tempo e o método retorna assim que um quórum
+// de vizinhos confirmar (ACK). Quem falhar recebe a mensagem depois, em segundo plano, pela sua
+// FilaHandoff, então um vizinho lento ou fora do ar não trava mais a seção crítica.
+//
+// Configuração:
+//   -Dreplicacao.quorum=N                 ACKs de vizinhos necessários
+//   -Dreplicacao.intervaloRetentativaMs=2000
+//
+// Quórum padrão:
+//  - SEQUENCIADOR: maioria do cluster (contando este servidor). As réplicas atrasadas gravam na ordem
+//    da sequência quando a mensagem chegar, então a ordem das linhas nunca muda.
+//  - UNITARIA/LOTE: todos os vizinhos. Nesses modos a ordem vem do lock; se o lock fosse liberado antes
+//    de um vizinho confirmar, ele poderia gravar a linha atrasada depois de linhas mais novas de outro
+//    servidor. Um vizinho fora do ar deixa de ser esperado quando sai da lista de membros (sem HEARTBEAT);
+//    quem aceitar a troca acima pode diminuir o quórum para não esperar nem esse tempo.
+public class Replicador {
+    private final VisaoCluster visao;
+    private final PoolConexoes pool;
+    // Quórum informado na configuração (-1 = usar o padrão do modo)
+    private final int quorumConfigurado;
+    private final boolean quorumMaioria;
+    private final long intervaloRetentativaMs;
+    // Entregas atrasadas por vizinho
+    private final Map<Integer, FilaHandoff> handoffs = new ConcurrentHashMap<>();
+    private final Metricas metricas;
+    // Tempo até o ACK de cada vizinho (só as entregas diretas, sem passar pela FilaHandoff)
+    private final Map<Integer, Histograma> tempoAck = new ConcurrentHashMap<>();
+    private final Histograma tempoQuorum;
+
+    public Replicador(VisaoCluster visao, PoolConexoes pool, Metricas metricas) {
+        this.visao = visao;
+        this.pool = pool;
+        this.metricas = metricas;
+        this.tempoQuorum = metricas.histograma("replicacao.quorum");
+        metricas.medidor("replicacao.handoff", this::pendentesHandoff);
+        this.quorumMaioria = ModoEscrita.configurado() == ModoEscrita.SEQUENCIADOR;
+        this.quorumConfigurado = Configuracao.inteiro("replicacao.quorum", -1);
+        this.intervaloRetentativaMs = Configuracao.longo("replicacao.intervaloRetentativaMs", 2000);
+        visao.aoRemoverVizinho(this::removerVizinho);
+    }
+
+    // Envia para todos os vizinhos em paralelo e só retorna depois que o quórum confirmar
+    public void replicarComConfirmacao(Mensagem mensagem) {
+        List<Integer> vizinhos = visao.vizinhos();
+        CountDownLatch confirmacoes = new CountDownLatch(quorum(vizinhos.size()));
+        long inicio = System.nanoTime();
+
+        for (int porta : vizinhos) {
+            entregar(porta, mensagem).thenRun(confirmacoes::countDown);
+        }
+
+        try {
+            confirmacoes.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        tempoQuorum.registrar(System.nanoTime() - inicio);
+    }
+
+    // Total de mensagens aguardando entrega a vizinhos atrasados
+    public int pendentesHandoff() {
+        int total = 0;
+        for (FilaHandoff fila : handoffs.values()) total += fila.tamanho();
+        return total;
+    }
+
+    // Vizinho saiu do cluster (ou reiniciou e vai copiar os dados de novo): o que estava pendente
+    // para ele é descartado e não segura mais o quórum
+    public void removerVizinho(int porta) {
+        FilaHandoff fila = handoffs.remove(porta);
+        if (fila != null) {
+            Log.info("Vizinho " + porta + " saiu do cluster. " + fila.tamanho() + " replicações pendentes descartadas.");
+            fila.descartar();
+        }
+    }
+
+    private int quorum(int vizinhos) {
+        int padrao = quorumMaioria ? (vizinhos + 1) / 2 : vizinhos;
+        return Math.min(vizinhos, quorumConfigurado >= 0 ? quorumConfigurado : padrao);
+    }
+
+    private CompletableFuture<Void> entregar(int porta, Mensagem mensagem) {
+        FilaHandoff fila = handoffs.computeIfAbsent(porta,
+                p -> new FilaHandoff(p, pool, intervaloRetentativaMs));
+
+        // Se o vizinho já está atrasado, a mensagem entra no fim da fila dele para manter a ordem
+        CompletableFuture<Void> entregue = fila.adicionarSeAtrasado(mensagem);
+        if (entregue != null) return entregue;
+
+        CompletableFuture<Void> resultado = new CompletableFuture<>();
+        Histograma rtt = tempoAck.computeIfAbsent(porta, p -> metricas.histograma("replicacao.rtt." + p));
+        long envio = System.nanoTime();
+        pool.enviar(porta, mensagem).whenComplete((ack, erro) -> {
+            if (erro == null && ack.tipo == TipoMensagem.ACK_REPLICACAO) {
+                rtt.registrar(System.nanoTime() - envio);
+                resultado.complete(null);
+            } else {
+                Log.aviso("Vizinho " + porta + " não confirmou a replicação. Entrega transferida para segundo plano.");
+                fila.adicionar(mensagem, resultado);
+            }
+        });
+        return resultado;
+    }
+}
@@ -0,0 +1,41 @@
+package server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// IDs das requisições já gravadas neste servidor (localmente ou por replicação).
+// O LoadBalancer retransmite uma ESCRITA quando a confirmação demora; a retransmissão pode ir para
+// outro servidor, que já recebeu a linha pela replicação. Com este registro a linha não é gravada
+// duas vezes: quem recebe um ID conhecido só confirma de novo.
+//
+// Guarda só os 'capacidade' IDs mais recentes: uma retransmissão sempre chega pouco depois da
+// escrita original (o LoadBalancer desiste depois de algumas tentativas).
+// Fica só em memória: um servidor reiniciado não reconhece IDs gravados antes de parar.
+public class RequisicoesAplicadas {
+    private final Map<Long, Boolean> ids;
+
+    public RequisicoesAplicadas(int capacidade) {
+        this.ids = new LinkedHashMap<Long, Boolean>(Math.min(capacidade, 1 << 16)) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> maisAntigo) {
+                return size() > capacidade;
+            }
+        };
+    }
+
+    // Marca o ID como gravado. Devolve false se ele já estava marcado (a linha não deve ser gravada de novo).
+    // ID 0 = mensagem sem ID (formato antigo): sempre grava.
+    public synchronized boolean registrar(long id) {
+        if (id == 0) return true;
+        return ids.put(id, Boolean.TRUE) == null;
+    }
+
+    // Desfaz registrar(): a gravação falhou, então a retransmissão precisa gravar a linha
+    public synchronized void esquecer(long id) {
+        ids.remove(id);
+    }
+
+    public synchronized boolean contem(long id) {
+        return id != 0 && ids.containsKey(id);
+    }
+}
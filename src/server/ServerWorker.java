@@ -1,160 +1,543 @@
 package server;
 
+import config.Cluster;
+import network.Mensagem;
+import network.PoolConexoes;
+import network.ProcessadorMensagem;
+import network.Resposta;
+import network.TipoMensagem;
+import observabilidade.Histograma;
+import observabilidade.Log;
+import observabilidade.Metricas;
+
 import java.io.*;
-import java.net.Socket;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
-public class ServerWorker implements Runnable {
-    private Socket socket;
+// Processa as mensagens recebidas pelo servidor.
+// Uma única instância atende todas as conexões; cada mensagem chega em sua própria thread.
+public class ServerWorker implements ProcessadorMensagem {
     private FileManager fileManager;
-    private List<Integer> portasVizinhos;
-    private static final int PORTA_LB = 8080; // Para pedir o Lock e Confirmar
+    private PoolConexoes pool;
+    private Replicador replicador;
+    // Só existe no modo de escrita em LOTE (null nos outros modos)
+    private GrupoCommit grupoCommit;
+    // Só existe no modo SEQUENCIADOR (null nos outros modos)
+    private BufferReordenacao bufferReordenacao;
+    // Resultados já calculados, compartilhados por todas as requisições do servidor
+    private CacheMdc cacheMdc;
+    // Lista de membros do cluster vista por este servidor (quem recebe as replicações)
+    private VisaoCluster visao;
+    // IDs já gravados (retransmissões do LoadBalancer não geram linhas repetidas)
+    private RequisicoesAplicadas aplicadas;
+    // Quantas ESCRITAs este servidor processa ao mesmo tempo (as que passam do limite são recusadas)
+    private LimiteConcorrencia limite;
+    private final TrabalhoSimulado trabalho;
+    private int minhaPorta;
+    private final int portaLb = Cluster.portaLoadBalancer(); // Para pedir o Lock e Confirmar
+    private final Metricas metricas;
+    private final LongAdder escritas;
+    private final LongAdder escritasRecusadas;
+    private final LongAdder lotes;
+    private final LongAdder paresLote;
+    private final LongAdder escritasRepetidas;
+    private final LongAdder replicacoes;
+    private final LongAdder replicacoesRepetidas;
+    // Cálculo do MDC (com o cache), espera e posse do lock, e a ESCRITA inteira (da chegada à confirmação)
+    private final Histograma tempoMdc;
+    private final Histograma esperaLock;
+    private final Histograma posseLock;
+    private final Histograma tempoEscrita;
+    private final Histograma tempoMdcLote;
+    // Máximo de linhas devolvidas num TRECHO
+    private static final int MAX_LINHAS_TRECHO = 1000;
+    // Máximo de nós devolvidos num RESUMO
+    private static final int MAX_NOS_RESUMO = 1024;
 
-    public ServerWorker(Socket socket, FileManager fileManager, List<Integer> vizinhos) {
-        this.socket = socket;
+    public ServerWorker(int minhaPorta, FileManager fileManager, PoolConexoes pool, Replicador replicador, VisaoCluster visao,
+                        RequisicoesAplicadas aplicadas, LimiteConcorrencia limite, GrupoCommit grupoCommit,
+                        BufferReordenacao bufferReordenacao, CacheMdc cacheMdc, TrabalhoSimulado trabalho,
+                        Metricas metricas) {
+        this.minhaPorta = minhaPorta;
         this.fileManager = fileManager;
-        this.portasVizinhos = vizinhos;
+        this.pool = pool;
+        this.replicador = replicador;
+        this.visao = visao;
+        this.aplicadas = aplicadas;
+        this.limite = limite;
+        this.grupoCommit = grupoCommit;
+        this.bufferReordenacao = bufferReordenacao;
+        this.cacheMdc = cacheMdc;
+        this.trabalho = trabalho;
+        this.metricas = metricas;
+        this.escritas = metricas.contador("escrita.recebidas");
+        this.escritasRecusadas = metricas.contador("escrita.recusadas");
+        this.lotes = metricas.contador("escrita.lotes");
+        this.paresLote = metricas.contador("escrita.paresLote");
+        this.escritasRepetidas = metricas.contador("escrita.repetidas");
+        this.replicacoes = metricas.contador("replicacao.recebidas");
+        this.replicacoesRepetidas = metricas.contador("replicacao.repetidas");
+        this.tempoMdc = metricas.histograma("mdc.calculo");
+        this.esperaLock = metricas.histograma("lock.espera");
+        this.posseLock = metricas.histograma("lock.posse");
+        this.tempoEscrita = metricas.histograma("escrita.total");
+        this.tempoMdcLote = metricas.histograma("mdc.lote");
     }
 
     private int calcularMDC(int a, int b) {
-        while (b != 0) {
-            int temp = b;
-            b = a % b;
-            a = temp;
-        }
-        return a;
+        long inicio = System.nanoTime();
+        int mdc = cacheMdc.obter(a, b);
+        tempoMdc.registrar(System.nanoTime() - inicio);
+        return mdc;
     }
 
-    @Override
-    public void run() {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
-
-            String request = in.readLine();
-            if (request == null) return;
+    // Réplicas recebem o MDC já calculado pela origem; mensagens antigas sem o resultado (mdc = 0) ainda são aceitas
+    private int mdcRecebido(int x, int y, int mdc) {
+        if (mdc == 0) return calcularMDC(x, y);
+        cacheMdc.registrar(x, y, mdc);
+        return mdc;
+    }
 
-            String[] parts = request.split(";");
-            String tipo = parts[0];
+    @Override
+    public void processar(Mensagem request, Resposta resposta) {
+        switch (request.tipo) {
+            case LEITURA: {
+                long linhas = fileManager.contarLinhas();
+                Log.debug(() -> "INFO: Meu arquivo possui " + linhas + " linhas.");
+                resposta.responder(Mensagem.comValor(TipoMensagem.LINHAS, linhas));
+                break;
+            }
+            case ESCRITA:
+            case ESCRITA_LOTE:
+                processarEscrita(request, resposta);
+                break;
 
-            if (tipo.equals("LEITURA")) {
-                int linhas = fileManager.contarLinhas();
-                System.out.println("INFO: Meu arquivo possui " + linhas + " linhas.");
+            case REPLICACAO: {
+                // Servidor recebendo ordem de vizinho para salvar
+                int mdc = mdcRecebido(request.x, request.y, request.mdc);
+                String resultado = Registro.formatar(request.x, request.y, mdc);
 
-            } else if (tipo.equals("ESCRITA")) {
-                // Formato recebido do LB: ESCRITA;ID;X;Y
-                // Precisamos extrair o ID para confirmar depois
-                String idReq = parts[1];
-                int x = Integer.parseInt(parts[2]);
-                int y = Integer.parseInt(parts[3]);
+                replicacoes.increment();
+                if (aplicadas.registrar(request.id)) {
+                    try {
+                        fileManager.escreverLinha(resultado);
+                    } catch (IOException e) {
+                        aplicadas.esquecer(request.id);
+                        falhaReplicacao(resposta, e);
+                        return;
+                    }
+                    Log.debug(() -> "Replicação recebida e gravada: " + resultado);
+                } else {
+                    replicacoesRepetidas.increment();
+                    Log.debug(() -> "Replicação repetida da requisição " + request.id + " ignorada.");
+                }
 
-                // Fase de Processamento (Paralelo - Sem Lock)
-                // Simula o tempo de cálculo/sleep conforme especificado
+                // IMPORTANTE: Envia confirmação (ACK) de volta para quem mandou replicar
+                // Isso permite que o servidor original saiba que pode liberar o lock
+                resposta.responder(Mensagem.simples(TipoMensagem.ACK_REPLICACAO));
+                break;
+            }
+            case REPLICACAO_SEQ:
+                // Modo SEQUENCIADOR: a linha entra no buffer e só é gravada quando todas as sequências anteriores chegarem
+                if (bufferReordenacao == null) {
+                    resposta.responder(Mensagem.erro("Servidor não está no modo SEQUENCIADOR"));
+                    return;
+                }
+                replicacoes.increment();
                 try {
-                    System.out.println("Processando MDC de " + x + " e " + y + " (Sleep)...");
-                    Thread.sleep(new Random().nextInt(101) + 100); 
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    bufferReordenacao.receber(request.seq,
+                            Registro.formatar(request.x, request.y, mdcRecebido(request.x, request.y, request.mdc)));
+                } catch (IOException e) {
+                    falhaReplicacao(resposta, e);
+                    return;
                 }
+                resposta.responder(Mensagem.simples(TipoMensagem.ACK_REPLICACAO));
+                break;
 
-                int mdc = calcularMDC(x, y);
-                String resultado = "O MDC entre " + x + " e " + y + " é " + mdc;
-
-                // Fase de Escrita (Crítica - Precisa de Lock)
-                // Conecta ao Load Balancer e pede permissão
-                try (Socket lockSocket = new Socket("localhost", PORTA_LB);
-                     PrintWriter lockOut = new PrintWriter(lockSocket.getOutputStream(), true);
-                     BufferedReader lockIn = new BufferedReader(new InputStreamReader(lockSocket.getInputStream()))) {
-                    
-                    System.out.println("Calculo finalizado. Solicitando LOCK ao LoadBalancer...");
-                    lockOut.println("ACQUIRE_LOCK");
-                    
-                    // Fica TRAVADO aqui se o LB colocar na fila.
-                    // Só sai daqui quando receber "GRANTED".
-                    String response = lockIn.readLine(); 
-                    
-                    if (response != null && response.equals("GRANTED")) {
-                        System.out.println("LOCK adquirido! Iniciando protocolo de escrita...");
-                        
-                        // Escrita Local
-                        fileManager.escreverLinha(resultado);
-                        System.out.println("Escrita Local: OK.");
-
-                        // Replicação Síncrona (Garante consistência antes de liberar)
-                        // Só avança se os vizinhos confirmarem
-                        replicarParaVizinhosComConfirmacao(x, y);
-                        
-                        // Libera o Lock
-                        lockOut.println("RELEASE_LOCK");
-                        System.out.println("Processo concluído. LOCK liberado.");
+            case SEQUENCIA: {
+                // Até qual sequência este servidor já gravou (o LoadBalancer agora recebe isso no REGISTRAR/HEARTBEAT)
+                long ultima = bufferReordenacao != null ? bufferReordenacao.ultimaAplicada() : fileManager.contarLinhas();
+                resposta.responder(Mensagem.comValor(TipoMensagem.SEQUENCIA, ultima));
+                break;
+            }
+            case REPLICACAO_LOTE: {
+                // Lote vindo de um vizinho (gravação em grupo ou ESCRITA_LOTE): x, y e mdc de cada linha
+                int[] valores = request.valores;
+                boolean sequenciado = request.seq != 0;
+                if (sequenciado && bufferReordenacao == null) {
+                    resposta.responder(Mensagem.erro("Servidor não está no modo SEQUENCIADOR"));
+                    return;
+                }
+                List<String> linhas = new ArrayList<>(request.quantidade);
+                List<Long> registrados = new ArrayList<>();
+                for (int i = 0; i < request.quantidade; i++) {
+                    // Sequenciado: as repetidas são ignoradas pelo buffer, pela sequência
+                    if (!sequenciado && request.ids != null) {
+                        if (!aplicadas.registrar(request.ids[i])) continue; // já gravada
+                        registrados.add(request.ids[i]);
                     }
+                    int x = valores[i * 3];
+                    int y = valores[i * 3 + 1];
+                    linhas.add(Registro.formatar(x, y, mdcRecebido(x, y, valores[i * 3 + 2])));
                 }
-                // Após liberar o Lock e garantir que tudo foi feito, notifica o LoadBalancer
-                // que esta requisição específica (ID) foi totalmente resolvida.
-                enviarConfirmacaoAoLoadBalancer(idReq);
 
-            } else if (tipo.equals("REPLICACAO")) {
-                // Servidor recebendo ordem de vizinho para salvar
-                int x = Integer.parseInt(parts[1]);
-                int y = Integer.parseInt(parts[2]);
-                int mdc = calcularMDC(x, y);
-                String resultado = "O MDC entre " + x + " e " + y + " é " + mdc;
-
-                fileManager.escreverLinha(resultado);
-                System.out.println("Replicação recebida e gravada: " + resultado);
-                
-                // IMPORTANTE: Envia confirmação (ACK) de volta para quem mandou replicar
-                // Isso permite que o servidor original saiba que pode liberar o lock
-                out.println("ACK_REPLICACAO");
+                try {
+                    if (sequenciado) {
+                        // ESCRITA_LOTE no modo SEQUENCIADOR: as linhas ocupam as sequências a partir de request.seq
+                        bufferReordenacao.receber(request.seq, linhas);
+                    } else {
+                        fileManager.escreverLinhas(linhas);
+                    }
+                } catch (IOException e) {
+                    for (long id : registrados) aplicadas.esquecer(id);
+                    falhaReplicacao(resposta, e);
+                    return;
+                }
+                replicacoes.add(request.quantidade);
+                replicacoesRepetidas.add(request.quantidade - linhas.size());
+                Log.debug(() -> "Replicação em lote recebida e gravada: " + linhas.size() + " linhas");
+                resposta.responder(Mensagem.simples(TipoMensagem.ACK_REPLICACAO));
+                break;
+            }
+            case SINCRONIZAR: {
+                // Servidor entrando no cluster copiando as linhas que faltam nele
+                List<String> linhas;
+                try {
+                    linhas = fileManager.lerLinhas(request.valor,
+                            Math.max(0, Math.min(request.quantidade, MAX_LINHAS_TRECHO)));
+                } catch (IOException e) {
+                    falhaLeitura(resposta, e);
+                    return;
+                }
+                int[] valores = new int[linhas.size() * 3];
+                int n = 0;
+                for (String linha : linhas) {
+                    Registro r = Registro.deTexto(linha);
+                    if (r == null) break; // Linha corrompida: quem pediu copia o resto de outro vizinho
+                    valores[n * 3] = r.x;
+                    valores[n * 3 + 1] = r.y;
+                    valores[n * 3 + 2] = r.mdc;
+                    n++;
+                }
+                Mensagem trecho = Mensagem.comValor(TipoMensagem.TRECHO, request.valor);
+                trecho.valores = valores;
+                trecho.quantidade = n;
+                resposta.responder(trecho);
+                break;
+            }
+            case COMPARAR: {
+                // Anti-entropia de um vizinho: hashes de nós da árvore de Merkle deste arquivo
+                ArvoreMerkle arvore;
+                try {
+                    arvore = fileManager.resumo();
+                } catch (IOException e) {
+                    falhaLeitura(resposta, e);
+                    return;
+                }
+                long[] hashes = arvore.hashes(request.opcao, request.valor, Math.min(request.quantidade, MAX_NOS_RESUMO));
+                resposta.responder(Mensagem.resumo(arvore.linhas(), arvore.linhasPorFolha(), hashes));
+                break;
+            }
+            case METRICAS: {
+                Mensagem m = Mensagem.simples(TipoMensagem.METRICAS);
+                m.texto = metricas.texto();
+                resposta.responder(m);
+                break;
+            }
+            case CACHE: {
+                // Métricas do cache de MDC: acertos, falhas, remoções e capacidade
+                Mensagem m = Mensagem.simples(TipoMensagem.CACHE);
+                m.numeros = new long[]{cacheMdc.acertos(), cacheMdc.falhas(), cacheMdc.remocoes(), cacheMdc.capacidade()};
+                m.quantidade = m.numeros.length;
+                resposta.responder(m);
+                break;
+            }
+            default:
+                resposta.responder(Mensagem.erro("Mensagem desconhecida"));
+                break;
+        }
+    }
+
+    // ESCRITA vinda do LB: ID, X, Y (e SEQ no modo SEQUENCIADOR). O ID é usado para confirmar depois.
+    // ESCRITA_LOTE: o mesmo para todos os pares, com o ID (e a SEQ) do primeiro; o par i usa ID + i.
+    private void processarEscrita(Mensagem request, Resposta resposta) {
+        long idReq = request.id;
+        boolean lote = request.tipo == TipoMensagem.ESCRITA_LOTE;
+        escritas.increment();
+        if (lote) {
+            lotes.increment();
+            paresLote.add(request.quantidade);
+        }
+
+        // Retransmissão de uma escrita que já foi gravada (aqui ou em outro servidor, que replicou para cá):
+        // só confirma de novo. Um lote é gravado inteiro com um lock: basta olhar o último par.
+        if (aplicadas.contem(lote ? idReq + request.quantidade - 1 : idReq)) {
+            escritasRepetidas.increment();
+            Log.debug(() -> "Requisição " + idReq + " já gravada. Confirmando novamente.");
+            enviarConfirmacaoAoLoadBalancer(idReq);
+            resposta.responder(Mensagem.ok(idReq));
+            return;
+        }
+
+        // Servidor no limite: devolve a escrita ao LoadBalancer (que a manda para outro servidor)
+        // em vez de acumular threads esperando o lock
+        if (!limite.tentarAdquirir()) {
+            recusarEscrita(idReq, resposta);
+            return;
+        }
+        long inicio = System.nanoTime();
+        // A thread que recebeu a mensagem só agenda o trabalho; a escrita continua quando ele terminar
+        // (num lote, o trabalho simulado conta uma vez para o lote inteiro)
+        trabalho.executar(request.x, request.y, () -> gravar(request, resposta, inicio)).exceptionally(erro -> {
+            Log.erro("Erro ao processar a requisição " + idReq + ": " + erro);
+            concluir(inicio);
+            resposta.responder(Mensagem.erro("Falha ao processar a escrita"));
+            return null;
+        });
+    }
+
+    private void gravar(Mensagem request, Resposta resposta, long inicio) {
+        boolean liberarAoFim = true;
+        try {
+            if (request.tipo == TipoMensagem.ESCRITA_LOTE) {
+                calcularEGravarLote(request, resposta);
+            } else {
+                liberarAoFim = calcularEGravar(request, resposta, inicio);
             }
+        } finally {
+            if (liberarAoFim) concluir(inicio);
+        }
+    }
+
+    // Replicação que não foi gravada: sem o ACK o vizinho entrega de novo depois (FilaHandoff)
+    private void falhaReplicacao(Resposta resposta, IOException e) {
+        Log.erro("Erro ao gravar replicação: " + e.getMessage());
+        resposta.responder(Mensagem.erro("Falha ao gravar a replicação"));
+    }
+
+    // Um TRECHO vazio seria lido como fim do arquivo: quem pediu recebe ERRO e tenta outro vizinho
+    private void falhaLeitura(Resposta resposta, IOException e) {
+        Log.erro("Erro ao ler o arquivo de dados: " + e.getMessage());
+        resposta.responder(Mensagem.erro("Falha ao ler o arquivo"));
+    }
+
+    // A escrita não foi gravada: não é confirmada, então o LoadBalancer retransmite depois
+    private void falhaGravacao(long idReq, Resposta resposta, IOException e) {
+        Log.erro("Erro ao gravar a requisição " + idReq + ": " + e.getMessage());
+        resposta.responder(Mensagem.erro("Falha ao gravar no arquivo"));
+    }
 
+    private void concluir(long inicio) {
+        long duracao = System.nanoTime() - inicio;
+        limite.liberar(duracao);
+        tempoEscrita.registrar(duracao);
+    }
+
+    // A ESCRITA passa a contar na carga do LoadBalancer de novo só quando ele reenviar:
+    // o aviso vai pela conexão com ele (a resposta desta mensagem é descartada por quem a enviou)
+    private void recusarEscrita(long idReq, Resposta resposta) {
+        Mensagem recusa = Mensagem.rejeitado(idReq, limite.tentarEmMs());
+        recusa.x = minhaPorta;
+        recusa.y = limite.limite();
+        try {
+            pool.notificar(portaLb, recusa);
         } catch (IOException e) {
-            e.printStackTrace();
+            // Sem o aviso, o prazo de retransmissão do LoadBalancer vence e ela é reenviada do mesmo jeito
         }
+        escritasRecusadas.increment();
+        Log.debug(() -> "Requisição " + idReq + " recusada: " + limite.emAndamento() + " escritas em andamento (limite " + recusa.y + ").");
+        resposta.responder(recusa);
     }
 
-private void replicarParaVizinhosComConfirmacao(int x, int y) {
-        for (int porta : portasVizinhos) {
-            boolean enviouComSucesso = false;
-            
-            // Só sai daqui quando o vizinho confirmar
-            while (!enviouComSucesso) {
-                try (Socket s = new Socket("localhost", porta);
-                     PrintWriter pOut = new PrintWriter(s.getOutputStream(), true);
-                     BufferedReader pIn = new BufferedReader(new InputStreamReader(s.getInputStream()))) {
-                    
-                    // Envia comando
-                    pOut.println("REPLICACAO;" + x + ";" + y);
-                    
-                    // Espera confirmação (ACK)
-                    String ack = pIn.readLine();
-                    if (ack != null && ack.equals("ACK_REPLICACAO")) {
-                        System.out.println("Confirmação recebida do vizinho " + porta);
-                        enviouComSucesso = true; // Sucesso! Sai do while e vai para o próximo vizinho
-                    }
-                    
+    // Devolve false se a escrita continua depois do retorno (modo LOTE): a vaga no limite
+    // é liberada quando o lote for gravado
+    private boolean calcularEGravar(Mensagem request, Resposta resposta, long inicio) {
+        long idReq = request.id;
+        int x = request.x;
+        int y = request.y;
+
+        // Fase de Processamento (Paralelo - Sem Lock)
+        // O trabalho simulado (antes um sleep de 100 a 200 ms aqui) já terminou: ver TrabalhoSimulado
+        Log.debug(() -> "Processando MDC de " + x + " e " + y + "...");
+        int mdc = calcularMDC(x, y);
+        String resultado = Registro.formatar(x, y, mdc);
+
+        if (bufferReordenacao != null) {
+            // Modo SEQUENCIADOR
+            // Sem lock: grava localmente na ordem da sequência e replica em paralelo com os outros servidores
+            try {
+                bufferReordenacao.receber(request.seq, resultado);
+            } catch (IOException e) {
+                falhaGravacao(idReq, resposta, e);
+                return true;
+            }
+            // A escrita foi roteada com a lista de membros na versão request.valor
+            visao.garantirVersao(request.valor);
+            replicador.replicarComConfirmacao(Mensagem.replicacaoSeq(request.seq, x, y, mdc));
+
+            enviarConfirmacaoAoLoadBalancer(idReq);
+            resposta.responder(Mensagem.ok(idReq));
+            return true;
+        }
+
+        if (grupoCommit != null) {
+            // Modo LOTE: o resultado entra na fila e é gravado junto com os outros que estiverem prontos
+            grupoCommit.submeter(idReq, x, y, mdc).whenComplete((ok, erro) -> {
+                concluir(inicio);
+                resposta.responder(erro == null ? Mensagem.ok(idReq) : Mensagem.erro("Falha ao gravar o lote"));
+            });
+            return false;
+        }
+
+        // Fase de Escrita (Crítica - Precisa de Lock)
+        boolean gravou = comLock(idReq, resposta, () -> {
+            // Com o lock, quem gravou esta requisição antes já replicou para cá: basta olhar o ID
+            if (aplicadas.registrar(idReq)) {
+                // Escrita Local
+                try {
+                    fileManager.escreverLinha(resultado);
                 } catch (IOException e) {
-                    // Se der erro, NÃO avança. Fica tentando.
-                    System.err.println("ERRO CRÍTICO: Vizinho " + porta + " está OFF. Sistema REPRESADO aguardando retorno...");
-                    try {
-                        Thread.sleep(2000); // Espera 2 segundos antes de tentar de novo
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
-                    }
+                    aplicadas.esquecer(idReq);
+                    throw e;
                 }
+                Log.debug(() -> "Escrita Local: OK.");
+
+                // Replicação Síncrona (Garante consistência antes de liberar)
+                // Só avança se os vizinhos confirmarem
+                replicador.replicarComConfirmacao(Mensagem.replicacao(idReq, x, y, mdc));
+            } else {
+                Log.debug(() -> "Requisição " + idReq + " já gravada por outro servidor. Nada a escrever.");
+            }
+        });
+        if (!gravou) return true;
+
+        // Após liberar o Lock e garantir que tudo foi feito, notifica o LoadBalancer
+        // que esta requisição específica (ID) foi totalmente resolvida.
+        enviarConfirmacaoAoLoadBalancer(idReq);
+        resposta.responder(Mensagem.ok(idReq));
+        return true;
+    }
+
+    // ESCRITA_LOTE: os MDCs de todos os pares em paralelo (CalculoLote), depois uma única gravação e
+    // uma única mensagem de replicação para o lote inteiro, em qualquer modo de escrita
+    private void calcularEGravarLote(Mensagem request, Resposta resposta) {
+        long idReq = request.id;
+        int quantidade = request.quantidade;
+
+        long inicioCalculo = System.nanoTime();
+        int[] valores = CalculoLote.calcular(request.valores, quantidade);
+        tempoMdcLote.registrar(System.nanoTime() - inicioCalculo);
+        Log.debug(() -> "Lote " + idReq + ": " + quantidade + " MDCs calculados.");
+
+        if (bufferReordenacao != null) {
+            // Modo SEQUENCIADOR: sem lock, as linhas ocupam as sequências request.seq, request.seq + 1, ...
+            List<String> linhas = new ArrayList<>(quantidade);
+            for (int i = 0; i < quantidade; i++) {
+                linhas.add(Registro.formatar(valores[i * 3], valores[i * 3 + 1], valores[i * 3 + 2]));
+            }
+            try {
+                bufferReordenacao.receber(request.seq, linhas);
+            } catch (IOException e) {
+                falhaGravacao(idReq, resposta, e);
+                return;
+            }
+            visao.garantirVersao(request.valor);
+            Mensagem replicacao = Mensagem.replicacaoLote(valores, null, quantidade);
+            replicacao.seq = request.seq;
+            replicador.replicarComConfirmacao(replicacao);
+        } else {
+            // UNITARIA e LOTE: um lock para o lote inteiro (no modo LOTE ele não passa pelo GrupoCommit:
+            // já é um grupo)
+            if (!comLock(idReq, resposta, () -> gravarParesNovos(idReq, valores, quantidade))) return;
+        }
+
+        enviarConfirmacaoAoLoadBalancer(idReq);
+        resposta.responder(Mensagem.ok(idReq));
+    }
+
+    // Com o lock: grava e replica os pares do lote que ainda não foram gravados (numa retransmissão,
+    // outro servidor pode ter gravado o lote antes e replicado para cá)
+    private void gravarParesNovos(long idReq, int[] valores, int quantidade) throws IOException {
+        int[] novos = new int[quantidade * 3];
+        long[] ids = new long[quantidade];
+        List<String> linhas = new ArrayList<>(quantidade);
+        int n = 0;
+        for (int i = 0; i < quantidade; i++) {
+            if (!aplicadas.registrar(idReq + i)) continue;
+            System.arraycopy(valores, i * 3, novos, n * 3, 3);
+            ids[n++] = idReq + i;
+            linhas.add(Registro.formatar(valores[i * 3], valores[i * 3 + 1], valores[i * 3 + 2]));
+        }
+        if (n == 0) return;
+
+        try {
+            fileManager.escreverLinhas(linhas);
+        } catch (IOException e) {
+            for (int i = 0; i < n; i++) aplicadas.esquecer(ids[i]);
+            throw e;
+        }
+        replicador.replicarComConfirmacao(Mensagem.replicacaoLote(novos, ids, n));
+    }
+
+    // O que roda com o lock; se a gravação no arquivo falhar, nada foi gravado
+    private interface Gravacao {
+        void executar() throws IOException;
+    }
+
+    // Seção crítica: pede o lock ao LoadBalancer pela conexão persistente, roda 'gravacao' com ele e libera.
+    // Fica esperando aqui se o LB colocar na fila; só sai quando receber GRANTED (com a fila do lock
+    // cheia, pede de novo depois). Devolve false se não conseguiu o lock ou se a gravação falhou (a resposta
+    // de erro já foi enviada e a escrita não é confirmada: o LoadBalancer retransmite depois).
+    private boolean comLock(long idReq, Resposta resposta, Gravacao gravacao) {
+        try {
+            Log.debug(() -> "Calculo finalizado. Solicitando LOCK ao LoadBalancer...");
+            long pedidoLock = System.nanoTime();
+            Mensagem response = LockLoadBalancer.adquirir(pool, portaLb, minhaPorta);
+            long lockAdquirido = System.nanoTime();
+            esperaLock.registrar(lockAdquirido - pedidoLock);
+
+            if (response.tipo != TipoMensagem.GRANTED) {
+                Log.aviso("LoadBalancer não concedeu o lock: " + response);
+                resposta.responder(Mensagem.erro("Lock não concedido pelo LoadBalancer"));
+                return false;
+            }
+
+            Log.debug(() -> "LOCK adquirido! Iniciando protocolo de escrita...");
+            // Quem entrou no cluster antes deste lock também precisa receber a linha
+            visao.garantirVersao(response.valor);
+
+            try {
+                gravacao.executar();
+            } catch (IOException e) {
+                falhaGravacao(idReq, resposta, e);
+                return false;
+            } finally {
+                // Libera o Lock (mesmo com erro na gravação: senão todo o cluster para de escrever)
+                LockLoadBalancer.liberar(pool, portaLb, minhaPorta);
+                posseLock.registrar(System.nanoTime() - lockAdquirido);
+                Log.debug(() -> "Processo concluído. LOCK liberado.");
             }
+            return true;
+        } catch (IOException | ExecutionException e) {
+            Log.erro("Erro ao falar com o LoadBalancer: " + e.getMessage());
+            resposta.responder(Mensagem.erro("Falha ao falar com o LoadBalancer"));
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            resposta.responder(Mensagem.erro("Interrompido"));
+            return false;
         }
-        System.out.println("Todos os vizinhos confirmaram a escrita.");
     }
 
-    private void enviarConfirmacaoAoLoadBalancer(String id) {
-        try (Socket s = new Socket("localhost", PORTA_LB);
-             PrintWriter out = new PrintWriter(s.getOutputStream(), true)) {
+    private void enviarConfirmacaoAoLoadBalancer(long id) {
+        try {
             // Envia a confirmação para remover da fila de retransmissão
-            out.println("CONFIRMACAO;" + id);
-            System.out.println("Confirmação da requisição " + id + " enviada ao LoadBalancer.");
+            pool.notificar(portaLb, Mensagem.confirmacao(new long[]{id}, 1));
+            Log.debug(() -> "Confirmação da requisição " + id + " enviada ao LoadBalancer.");
         } catch (IOException e) {
-            System.err.println("Erro ao enviar confirmação ao LoadBalancer: " + e.getMessage());
+            Log.erro("Erro ao enviar confirmação ao LoadBalancer: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package server;
+
+import config.Configuracao;
+import config.ModeloTrabalho;
+import network.FabricaExecutores;
+import observabilidade.Histograma;
+import observabilidade.Log;
+import observabilidade.Metricas;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Trabalho simulado de cada ESCRITA (ver ModeloTrabalho), sem prender a thread que recebeu a mensagem.
+//
+// - FIXO/DISTRIBUICAO: o atraso é agendado numa única thread de temporização (nenhuma thread fica
+//   dormindo durante ele).
+// - CPU: o cálculo vai para um pool com uma thread por núcleo e fila limitada ao máximo de escritas
+//   em andamento (LimiteConcorrencia), então nunca há mais cálculos disputando a CPU que núcleos.
+// - Depois do trabalho, a fase de escrita (lock, disco e replicação, que bloqueiam) roda no executor
+//   de escritas. Sem trabalho (NENHUM) ela segue direto na thread que recebeu a mensagem.
+//
+//   -Dtrabalho.modelo=NENHUM|FIXO|DISTRIBUICAO|CPU   (padrão DISTRIBUICAO)
+//   -Dtrabalho.fixoMs=150  -Dtrabalho.minMs=100  -Dtrabalho.maxMs=200
+//   -Dtrabalho.bitsCpu=2048  -Dtrabalho.repeticoesCpu=4  -Dtrabalho.threadsCpu=<núcleos>
+public class TrabalhoSimulado {
+    private final ModeloTrabalho modelo = ModeloTrabalho.configurado();
+    private final long fixoMs = Configuracao.longo("trabalho.fixoMs", 150);
+    private final long minMs = Configuracao.longo("trabalho.minMs", 100);
+    private final long maxMs = Math.max(minMs, Configuracao.longo("trabalho.maxMs", 200));
+    private final int bitsCpu = Math.max(64, Configuracao.inteiro("trabalho.bitsCpu", 2048));
+    private final int repeticoesCpu = Math.max(1, Configuracao.inteiro("trabalho.repeticoesCpu", 4));
+
+    private final ScheduledExecutorService temporizador;
+    private final ThreadPoolExecutor calculo;
+    private final Executor escritas;
+    private final Histograma duracao;
+    // Resultado dos cálculos, só para o JIT não eliminar o trabalho
+    private volatile int descarte;
+
+    public TrabalhoSimulado(int porta, int maxEscritas, Metricas metricas) {
+        this.duracao = metricas.histograma("trabalho.duracao");
+        this.escritas = FabricaExecutores.trabalho("escrita-" + porta, maxEscritas);
+
+        ScheduledThreadPoolExecutor temporizador = null;
+        ThreadPoolExecutor calculo = null;
+        if (modelo == ModeloTrabalho.FIXO || modelo == ModeloTrabalho.DISTRIBUICAO) {
+            temporizador = new ScheduledThreadPoolExecutor(1, r -> daemon(r, "trabalho-atraso-" + porta));
+        } else if (modelo == ModeloTrabalho.CPU) {
+            int threads = Math.max(1, Configuracao.inteiro("trabalho.threadsCpu", Runtime.getRuntime().availableProcessors()));
+            AtomicInteger contador = new AtomicInteger();
+            calculo = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, maxEscritas)),
+                    r -> daemon(r, "trabalho-cpu-" + porta + "-" + contador.incrementAndGet()));
+            ThreadPoolExecutor pool = calculo;
+            metricas.medidor("trabalho.filaCpu", () -> pool.getQueue().size());
+        }
+        this.temporizador = temporizador;
+        this.calculo = calculo;
+    }
+
+    public ModeloTrabalho modelo() {
+        return modelo;
+    }
+
+    // Faz o trabalho da ESCRITA (x, y) e depois roda 'escrita' numa thread que pode bloquear.
+    // O Future só falha se a escrita não pôde ser agendada (aí ela não roda: quem chamou responde e libera a vaga).
+    public CompletableFuture<Void> executar(int x, int y, Runnable escrita) {
+        if (modelo == ModeloTrabalho.NENHUM) {
+            escrita.run();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long inicio = System.nanoTime();
+        CompletableFuture<Void> trabalho = new CompletableFuture<>();
+        try {
+            if (modelo == ModeloTrabalho.CPU) {
+                calculo.execute(() -> {
+                    calcular(x, y);
+                    trabalho.complete(null);
+                });
+            } else {
+                temporizador.schedule(() -> trabalho.complete(null), atrasoMs(), TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return trabalho.thenRunAsync(() -> {
+            duracao.registrar(System.nanoTime() - inicio);
+            try {
+                escrita.run();
+            } catch (RuntimeException e) {
+                // A escrita já rodou (e liberou a vaga): não é falha de agendamento
+                Log.erro("Erro na escrita depois do trabalho simulado: " + e);
+            }
+        }, escritas);
+    }
+
+    private long atrasoMs() {
+        if (modelo == ModeloTrabalho.FIXO) return fixoMs;
+        return ThreadLocalRandom.current().nextLong(minMs, maxMs + 1);
+    }
+
+    // MDCs de números de 'bitsCpu' bits derivados de (x, y), com um fator comum grande
+    // (o algoritmo percorre o número inteiro antes de chegar ao resultado)
+    private void calcular(int x, int y) {
+        Random random = new Random(((long) x << 32) ^ y);
+        BigInteger fator = new BigInteger(bitsCpu / 2, random);
+        BigInteger a = new BigInteger(bitsCpu, random).multiply(fator);
+        BigInteger b = new BigInteger(bitsCpu, random).multiply(fator);
+        int resultado = 0;
+        for (int i = 0; i < repeticoesCpu; i++) {
+            resultado ^= a.gcd(b).intValue();
+            a = a.add(fator);
+        }
+        descarte = resultado;
+    }
+
+    private static Thread daemon(Runnable r, String nome) {
+        Thread t = new Thread(r, nome);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,83 @@
+package server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compara os arquivos de dados das réplicas linha a linha.
+// Uma réplica atrasada (com menos linhas, mas igual no começo) é considerada consistente;
+// qualquer linha diferente na mesma posição é uma divergência.
+// Aceita tanto arquivos texto quanto diretórios do armazenamento segmentado.
+public class VerificadorReplicas {
+
+    // Resultado da comparação de uma réplica com a referência (o primeiro arquivo)
+    public static class Resultado {
+        public final String arquivo;
+        public final long linhas;
+        // Número da primeira linha diferente da referência, ou -1 se não houver
+        public final long primeiraDivergencia;
+
+        Resultado(String arquivo, long linhas, long primeiraDivergencia) {
+            this.arquivo = arquivo;
+            this.linhas = linhas;
+            this.primeiraDivergencia = primeiraDivergencia;
+        }
+
+        public boolean consistente() {
+            return primeiraDivergencia < 0;
+        }
+    }
+
+    public static List<Resultado> verificar(List<String> arquivos) throws IOException {
+        List<Resultado> resultados = new ArrayList<>();
+        if (arquivos.isEmpty()) return resultados;
+
+        String referencia = arquivos.get(0);
+        resultados.add(new Resultado(referencia, contar(referencia), -1));
+
+        for (int i = 1; i < arquivos.size(); i++) {
+            resultados.add(comparar(referencia, arquivos.get(i)));
+        }
+        return resultados;
+    }
+
+    private static Resultado comparar(String referencia, String arquivo) throws IOException {
+        try (FonteLinhas ref = abrir(referencia);
+             FonteLinhas outro = abrir(arquivo)) {
+
+            long numero = 0;
+            long divergencia = -1;
+            String linhaRef = ref.proxima();
+            String linha = outro.proxima();
+
+            while (linha != null) {
+                numero++;
+                if (divergencia < 0 && linhaRef != null && !linhaRef.equals(linha)) {
+                    divergencia = numero;
+                }
+                linha = outro.proxima();
+                if (linhaRef != null) linhaRef = ref.proxima();
+            }
+            return new Resultado(arquivo, numero, divergencia);
+        }
+    }
+
+    private static long contar(String arquivo) throws IOException {
+        long linhas = 0;
+        try (FonteLinhas fonte = abrir(arquivo)) {
+            while (fonte.proxima() != null) linhas++;
+        }
+        return linhas;
+    }
+
+    private static FonteLinhas abrir(String caminho) throws IOException {
+        Path path = Paths.get(caminho);
+        if (Files.isDirectory(path)) {
+            return ArmazenamentoSegmentado.abrirLeitura(path);
+        }
+        return FonteLinhas.deArquivoTexto(path, -1);
+    }
+}
@@ -0,0 +1,90 @@
+package server;
+
+import config.Cluster;
+import network.Mensagem;
+import network.PoolConexoes;
+import network.TipoMensagem;
+import observabilidade.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+// Lista de vizinhos deste servidor, como o LoadBalancer a informou (mensagem MEMBROS).
+// É atualizada a cada resposta de HEARTBEAT e, antes de replicar, sempre que a ESCRITA ou o GRANTED
+// trouxer uma versão mais nova que a conhecida (garantirVersao).
+public class VisaoCluster {
+    private static final long TIMEOUT_CONSULTA_MS = 2000;
+
+    private final int minhaPorta;
+    private final PoolConexoes pool;
+    private final int portaLb = Cluster.portaLoadBalancer();
+
+    private long versao = 0;
+    private volatile List<Integer> vizinhos = Collections.emptyList();
+    // Geração de cada vizinho: muda quando ele reinicia e se registra de novo
+    private Map<Integer, Long> geracoes = new HashMap<>();
+    // Avisado quando um vizinho sai (ou reinicia), para descartar o que estava pendente para ele
+    private IntConsumer aoRemoverVizinho = porta -> { };
+
+    public VisaoCluster(int minhaPorta, PoolConexoes pool) {
+        this.minhaPorta = minhaPorta;
+        this.pool = pool;
+    }
+
+    public void aoRemoverVizinho(IntConsumer acao) {
+        this.aoRemoverVizinho = acao;
+    }
+
+    public List<Integer> vizinhos() {
+        return vizinhos;
+    }
+
+    public synchronized long versao() {
+        return versao;
+    }
+
+    // Aplica uma mensagem MEMBROS, se for mais nova que a visão atual
+    public void atualizar(Mensagem membros) {
+        List<Integer> removidos = new ArrayList<>();
+        synchronized (this) {
+            if (membros.tipo != TipoMensagem.MEMBROS || membros.valor <= versao) return;
+
+            List<Integer> novos = new ArrayList<>();
+            Map<Integer, Long> novasGeracoes = new HashMap<>();
+            for (int i = 0; i < membros.quantidade; i++) {
+                int porta = (int) membros.numeros[i * 2];
+                if (porta == minhaPorta) continue;
+                novos.add(porta);
+                novasGeracoes.put(porta, membros.numeros[i * 2 + 1]);
+            }
+            for (Map.Entry<Integer, Long> antigo : geracoes.entrySet()) {
+                if (!antigo.getValue().equals(novasGeracoes.get(antigo.getKey()))) removidos.add(antigo.getKey());
+            }
+
+            if (!removidos.isEmpty() || !novos.equals(vizinhos)) {
+                Log.info("Vizinhos atualizados: " + novos);
+            }
+            versao = membros.valor;
+            geracoes = novasGeracoes;
+            vizinhos = Collections.unmodifiableList(novos);
+        }
+        for (int porta : removidos) aoRemoverVizinho.accept(porta);
+    }
+
+    // Antes de replicar: se a escrita foi roteada com uma lista de membros mais nova que a nossa,
+    // busca a lista atual no LoadBalancer (senão um servidor que acabou de entrar ficaria sem a linha)
+    public void garantirVersao(long versaoMinima) {
+        if (versaoMinima <= versao()) return;
+        try {
+            atualizar(pool.enviar(portaLb, Mensagem.simples(TipoMensagem.MEMBROS))
+                    .get(TIMEOUT_CONSULTA_MS, TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            Log.aviso("Não foi possível atualizar a lista de membros: " + e.getMessage());
+        }
+    }
+}